@@ -0,0 +1,51 @@
+package mchivelli.rankrestrictions.engine;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 64-bit hashing for cache keys, where a collision would silently load the wrong compiled data. Strings are
+ * hashed by their full UTF-8 bytes rather than reduced to {@link String#hashCode()} first.
+ */
+public final class Fingerprints {
+    private Fingerprints() {
+    }
+
+    public static long mix(long hash, long value) {
+        // Murmur3 finalizer over the combined value
+        long h = hash * 0x9E3779B97F4A7C15L + value;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Mixes the length and the UTF-8 bytes of a string, eight bytes at a time.
+     */
+    public static long mixString(long hash, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        hash = mix(hash, bytes.length);
+        for (int i = 0; i < bytes.length; i += Long.BYTES) {
+            long word = 0;
+            for (int j = i; j < Math.min(bytes.length, i + Long.BYTES); j++) {
+                word = (word << 8) | (bytes[j] & 0xFF);
+            }
+            hash = mix(hash, word);
+        }
+        return hash;
+    }
+
+    /**
+     * Hashes the ID assignment of a registry: its size and the key of every ID, in order.
+     */
+    public static long registry(IdRegistry registry) {
+        long hash = mix(0, registry.size());
+        for (int id = 0, size = registry.size(); id < size; id++) {
+            String key = registry.getKey(id);
+            hash = key != null ? mixString(hash, key) : mix(hash, -1);
+        }
+        return hash;
+    }
+}
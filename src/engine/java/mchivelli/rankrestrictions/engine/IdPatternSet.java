@@ -0,0 +1,202 @@
+package mchivelli.rankrestrictions.engine;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The compiled {@link IdPatterns patterns} of one restriction set for one registry, resolved to registry IDs
+ * while an index is compiled.
+ * <p>
+ * Exact IDs are looked up directly. Mod wildcards, globs and regexes need a pass over the registry, which is
+ * made once for all of them: globs and regexes are joined into a single {@link Pattern}, so each ID is matched
+ * once instead of once per pattern. Regexes that refer back to their own groups, by number or by name, are kept
+ * as patterns of their own, since joining them would renumber or duplicate the groups. Tags are resolved
+ * separately through a {@link TagProvider}, since their members change when tags are reloaded while the
+ * patterns don't.
+ */
+public final class IdPatternSet {
+    public static final IdPatternSet EMPTY = new IdPatternSet(Set.of(), Set.of(), List.of(), null, List.of());
+
+    private final Set<String> exactIds;
+    private final Set<String> modIds;
+    private final List<String> tagIds;
+    private final Pattern idPattern; // All glob and regex patterns as one alternation, or null
+    private final List<Pattern> groupPatterns; // Regexes with group references, matched one by one
+
+    private IdPatternSet(Set<String> exactIds, Set<String> modIds, List<String> tagIds, Pattern idPattern,
+                         List<Pattern> groupPatterns) {
+        this.exactIds = exactIds;
+        this.modIds = modIds;
+        this.tagIds = tagIds;
+        this.idPattern = idPattern;
+        this.groupPatterns = groupPatterns;
+    }
+
+    /**
+     * Parses a list of pattern entries, each of which may hold several comma-separated patterns.
+     * Invalid patterns are skipped.
+     * @param kind What the patterns match, such as "item", for the warnings.
+     * @param warnings Receives a message for every skipped pattern.
+     */
+    public static IdPatternSet compile(List<String> patternGroups, String kind, Consumer<String> warnings) {
+        Set<String> exactIds = new HashSet<>();
+        Set<String> modIds = new HashSet<>();
+        List<String> tagIds = new ArrayList<>();
+        List<String> regexes = new ArrayList<>();
+        List<Pattern> groupPatterns = new ArrayList<>();
+        for (String patternGroup : patternGroups) {
+            if (patternGroup == null) continue;
+            for (String pattern : IdPatterns.split(patternGroup)) {
+                if (IdPatterns.isRegex(pattern)) {
+                    String regex = pattern.substring(1, pattern.length() - 1);
+                    if (IdPatterns.hasGroupReferences(regex)) {
+                        compileSeparately(regex, kind, warnings, groupPatterns);
+                    } else {
+                        regexes.add(regex);
+                    }
+                } else if (IdPatterns.isTag(pattern)) {
+                    String tagId = IdPatterns.normalizeId(pattern.substring(1));
+                    if (tagId != null) {
+                        tagIds.add(tagId);
+                    } else {
+                        warnings.accept("Invalid " + kind + " tag format or could not parse tag ID: '" + pattern + "'");
+                    }
+                } else if (IdPatterns.isModWildcard(pattern)) {
+                    modIds.add(pattern.substring(0, pattern.length() - 2));
+                } else if (IdPatterns.isGlob(pattern)) {
+                    regexes.add(IdPatterns.globToRegex(pattern));
+                } else {
+                    String id = IdPatterns.normalizeId(pattern);
+                    if (id != null) {
+                        exactIds.add(id);
+                    } else {
+                        warnings.accept("Invalid " + kind + " ID format: '" + pattern + "'");
+                    }
+                }
+            }
+        }
+        if (exactIds.isEmpty() && modIds.isEmpty() && tagIds.isEmpty() && regexes.isEmpty() && groupPatterns.isEmpty()) {
+            return EMPTY;
+        }
+        return new IdPatternSet(Set.copyOf(exactIds), Set.copyOf(modIds), List.copyOf(tagIds), combine(regexes, kind, warnings),
+            List.copyOf(groupPatterns));
+    }
+
+    private static void compileSeparately(String regex, String kind, Consumer<String> warnings, List<Pattern> target) {
+        try {
+            target.add(Pattern.compile(regex));
+        } catch (PatternSyntaxException e) {
+            warnings.accept("Invalid " + kind + " regex pattern '" + regex + "': " + e.getDescription());
+        }
+    }
+
+    /**
+     * Joins the collected regexes into one pattern.
+     * @return The combined pattern, or null if there are none.
+     */
+    private static Pattern combine(List<String> regexes, String kind, Consumer<String> warnings) {
+        if (regexes.isEmpty()) {
+            return null;
+        }
+        StringBuilder combined = new StringBuilder();
+        for (String regex : regexes) {
+            if (combined.length() > 0) {
+                combined.append('|');
+            }
+            combined.append("(?:").append(regex).append(')');
+        }
+        try {
+            return Pattern.compile(combined.toString());
+        } catch (PatternSyntaxException e) {
+            // Only reachable with a regex that skipped validation; drop the patterns rather than the whole set
+            warnings.accept("Invalid " + kind + " regex patterns " + regexes + ": " + e.getDescription());
+            return null;
+        }
+    }
+
+    /**
+     * Sets the IDs of every registry entry matched by an exact ID, mod wildcard, glob or regex. Tags are
+     * not included, see {@link #resolveTags(TagProvider)}.
+     */
+    public void addMatchingIds(IdRegistry registry, BitSet target) {
+        for (String id : exactIds) {
+            int registryId = registry.getId(id);
+            if (registryId >= 0) {
+                target.set(registryId);
+            }
+        }
+        if (!modIds.isEmpty() || idPattern != null || !groupPatterns.isEmpty()) {
+            for (int registryId = 0, size = registry.size(); registryId < size; registryId++) {
+                String key = registry.getKey(registryId);
+                if (key != null && matchesPattern(key)) {
+                    target.set(registryId);
+                }
+            }
+        }
+    }
+
+    /**
+     * Expands the tag patterns into their current members.
+     * @return A new bitset of registry IDs.
+     */
+    public BitSet resolveTags(TagProvider tags) {
+        BitSet members = new BitSet();
+        for (String tagId : tagIds) {
+            tags.addMembers(tagId, members);
+        }
+        return members;
+    }
+
+    /**
+     * Checks an ID against the exact IDs, mod wildcards, globs and regexes, but not tags.
+     * @param id A {@code namespace:path} ID.
+     */
+    public boolean matches(String id) {
+        return exactIds.contains(id) || matchesPattern(id);
+    }
+
+    private boolean matchesPattern(String id) {
+        if ((!modIds.isEmpty() && modIds.contains(IdPatterns.namespace(id)))
+            || (idPattern != null && idPattern.matcher(id).matches())) {
+            return true;
+        }
+        for (Pattern pattern : groupPatterns) {
+            if (pattern.matcher(id).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasTags() {
+        return !tagIds.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof IdPatternSet that)) return false;
+        return exactIds.equals(that.exactIds) &&
+               modIds.equals(that.modIds) &&
+               tagIds.equals(that.tagIds) &&
+               Objects.equals(patternSource(idPattern), patternSource(that.idPattern)) &&
+               groupPatterns.stream().map(Pattern::pattern).toList()
+                   .equals(that.groupPatterns.stream().map(Pattern::pattern).toList());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(exactIds, modIds, tagIds, patternSource(idPattern), groupPatterns.stream().map(Pattern::pattern).toList());
+    }
+
+    private static String patternSource(Pattern pattern) {
+        return pattern != null ? pattern.pattern() : null; // Pattern has no equals()
+    }
+}
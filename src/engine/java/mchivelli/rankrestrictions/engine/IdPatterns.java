@@ -0,0 +1,182 @@
+package mchivelli.rankrestrictions.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Parsing and validation of the item and block patterns written in restriction sets:
+ * <ul>
+ *   <li>{@code minecraft:diamond_sword}: an exact ID; IDs without a namespace are in {@code minecraft}.</li>
+ *   <li>{@code mekanism:*}: every ID of a mod.</li>
+ *   <li>{@code #minecraft:swords}: the members of a tag.</li>
+ *   <li>{@code mekanism:*_upgrade}: a glob, where {@code *} and {@code ?} don't cross the colon.</li>
+ *   <li>{@code /.*:netherite_.*}{@code /}: a regex over the full ID.</li>
+ * </ul>
+ * IDs follow Minecraft's resource location rules: lowercase letters, digits, {@code _ - .} and, in the path,
+ * {@code /}.
+ */
+public final class IdPatterns {
+    public static final String DEFAULT_NAMESPACE = "minecraft";
+
+    private IdPatterns() {
+    }
+
+    /**
+     * Splits a pattern list entry into its comma-separated patterns. A regex, written between slashes,
+     * is always taken whole so it may contain commas.
+     */
+    public static List<String> split(String patternGroup) {
+        String trimmed = patternGroup.trim();
+        if (isRegex(trimmed)) {
+            return List.of(trimmed);
+        }
+        List<String> patterns = new ArrayList<>();
+        for (String p : trimmed.split(",")) {
+            String trimmedPattern = p.trim();
+            if (!trimmedPattern.isEmpty()) {
+                patterns.add(trimmedPattern);
+            }
+        }
+        return patterns;
+    }
+
+    /**
+     * Checks a single pattern without compiling it, for validating a config before it is applied.
+     * @param pattern A trimmed item or block pattern.
+     * @return A description of the problem, or null if the pattern is valid or empty.
+     */
+    public static String validate(String pattern) {
+        if (pattern.isEmpty()) {
+            return null;
+        }
+        if (isRegex(pattern)) {
+            try {
+                Pattern.compile(pattern.substring(1, pattern.length() - 1));
+                return null;
+            } catch (PatternSyntaxException e) {
+                return "invalid regex '" + pattern + "': " + e.getDescription();
+            }
+        }
+        if (isTag(pattern)) {
+            return normalizeId(pattern.substring(1)) != null ? null : "invalid tag '" + pattern + "'";
+        }
+        if (isModWildcard(pattern)) {
+            return isValidNamespace(pattern.substring(0, pattern.length() - 2)) ? null : "invalid mod ID in '" + pattern + "'";
+        }
+        if (isGlob(pattern)) {
+            // Wildcards stand for characters that are valid in an ID
+            return normalizeId(pattern.replace('*', 'a').replace('?', 'a')) != null ? null : "invalid glob '" + pattern + "'";
+        }
+        return normalizeId(pattern) != null ? null : "invalid ID '" + pattern + "'";
+    }
+
+    public static boolean isRegex(String pattern) {
+        return pattern.length() >= 2 && pattern.startsWith("/") && pattern.endsWith("/");
+    }
+
+    public static boolean isTag(String pattern) {
+        return pattern.startsWith("#");
+    }
+
+    public static boolean isModWildcard(String pattern) {
+        // Checked before globs: "modid:*" is the cheaper namespace lookup
+        return pattern.endsWith(":*") && pattern.indexOf('*') == pattern.length() - 1 && pattern.indexOf('?') < 0;
+    }
+
+    public static boolean isGlob(String pattern) {
+        return pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0;
+    }
+
+    /**
+     * Checks whether a regex refers to one of its own groups, with a backreference such as {@code \1} or
+     * {@code \k<name>} or a named group. Such a regex only keeps its meaning when compiled on its own.
+     */
+    public static boolean hasGroupReferences(String regex) {
+        for (int i = 0; i < regex.length() - 1; i++) {
+            char c = regex.charAt(i);
+            char next = regex.charAt(i + 1);
+            if (c == '\\') {
+                if ((next >= '1' && next <= '9') || next == 'k') {
+                    return true;
+                }
+                i++; // Skip the escaped character, which may itself be a backslash
+            } else if (c == '(' && regex.startsWith("?<", i + 1) && i + 3 < regex.length()
+                && regex.charAt(i + 3) != '=' && regex.charAt(i + 3) != '!') {
+                return true; // A named group, not a lookbehind
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Translates a glob over {@code namespace:path} IDs to a regex. {@code *} matches any run of characters and
+     * {@code ?} a single character, neither crossing the colon. Globs without a namespace match in
+     * {@code minecraft}, like exact IDs.
+     */
+    public static String globToRegex(String glob) {
+        String id = glob.indexOf(':') >= 0 ? glob : DEFAULT_NAMESPACE + ":" + glob;
+        StringBuilder regex = new StringBuilder();
+        int literalStart = 0;
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c == '*' || c == '?') {
+                if (i > literalStart) {
+                    regex.append(Pattern.quote(id.substring(literalStart, i)));
+                }
+                regex.append(c == '*' ? "[^:]*" : "[^:]");
+                literalStart = i + 1;
+            }
+        }
+        if (literalStart < id.length()) {
+            regex.append(Pattern.quote(id.substring(literalStart)));
+        }
+        return regex.toString();
+    }
+
+    /**
+     * Parses an ID the way Minecraft parses resource locations, adding the default namespace if it has none.
+     * @return The ID as {@code namespace:path}, or null if it is not valid.
+     */
+    public static String normalizeId(String id) {
+        int colon = id.indexOf(':');
+        String namespace = colon >= 0 ? id.substring(0, colon) : DEFAULT_NAMESPACE;
+        String path = colon >= 0 ? id.substring(colon + 1) : id;
+        if (namespace.isEmpty()) {
+            namespace = DEFAULT_NAMESPACE;
+        }
+        if (!isValidNamespace(namespace) || !isValidPath(path)) {
+            return null;
+        }
+        return namespace + ":" + path;
+    }
+
+    public static boolean isValidNamespace(String namespace) {
+        for (int i = 0; i < namespace.length(); i++) {
+            char c = namespace.charAt(i);
+            if (!(c == '_' || c == '-' || c == '.' || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean isValidPath(String path) {
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (!(c == '_' || c == '-' || c == '.' || c == '/' || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The namespace of a {@code namespace:path} ID.
+     */
+    static String namespace(String id) {
+        int colon = id.indexOf(':');
+        return colon >= 0 ? id.substring(0, colon) : DEFAULT_NAMESPACE;
+    }
+}
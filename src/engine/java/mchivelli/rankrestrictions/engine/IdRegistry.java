@@ -0,0 +1,19 @@
+package mchivelli.rankrestrictions.engine;
+
+/**
+ * The numeric IDs of one registry, such as items or blocks. IDs are dense, from 0 to {@link #size()} - 1,
+ * and keys are written as {@code namespace:path}.
+ */
+public interface IdRegistry {
+    int size();
+
+    /**
+     * @return The ID of the entry with the given key, or -1 if there is none.
+     */
+    int getId(String key);
+
+    /**
+     * @return The key of the entry with the given ID, or null if there is none.
+     */
+    String getKey(int id);
+}
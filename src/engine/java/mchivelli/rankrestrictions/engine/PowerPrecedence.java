@@ -0,0 +1,28 @@
+package mchivelli.rankrestrictions.engine;
+
+import java.util.BitSet;
+
+/**
+ * Resolves allow and deny rules of several ranks by FTB Ranks power. Levels of equal power are applied from the
+ * highest power down, and every ID gets its verdict from the first level that has a rule for it, so lower ranks
+ * can't override it. Within a level, deny wins over allow.
+ */
+public final class PowerPrecedence {
+    private PowerPrecedence() {
+    }
+
+    /**
+     * Applies one power level. Must be called for each level in order of decreasing power.
+     * @param levelDeny The IDs denied by the ranks of this level. Modified: only the IDs this level decided to deny are kept.
+     * @param levelAllow The IDs allowed by the ranks of this level.
+     * @param denied The IDs denied so far, updated with this level.
+     * @param decided The IDs that some level had a rule for so far, updated with this level.
+     */
+    public static void applyLevel(BitSet levelDeny, BitSet levelAllow, BitSet denied, BitSet decided) {
+        // Denies at this level count unless a higher level already decided; they win over allows at this level
+        levelDeny.andNot(decided);
+        denied.or(levelDeny);
+        decided.or(levelDeny);
+        decided.or(levelAllow);
+    }
+}
@@ -0,0 +1,14 @@
+package mchivelli.rankrestrictions.engine;
+
+import java.util.BitSet;
+
+/**
+ * The current members of the tags of one registry.
+ */
+public interface TagProvider {
+    /**
+     * Sets the registry IDs of the tag's members in the target. Unknown tags have no members.
+     * @param tagId The tag's {@code namespace:path} ID, without the leading {@code #}.
+     */
+    void addMembers(String tagId, BitSet target);
+}
@@ -0,0 +1,35 @@
+package mchivelli.rankrestrictions.benchmark;
+
+import net.minecraft.SharedConstants;
+import net.minecraft.server.Bootstrap;
+import net.minecraftforge.fml.loading.FMLPaths;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Boots just enough of Minecraft for the restriction classes to run in a JMH fork: the vanilla
+ * registries, and FML paths pointing at a throwaway game directory so the config can be written and loaded.
+ */
+final class BenchmarkBootstrap {
+    private static Path gameDir;
+
+    private BenchmarkBootstrap() {
+    }
+
+    static synchronized Path init() {
+        if (gameDir == null) {
+            SharedConstants.tryDetectVersion();
+            Bootstrap.bootStrap();
+            try {
+                gameDir = Files.createTempDirectory("rankrestrictions-jmh");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            FMLPaths.loadAbsolutePaths(gameDir);
+        }
+        return gameDir;
+    }
+}
@@ -0,0 +1,218 @@
+package mchivelli.rankrestrictions.benchmark;
+
+import mchivelli.rankrestrictions.engine.Fingerprints;
+import mchivelli.rankrestrictions.engine.IdPatternSet;
+import mchivelli.rankrestrictions.engine.IdRegistry;
+import mchivelli.rankrestrictions.engine.PowerPrecedence;
+import mchivelli.rankrestrictions.engine.TagProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Forge-independent engine against a synthetic registry, without bootstrapping Minecraft: compiling pattern
+ * sets to registry IDs, probing the compiled bitsets, matching single IDs and resolving ranks by power. The
+ * compiled cache is worth it as long as {@code fingerprintRegistry} plus {@code decodeCompiledSets}, what a
+ * cache hit costs besides binding tags, stays well below {@code compileRank}.
+ * <p>
+ * The registry holds {@code registrySize} IDs in 100 mod namespaces. Every tag has a fixed stripe of members,
+ * so tag patterns cost about what a large modpack's tags do.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EngineBenchmark {
+    private static final int PROBES = 4096;
+    private static final int TAG_STRIDE = 97;
+
+    @Param({"50000"})
+    public int registrySize;
+
+    @Param({"5", "20"})
+    public int setsPerRank;
+
+    @Param({"10", "100"})
+    public int patternsPerSet;
+
+    @Param({"4"})
+    public int powerLevels;
+
+    private SyntheticRegistry registry;
+    private List<List<String>> rawSets;
+    private List<IdPatternSet> compiledSets;
+    private BitSet restrictedIds;
+    private BitSet[] levelDeny;
+    private BitSet[] levelAllow;
+    private ByteBuffer encodedSets;
+    private int[] probeIds;
+    private String[] probeKeys;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        List<String> itemIds = RestrictionWorkload.syntheticItemIds(registrySize, 100);
+        List<String> namespaces = RestrictionWorkload.namespaces(itemIds);
+        registry = new SyntheticRegistry(itemIds);
+
+        rawSets = new ArrayList<>();
+        compiledSets = new ArrayList<>();
+        restrictedIds = new BitSet(registrySize);
+        List<long[]> setWords = new ArrayList<>();
+        for (int i = 0; i < setsPerRank; i++) {
+            List<String> patterns = new ArrayList<>(RestrictionWorkload.patterns(random, itemIds, namespaces, patternsPerSet));
+            // A glob per set, so the combined pattern pass is part of compiling
+            patterns.add(namespaces.get(random.nextInt(namespaces.size())) + ":item_" + random.nextInt(10) + "*");
+            rawSets.add(patterns);
+            IdPatternSet compiled = IdPatternSet.compile(patterns, "item", warning -> { });
+            compiledSets.add(compiled);
+            BitSet setBits = new BitSet(registrySize);
+            compiled.addMatchingIds(registry, setBits);
+            setBits.or(compiled.resolveTags(registry));
+            restrictedIds.or(setBits);
+            setWords.add(setBits.toLongArray());
+        }
+        // Laid out like the compiled cache file: length-prefixed words per set
+        encodedSets = ByteBuffer.allocate(setWords.stream().mapToInt(words -> Integer.BYTES + words.length * Long.BYTES).sum());
+        for (long[] words : setWords) {
+            encodedSets.putInt(words.length);
+            for (long word : words) {
+                encodedSets.putLong(word);
+            }
+        }
+
+        levelDeny = new BitSet[powerLevels];
+        levelAllow = new BitSet[powerLevels];
+        for (int level = 0; level < powerLevels; level++) {
+            levelDeny[level] = randomBits(random, registrySize / 10);
+            levelAllow[level] = randomBits(random, registrySize / 50);
+        }
+
+        probeIds = new int[PROBES];
+        probeKeys = new String[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probeIds[i] = random.nextInt(registrySize);
+            probeKeys[i] = itemIds.get(probeIds[i]);
+        }
+    }
+
+    private BitSet randomBits(Random random, int count) {
+        BitSet bits = new BitSet(registrySize);
+        for (int i = 0; i < count; i++) {
+            bits.set(random.nextInt(registrySize));
+        }
+        return bits;
+    }
+
+    private int next() {
+        cursor = (cursor + 1) & (PROBES - 1);
+        return cursor;
+    }
+
+    @Benchmark
+    public BitSet compileRank() {
+        BitSet target = new BitSet(registrySize);
+        for (List<String> patterns : rawSets) {
+            IdPatternSet compiled = IdPatternSet.compile(patterns, "item", warning -> { });
+            compiled.addMatchingIds(registry, target);
+            target.or(compiled.resolveTags(registry));
+        }
+        return target;
+    }
+
+    @Benchmark
+    public long fingerprintRegistry() {
+        return Fingerprints.registry(registry);
+    }
+
+    @Benchmark
+    public BitSet decodeCompiledSets() {
+        ByteBuffer buffer = encodedSets.duplicate().position(0);
+        BitSet last = null;
+        for (int i = 0; i < setsPerRank; i++) {
+            int words = buffer.getInt();
+            last = BitSet.valueOf(buffer.asLongBuffer().limit(words));
+            buffer.position(buffer.position() + words * Long.BYTES);
+        }
+        return last;
+    }
+
+    @Benchmark
+    public boolean probeCompiled() {
+        return restrictedIds.get(probeIds[next()]);
+    }
+
+    @Benchmark
+    public boolean matchIdAgainstSets() {
+        String key = probeKeys[next()];
+        for (IdPatternSet set : compiledSets) {
+            if (set.matches(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Benchmark
+    public BitSet resolvePowerLevels() {
+        BitSet denied = new BitSet(registrySize);
+        BitSet decided = new BitSet(registrySize);
+        for (int level = 0; level < powerLevels; level++) {
+            PowerPrecedence.applyLevel((BitSet) levelDeny[level].clone(), levelAllow[level], denied, decided);
+        }
+        return denied;
+    }
+
+    /**
+     * A flat registry of synthetic IDs. Each tag's members are every {@value #TAG_STRIDE}th ID from an offset
+     * derived from the tag's name.
+     */
+    private static final class SyntheticRegistry implements IdRegistry, TagProvider {
+        private final String[] keys;
+        private final Map<String, Integer> ids = new HashMap<>();
+
+        SyntheticRegistry(List<String> keys) {
+            this.keys = keys.toArray(new String[0]);
+            for (int i = 0; i < this.keys.length; i++) {
+                ids.put(this.keys[i], i);
+            }
+        }
+
+        @Override
+        public int size() {
+            return keys.length;
+        }
+
+        @Override
+        public int getId(String key) {
+            return ids.getOrDefault(key, -1);
+        }
+
+        @Override
+        public String getKey(int id) {
+            return id >= 0 && id < keys.length ? keys[id] : null;
+        }
+
+        @Override
+        public void addMembers(String tagId, BitSet target) {
+            for (int id = Math.floorMod(tagId.hashCode(), TAG_STRIDE); id < keys.length; id += TAG_STRIDE) {
+                target.set(id);
+            }
+        }
+    }
+}
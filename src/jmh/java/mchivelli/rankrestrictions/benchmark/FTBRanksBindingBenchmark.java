@@ -0,0 +1,149 @@
+package mchivelli.rankrestrictions.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-event cost of the old reflective FTBRanksHelper call sequence with the
+ * method-handle binding it uses now.
+ * <p>
+ * FTBRanks needs a running server, so the benchmark calls a stand-in with the same API shape:
+ * a static API accessor, a static manager accessor, {@code getRanks(player)} and {@code Rank.getId()}.
+ * Both paths call the same stand-in, so the difference is the binding overhead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FTBRanksBindingBenchmark {
+    private static final Method GET_API_METHOD;
+    private static final Method GET_MANAGER_METHOD;
+    private static final Method GET_PLAYER_RANKS_METHOD;
+    private static final Method GET_RANK_ID_METHOD;
+
+    private static final MethodHandle GET_PLAYER_RANKS;
+    private static final MethodHandle GET_RANK_ID;
+
+    static {
+        try {
+            GET_API_METHOD = Api.class.getMethod("getInstance");
+            GET_MANAGER_METHOD = Api.class.getMethod("manager");
+            GET_PLAYER_RANKS_METHOD = Manager.class.getMethod("getRanks", Object.class);
+            GET_RANK_ID_METHOD = Rank.class.getMethod("getId");
+
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            GET_PLAYER_RANKS = lookup.unreflect(GET_PLAYER_RANKS_METHOD)
+                .asType(MethodType.methodType(List.class, Object.class, Object.class));
+            GET_RANK_ID = lookup.unreflect(GET_RANK_ID_METHOD)
+                .asType(MethodType.methodType(String.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Param({"1", "5", "20"})
+    public int ranksPerPlayer;
+
+    private final Object player = new Object();
+    private Object cachedManager;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        List<Rank> ranks = new ArrayList<>();
+        for (int i = 0; i < ranksPerPlayer; i++) {
+            ranks.add(new Rank("rank_" + i));
+        }
+        Api.instance = new Api(new Manager(ranks));
+        cachedManager = Api.manager();
+    }
+
+    @Benchmark
+    public void reflective(Blackhole blackhole) throws Exception {
+        // isApiAvailable()
+        Object api = GET_API_METHOD.invoke(null);
+        blackhole.consume(api != null && GET_MANAGER_METHOD.invoke(api) != null);
+
+        // getPlayerRanks(player)
+        api = GET_API_METHOD.invoke(null);
+        Object manager = GET_MANAGER_METHOD.invoke(api);
+        List<?> ranks = (List<?>) GET_PLAYER_RANKS_METHOD.invoke(manager, player);
+
+        // getRankName(rank) for each rank
+        for (Object rank : ranks) {
+            blackhole.consume((String) GET_RANK_ID_METHOD.invoke(rank));
+        }
+    }
+
+    @Benchmark
+    public void methodHandles(Blackhole blackhole) throws Throwable {
+        // isApiAvailable() is a null check on the cached manager
+        Object manager = cachedManager;
+        blackhole.consume(manager != null);
+
+        List<?> ranks = (List<?>) GET_PLAYER_RANKS.invokeExact(manager, player);
+        for (Object rank : ranks) {
+            blackhole.consume((String) GET_RANK_ID.invokeExact(rank));
+        }
+    }
+
+    public static class Api {
+        static Api instance;
+        private final Manager manager;
+
+        Api(Manager manager) {
+            this.manager = manager;
+        }
+
+        public static Api getInstance() {
+            return instance;
+        }
+
+        public static Manager manager() {
+            return instance.manager;
+        }
+    }
+
+    public static class Manager {
+        private final List<Rank> ranks;
+
+        Manager(List<Rank> ranks) {
+            this.ranks = ranks;
+        }
+
+        // Mirrors RankManager#getRanks, which filters every rank by its condition into a new list
+        public List<Rank> getRanks(Object player) {
+            return ranks.stream().filter(rank -> rank.isActive(player)).toList();
+        }
+    }
+
+    public static class Rank {
+        private final String id;
+
+        Rank(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public boolean isActive(Object player) {
+            return player != null;
+        }
+    }
+}
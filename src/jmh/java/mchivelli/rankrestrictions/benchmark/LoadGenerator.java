@@ -0,0 +1,383 @@
+package mchivelli.rankrestrictions.benchmark;
+
+import mchivelli.rankrestrictions.cache.MessageCooldowns;
+import mchivelli.rankrestrictions.cache.PlayerRestrictionCache;
+import mchivelli.rankrestrictions.cache.PlayerRestrictionView;
+import mchivelli.rankrestrictions.cache.SimulatedPlayerViews;
+import mchivelli.rankrestrictions.config.RankRestrictionsConfig;
+import mchivelli.rankrestrictions.config.RestrictionIndex;
+import mchivelli.rankrestrictions.metrics.LatencyHistogram;
+import mchivelli.rankrestrictions.metrics.RestrictionMetrics;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.enchantment.Enchantments;
+import net.minecraft.world.level.block.Block;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Load test of the restriction decision path with thousands of simulated players, for checking capacity
+ * before a network grows. Run with {@code ./gradlew loadTest}, passing options as
+ * {@code -PloadTest.args="--players=5000 --seconds=60"}.
+ * <p>
+ * A config with {@code --ranks} ranks is written to a real restrictions.toml and loaded, like the config
+ * benchmark does. Every simulated player holds a number of ranks drawn from {@code --rank-mix} (for example
+ * {@code 1:50,2:35,3:15}: half the players have one rank), with low-numbered ranks more common, like a default
+ * rank most players share. Worker threads then fire pickup, item use, equip, block use, entity interaction and
+ * entity attack decisions drawn from {@code --event-mix}, each going through the same steps as the handler in
+ * {@code ItemRestrictionEvents}: the player cache, the stack, block or entity type check, and on a denial the
+ * restricting rank and the message. Sending
+ * messages, logging and changing inventories are left out, since they don't depend on the restrictions.
+ * <p>
+ * Simulated ticks follow the wall clock at 20 per second, so player views expire and are rebuilt as on a
+ * server. After {@code --warmup} seconds the run is measured for {@code --seconds} seconds and reports the
+ * throughput, the bytes allocated per event from {@code ThreadMXBean}, and latency percentiles per event kind.
+ * Latency includes the cost of reading the clock.
+ */
+public final class LoadGenerator {
+    private static final RestrictionMetrics.Handler[] KINDS = {
+        RestrictionMetrics.Handler.PICKUP, RestrictionMetrics.Handler.USE_ITEM,
+        RestrictionMetrics.Handler.EQUIP, RestrictionMetrics.Handler.USE_BLOCK,
+        RestrictionMetrics.Handler.INTERACT_ENTITY, RestrictionMetrics.Handler.ATTACK_ENTITY
+    };
+    private static final int STACKS = 4096;
+    private static final long NANOS_PER_TICK = 50_000_000L;
+
+    private final Map<String, String> options;
+    private final RankRestrictionsConfig config;
+    private final RestrictionMetrics metrics = new RestrictionMetrics();
+    private final PlayerRestrictionCache playerCache;
+    private final MessageCooldowns pickupMessageCooldowns = new MessageCooldowns(5000); // As in ItemRestrictionEvents
+    private final MessageCooldowns entityMessageCooldowns = new MessageCooldowns(2000);
+    private final SimulatedPlayer[] players;
+    private final ItemStack[] stacks;
+    private final Block[] blocks;
+    private final EntityType<?>[] entityTypes;
+    private final int[] eventWeights;
+    private final Map<RestrictionMetrics.Handler, LatencyHistogram> latencies = new EnumMap<>(RestrictionMetrics.Handler.class);
+    private volatile long startNanos;
+
+    private record SimulatedPlayer(UUID id, String[] rankIds, int[] powers) {
+    }
+
+    private LoadGenerator(Map<String, String> options) throws IOException {
+        this.options = options;
+        Path gameDir = BenchmarkBootstrap.init();
+        Random random = new Random(intOption("seed", 42));
+
+        int ranks = intOption("ranks", 20);
+        writeConfig(gameDir, random, ranks);
+        config = new RankRestrictionsConfig();
+        config.loadConfig();
+        playerCache = new PlayerRestrictionCache(config, metrics);
+
+        players = createPlayers(random, intOption("players", 2000), ranks, parseWeights(option("rank-mix", "1:50,2:35,3:15")));
+        stacks = createStacks(random);
+        List<Block> blockList = new ArrayList<>();
+        BuiltInRegistries.BLOCK.forEach(blockList::add);
+        blocks = blockList.toArray(new Block[0]);
+        List<EntityType<?>> entityTypeList = new ArrayList<>();
+        BuiltInRegistries.ENTITY_TYPE.forEach(entityTypeList::add);
+        entityTypes = entityTypeList.toArray(new EntityType<?>[0]);
+
+        Map<String, Integer> eventMix = parseWeights(option("event-mix",
+            "pickup:40,use_item:30,equip:15,use_block:5,interact_entity:5,attack_entity:5"));
+        eventWeights = new int[KINDS.length];
+        for (int i = 0; i < KINDS.length; i++) {
+            eventWeights[i] = eventMix.getOrDefault(KINDS[i].name().toLowerCase(Locale.ROOT), 0);
+            latencies.put(KINDS[i], new LatencyHistogram());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got '" + arg + "'");
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        new LoadGenerator(options).run();
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private int intOption(String name, int defaultValue) {
+        return Integer.parseInt(option(name, String.valueOf(defaultValue)));
+    }
+
+    /**
+     * Parses weights written as {@code key:weight,key:weight}.
+     */
+    private static Map<String, Integer> parseWeights(String spec) {
+        Map<String, Integer> weights = new HashMap<>();
+        for (String entry : spec.split(",")) {
+            String[] parts = entry.trim().split(":");
+            weights.put(parts[0].trim().toLowerCase(Locale.ROOT), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    private static int pick(int[] weights, int roll) {
+        for (int i = 0; i < weights.length; i++) {
+            roll -= weights[i];
+            if (roll < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    /**
+     * Writes ranks with deny sets over vanilla items, blocks and entity types and synthetic mod namespaces, some with NBT
+     * conditions, and allow sets on every fourth rank. Ranks share five power levels, so ties are resolved too.
+     */
+    private void writeConfig(Path gameDir, Random random, int ranks) throws IOException {
+        int setsPerRank = intOption("sets-per-rank", 5);
+        int patternsPerSet = intOption("patterns-per-set", 25);
+        List<String> itemIds = new ArrayList<>();
+        BuiltInRegistries.ITEM.keySet().forEach(key -> itemIds.add(key.toString()));
+        List<String> blockIds = new ArrayList<>();
+        BuiltInRegistries.BLOCK.keySet().forEach(key -> blockIds.add(key.toString()));
+        List<String> entityIds = new ArrayList<>();
+        BuiltInRegistries.ENTITY_TYPE.keySet().forEach(key -> entityIds.add(key.toString()));
+        List<String> namespaces = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            namespaces.add("mod" + i);
+        }
+
+        StringBuilder toml = new StringBuilder("[messages]\ndefault_restriction = \"&cNo %item% for you\"\n\n");
+        for (int r = 0; r < ranks; r++) {
+            for (int s = 0; s < setsPerRank; s++) {
+                toml.append("[[restrictions.rank_").append(r).append(".restriction_sets]]\n");
+                boolean allow = r % 4 == 3 && s == 0;
+                if (allow) {
+                    toml.append("action = \"allow\"\n");
+                } else {
+                    toml.append("message = \"&cRank ").append(r).append(" set ").append(s).append(" blocks %item%\"\n");
+                    if (s == 1) {
+                        toml.append("nbt = [\"enchantment minecraft:sharpness >= ").append(3 + random.nextInt(3)).append("\"]\n");
+                    }
+                }
+                appendPatterns(toml, "items", RestrictionWorkload.patterns(random, itemIds, namespaces, patternsPerSet));
+                if (s == 2) {
+                    appendPatterns(toml, "blocks", RestrictionWorkload.patterns(random, blockIds, namespaces, patternsPerSet / 5 + 1));
+                }
+                if (s == 3) {
+                    appendPatterns(toml, "entities", RestrictionWorkload.patterns(random, entityIds, namespaces, patternsPerSet / 5 + 1));
+                }
+                toml.append('\n');
+            }
+        }
+        Path configFile = gameDir.resolve("config/rankrestrictions/restrictions.toml");
+        Files.createDirectories(configFile.getParent());
+        Files.writeString(configFile, toml);
+    }
+
+    private static void appendPatterns(StringBuilder toml, String key, List<String> patterns) {
+        toml.append(key).append(" = [");
+        for (String pattern : patterns) {
+            toml.append('"').append(pattern).append("\", ");
+        }
+        toml.append("]\n");
+    }
+
+    private static SimulatedPlayer[] createPlayers(Random random, int count, int ranks, Map<String, Integer> rankMix) {
+        int maxRanks = rankMix.keySet().stream().mapToInt(Integer::parseInt).max().orElse(1);
+        int[] weights = new int[maxRanks];
+        rankMix.forEach((rankCount, weight) -> weights[Integer.parseInt(rankCount) - 1] = weight);
+        int totalWeight = Arrays.stream(weights).sum();
+
+        SimulatedPlayer[] players = new SimulatedPlayer[count];
+        for (int p = 0; p < count; p++) {
+            int rankCount = Math.min(ranks, pick(weights, random.nextInt(totalWeight)) + 1);
+            List<String> rankIds = new ArrayList<>();
+            while (rankIds.size() < rankCount) {
+                // Squared, so the first ranks are held by many players and the last by few
+                double roll = random.nextDouble();
+                String rankId = "rank_" + (int) (roll * roll * ranks);
+                if (!rankIds.contains(rankId)) {
+                    rankIds.add(rankId);
+                }
+            }
+            int[] powers = rankIds.stream().mapToInt(rankId -> Integer.parseInt(rankId.substring(5)) % 5 * 10).toArray();
+            players[p] = new SimulatedPlayer(new UUID(random.nextLong(), random.nextLong()), rankIds.toArray(new String[0]), powers);
+        }
+        return players;
+    }
+
+    private static ItemStack[] createStacks(Random random) {
+        List<Item> items = new ArrayList<>();
+        BuiltInRegistries.ITEM.forEach(items::add);
+        ItemStack[] stacks = new ItemStack[STACKS];
+        for (int i = 0; i < STACKS; i++) {
+            stacks[i] = new ItemStack(items.get(random.nextInt(items.size())));
+            if (random.nextInt(10) == 0) {
+                stacks[i].enchant(Enchantments.SHARPNESS, 1 + random.nextInt(5));
+            }
+        }
+        return stacks;
+    }
+
+    private void run() throws InterruptedException {
+        int threads = intOption("threads", 1);
+        long warmupNanos = intOption("warmup", 5) * 1_000_000_000L;
+        long measureNanos = intOption("seconds", 30) * 1_000_000_000L;
+        int totalEventWeight = Arrays.stream(eventWeights).sum();
+        System.out.println("Simulating " + players.length + " players with " + config.getRankRestrictions().size() +
+                           " ranks on " + threads + " thread(s)");
+
+        long[] allocatedBytes = new long[threads];
+        long[][] events = new long[threads][KINDS.length];
+        long[][] denials = new long[threads][KINDS.length];
+        Thread[] workers = new Thread[threads];
+        startNanos = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            workers[t] = new Thread(() -> {
+                SplittableRandom random = new SplittableRandom(worker);
+                runEvents(random, totalEventWeight, startNanos + warmupNanos, null, null);
+                long allocatedBefore = currentThreadAllocatedBytes();
+                runEvents(random, totalEventWeight, startNanos + warmupNanos + measureNanos, events[worker], denials[worker]);
+                allocatedBytes[worker] = currentThreadAllocatedBytes() - allocatedBefore;
+            }, "rankrestrictions-load-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long[] totalEvents = new long[KINDS.length];
+        long[] totalDenials = new long[KINDS.length];
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < KINDS.length; i++) {
+                totalEvents[i] += events[t][i];
+                totalDenials[i] += denials[t][i];
+            }
+        }
+        report(measureNanos, Arrays.stream(allocatedBytes).sum(), totalEvents, totalDenials);
+    }
+
+    /**
+     * Fires events until the given time.
+     * @param events Counts the events per kind, or null while warming up.
+     * @param denials Counts the denials per kind, or null while warming up.
+     */
+    private void runEvents(SplittableRandom random, int totalEventWeight, long untilNanos, long[] events, long[] denials) {
+        long now = System.nanoTime();
+        while (now < untilNanos) {
+            int kind = pick(eventWeights, random.nextInt(totalEventWeight));
+            SimulatedPlayer player = players[random.nextInt(players.length)];
+            long tick = (now - startNanos) / NANOS_PER_TICK;
+            long start = System.nanoTime();
+            boolean denied = switch (KINDS[kind]) {
+                case USE_BLOCK -> checkBlock(player, tick, blocks[random.nextInt(blocks.length)]);
+                case INTERACT_ENTITY, ATTACK_ENTITY ->
+                    checkEntity(KINDS[kind], player, tick, entityTypes[random.nextInt(entityTypes.length)], random.nextInt(64));
+                default -> checkStack(KINDS[kind], player, tick, stacks[random.nextInt(STACKS)], random.nextInt(64));
+            };
+            now = System.nanoTime();
+            if (events != null) {
+                latencies.get(KINDS[kind]).record(now - start);
+                events[kind]++;
+                if (denied) {
+                    denials[kind]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * The decision steps of the pickup, item use and equip handlers.
+     */
+    private boolean checkStack(RestrictionMetrics.Handler kind, SimulatedPlayer player, long tick, ItemStack stack, int entityId) {
+        long start = metrics.start();
+        int itemIndex = RestrictionIndex.itemId(stack.getItem());
+        PlayerRestrictionView view = SimulatedPlayerViews.get(playerCache, player.id(), tick, player.rankIds(), player.powers());
+        boolean denied = itemIndex >= 0 && view.isStackRestricted(itemIndex, stack);
+        // Pickup only messages once per cooldown, as it is attempted every tick while standing on the item
+        if (denied && (kind != RestrictionMetrics.Handler.PICKUP
+                || pickupMessageCooldowns.tryAcquire(player.id(), entityId, System.currentTimeMillis()))) {
+            String rankId = view.getRestrictingRank(itemIndex, stack);
+            config.getRestrictionMessage(stack, rankId).replace("%item%", stack.getDisplayName().getString());
+        }
+        metrics.record(kind, start, denied ? 1 : 0);
+        return denied;
+    }
+
+    /**
+     * The decision steps of the block use handler.
+     */
+    private boolean checkBlock(SimulatedPlayer player, long tick, Block block) {
+        long start = metrics.start();
+        boolean denied = false;
+        if (config.getRestrictionIndex().hasBlockRules()) {
+            PlayerRestrictionView view = SimulatedPlayerViews.get(playerCache, player.id(), tick, player.rankIds(), player.powers());
+            int blockIndex = RestrictionIndex.blockId(block);
+            if (view.hasBlockRestrictions() && view.isBlockRestricted(blockIndex) && block.defaultBlockState().hasBlockEntity()) {
+                String rankId = view.getRestrictingBlockRank(blockIndex);
+                config.getBlockRestrictionMessage(block, rankId).replace("%item%", block.getName().getString());
+                denied = true;
+            }
+        }
+        metrics.record(RestrictionMetrics.Handler.USE_BLOCK, start, denied ? 1 : 0);
+        return denied;
+    }
+
+    /**
+     * The decision steps of the entity interaction and attack handlers.
+     */
+    private boolean checkEntity(RestrictionMetrics.Handler kind, SimulatedPlayer player, long tick, EntityType<?> type, int entityId) {
+        long start = metrics.start();
+        boolean denied = false;
+        if (config.getRestrictionIndex().hasEntityRules()) {
+            PlayerRestrictionView view = SimulatedPlayerViews.get(playerCache, player.id(), tick, player.rankIds(), player.powers());
+            int entityTypeIndex = RestrictionIndex.entityTypeId(type);
+            if (view.hasEntityRestrictions() && view.isEntityRestricted(entityTypeIndex)) {
+                String rankId = view.getRestrictingEntityRank(entityTypeIndex);
+                // Interactions fire once per hand and attacks once per swing, so only message once per cooldown
+                if (entityMessageCooldowns.tryAcquire(player.id(), entityId, System.currentTimeMillis())) {
+                    config.getEntityRestrictionMessage(type, rankId).replace("%item%", type.getDescription().getString());
+                }
+                denied = true;
+            }
+        }
+        metrics.record(kind, start, denied ? 1 : 0);
+        return denied;
+    }
+
+    private static long currentThreadAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    private void report(long measureNanos, long allocatedBytes, long[] events, long[] denials) {
+        double seconds = measureNanos / 1e9;
+        long total = Arrays.stream(events).sum();
+        System.out.printf("events=%d throughput=%.0f/s allocated=%.1f MB/s (%.1f B/event)%n",
+            total, total / seconds, allocatedBytes / seconds / (1 << 20), total == 0 ? 0.0 : (double) allocatedBytes / total);
+        for (int i = 0; i < KINDS.length; i++) {
+            LatencyHistogram.Snapshot latency = latencies.get(KINDS[i]).snapshot();
+            System.out.printf("%-16s events=%d denied=%d p50=%dns p90=%dns p99=%dns p99.9=%dns max=%dns%n",
+                KINDS[i].getDisplayName(), events[i], denials[i],
+                latency.getValueAtPercentile(50), latency.getValueAtPercentile(90), latency.getValueAtPercentile(99),
+                latency.getValueAtPercentile(99.9), latency.getValueAtPercentile(100));
+        }
+        metrics.formatReport().stream().filter(line -> line.startsWith("player cache")).forEach(System.out::println);
+    }
+}
@@ -0,0 +1,117 @@
+package mchivelli.rankrestrictions.benchmark;
+
+import mchivelli.rankrestrictions.config.RankRestrictionsConfig;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.Item;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Config-level decision path: {@link RankRestrictionsConfig#isItemRestrictedForRank} and
+ * {@link RankRestrictionsConfig#getRestrictionMessage}, with the config written to and loaded from
+ * a real restrictions.toml so the same load and compile path as on a server is used.
+ * <p>
+ * Patterns reference the bootstrapped vanilla registry plus synthetic mod namespaces, like a modpack
+ * config where most wildcards name mods that don't share IDs with the probed items.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RankRestrictionsConfigBenchmark {
+    private static final int PROBES = 4096;
+
+    @Param({"5", "20", "50"})
+    public int ranks;
+
+    @Param({"1", "5", "20"})
+    public int setsPerRank;
+
+    @Param({"25"})
+    public int patternsPerSet;
+
+    private RankRestrictionsConfig config;
+    private String[] probeRanks;
+    private ResourceLocation[] probeIds;
+    private Item[] probeItems;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Path gameDir = BenchmarkBootstrap.init();
+        Random random = new Random(42);
+
+        List<String> itemIds = new ArrayList<>();
+        BuiltInRegistries.ITEM.keySet().forEach(key -> itemIds.add(key.toString()));
+        List<String> namespaces = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            namespaces.add("mod" + i);
+        }
+
+        StringBuilder toml = new StringBuilder("[messages]\ndefault_restriction = \"&cNo %item% for you\"\n\n");
+        for (int r = 0; r < ranks; r++) {
+            for (int s = 0; s < setsPerRank; s++) {
+                toml.append("[[restrictions.rank_").append(r).append(".restriction_sets]]\n");
+                toml.append("message = \"&cRank ").append(r).append(" set ").append(s).append(" blocks %item%\"\n");
+                toml.append("items = [");
+                for (String pattern : RestrictionWorkload.patterns(random, itemIds, namespaces, patternsPerSet)) {
+                    toml.append('"').append(pattern).append("\", ");
+                }
+                toml.append("]\n\n");
+            }
+        }
+        Path configFile = gameDir.resolve("config/rankrestrictions/restrictions.toml");
+        Files.createDirectories(configFile.getParent());
+        Files.writeString(configFile, toml);
+
+        config = new RankRestrictionsConfig();
+        config.loadConfig();
+
+        probeRanks = new String[PROBES];
+        probeIds = new ResourceLocation[PROBES];
+        probeItems = new Item[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probeRanks[i] = "rank_" + random.nextInt(ranks);
+            probeIds[i] = new ResourceLocation(itemIds.get(random.nextInt(itemIds.size())));
+            probeItems[i] = BuiltInRegistries.ITEM.get(probeIds[i]);
+        }
+    }
+
+    private int next() {
+        cursor = (cursor + 1) & (PROBES - 1);
+        return cursor;
+    }
+
+    @Benchmark
+    public boolean isItemRestrictedForRankByLocation() {
+        int i = next();
+        return config.isItemRestrictedForRank(probeRanks[i], probeIds[i]);
+    }
+
+    @Benchmark
+    public boolean isItemRestrictedForRankByItem() {
+        int i = next();
+        return config.isItemRestrictedForRank(probeRanks[i], probeItems[i]);
+    }
+
+    @Benchmark
+    public String getRestrictionMessage() {
+        int i = next();
+        return config.getRestrictionMessage(probeIds[i], probeRanks[i]);
+    }
+}
@@ -0,0 +1,177 @@
+package mchivelli.rankrestrictions.benchmark;
+
+import mchivelli.rankrestrictions.config.RankRestrictionsConfig;
+import mchivelli.rankrestrictions.config.RestrictionIndex;
+import mchivelli.rankrestrictions.metrics.EventRecorder;
+import mchivelli.rankrestrictions.metrics.LatencyHistogram;
+import net.minecraft.core.registries.BuiltInRegistries;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Feeds a recording made with {@code /rankrestrictions record} back into the restriction index of this build,
+ * to compare verdicts and timings between builds. Run with
+ * {@code ./gradlew replayRecording -Preplay.args="--recording=<file.bin> --config=<restrictions.toml>"}.
+ * <p>
+ * The given config is loaded like on a server, and every recorded rank set is resolved to a decision once.
+ * Each record is then decided again by registry ID and the verdict compared with the recorded one. Stacks whose
+ * verdict depended on their NBT can't be reproduced from the ID and are counted apart. Registry IDs depend on
+ * the installed mods and the replay only has the vanilla registries, so a warning is printed when the registry
+ * sizes differ from the recording's.
+ * <p>
+ * Recorded timings cover the player cache lookup and the check on the server, replayed timings only the check,
+ * so compare recorded with recorded and replayed with replayed across builds.
+ */
+public final class RecordingReplay {
+    private static final int MAX_MISMATCHES_SHOWN = 20;
+
+    private RecordingReplay() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got '" + arg + "'");
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        if (!options.containsKey("recording") || !options.containsKey("config")) {
+            throw new IllegalArgumentException("Usage: --recording=<file.bin> --config=<restrictions.toml>");
+        }
+        Path recording = Path.of(options.get("recording"));
+
+        Path gameDir = BenchmarkBootstrap.init();
+        Path configFile = gameDir.resolve("config/rankrestrictions/restrictions.toml");
+        Files.createDirectories(configFile.getParent());
+        Files.copy(Path.of(options.get("config")), configFile, StandardCopyOption.REPLACE_EXISTING);
+        RankRestrictionsConfig config = new RankRestrictionsConfig();
+        config.loadConfig();
+
+        RestrictionIndex.Decision[] decisions = resolveRankSets(config.getRestrictionIndex(), EventRecorder.ranksFile(recording));
+        try (FileChannel channel = FileChannel.open(recording)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != EventRecorder.MAGIC || buffer.getInt(4) != EventRecorder.VERSION
+                    || buffer.getInt(8) != EventRecorder.RECORD_SIZE) {
+                throw new IOException("Not a version " + EventRecorder.VERSION + " recording: " + recording);
+            }
+            if (buffer.getInt(EventRecorder.HEADER_ITEM_REGISTRY_SIZE) != BuiltInRegistries.ITEM.size()
+                    || buffer.getInt(EventRecorder.HEADER_BLOCK_REGISTRY_SIZE) != BuiltInRegistries.BLOCK.size()
+                    || buffer.getInt(EventRecorder.HEADER_ENTITY_REGISTRY_SIZE) != BuiltInRegistries.ENTITY_TYPE.size()) {
+                System.out.println("Warning: the recording was made with different registries, IDs may not match");
+            }
+            replay(buffer, decisions);
+        }
+    }
+
+    /**
+     * Reads the rank sets written next to the recording, as {@code id<TAB>rank:power,rank:power}.
+     */
+    private static RestrictionIndex.Decision[] resolveRankSets(RestrictionIndex index, Path ranksFile) throws IOException {
+        List<RestrictionIndex.Decision> decisions = new ArrayList<>();
+        for (String line : Files.readAllLines(ranksFile)) {
+            if (line.isBlank()) continue;
+            String[] columns = line.split("\t", -1);
+            int id = Integer.parseInt(columns[0]);
+            String[] ranks = columns[1].isEmpty() ? new String[0] : columns[1].split(",");
+            String[] rankIds = new String[ranks.length];
+            int[] powers = new int[ranks.length];
+            for (int i = 0; i < ranks.length; i++) {
+                int colon = ranks[i].lastIndexOf(':');
+                rankIds[i] = ranks[i].substring(0, colon);
+                powers[i] = Integer.parseInt(ranks[i].substring(colon + 1));
+            }
+            while (decisions.size() <= id) {
+                decisions.add(null);
+            }
+            decisions.set(id, index.decide(rankIds, powers));
+        }
+        return decisions.toArray(new RestrictionIndex.Decision[0]);
+    }
+
+    private static void replay(MappedByteBuffer buffer, RestrictionIndex.Decision[] decisions) {
+        long capacity = buffer.getInt(EventRecorder.HEADER_CAPACITY);
+        long count = buffer.getLong(EventRecorder.HEADER_COUNT);
+        // Once the ring wrapped, the oldest record is the one the next write would have replaced
+        long first = count > capacity ? count % capacity : 0;
+        long records = Math.min(count, capacity);
+
+        EventRecorder.Kind[] kinds = EventRecorder.Kind.values();
+        LatencyHistogram[] recordedLatency = new LatencyHistogram[kinds.length];
+        LatencyHistogram[] replayedLatency = new LatencyHistogram[kinds.length];
+        long[] compared = new long[kinds.length];
+        long[] mismatched = new long[kinds.length];
+        for (int i = 0; i < kinds.length; i++) {
+            recordedLatency[i] = new LatencyHistogram();
+            replayedLatency[i] = new LatencyHistogram();
+        }
+        long nbtDependent = 0;
+        long unknownRankSets = 0;
+        List<String> mismatches = new ArrayList<>();
+
+        for (long r = 0; r < records; r++) {
+            int position = EventRecorder.HEADER_SIZE + (int) ((first + r) % capacity) * EventRecorder.RECORD_SIZE;
+            EventRecorder.Kind kind = kinds[buffer.get(position + EventRecorder.RECORD_KIND)];
+            int registryId = buffer.getInt(position + EventRecorder.RECORD_REGISTRY_ID);
+            int rankSet = buffer.getInt(position + EventRecorder.RECORD_RANK_SET);
+            boolean recordedVerdict = buffer.get(position + EventRecorder.RECORD_VERDICT) != 0;
+            recordedLatency[kind.ordinal()].record(buffer.getInt(position + EventRecorder.RECORD_NANOS));
+
+            if ((buffer.get(position + EventRecorder.RECORD_FLAGS) & EventRecorder.FLAG_NBT) != 0) {
+                nbtDependent++;
+                continue;
+            }
+            if (rankSet < 0 || rankSet >= decisions.length || decisions[rankSet] == null) {
+                unknownRankSets++;
+                continue;
+            }
+
+            RestrictionIndex.Decision decision = decisions[rankSet];
+            long start = System.nanoTime();
+            // Block use is only denied for blocks with block entities, as in the handler
+            boolean verdict = kind.isBlock() ? decision.isBlockRestricted(registryId)
+                    && BuiltInRegistries.BLOCK.byId(registryId).defaultBlockState().hasBlockEntity()
+                : kind.isEntity() ? decision.isEntityRestricted(registryId)
+                : decision.isItemRestricted(registryId);
+            replayedLatency[kind.ordinal()].record(System.nanoTime() - start);
+
+            compared[kind.ordinal()]++;
+            if (verdict != recordedVerdict) {
+                mismatched[kind.ordinal()]++;
+                if (mismatches.size() < MAX_MISMATCHES_SHOWN) {
+                    Object key = kind.isBlock() ? BuiltInRegistries.BLOCK.getKey(BuiltInRegistries.BLOCK.byId(registryId))
+                        : kind.isEntity() ? BuiltInRegistries.ENTITY_TYPE.getKey(BuiltInRegistries.ENTITY_TYPE.byId(registryId))
+                        : BuiltInRegistries.ITEM.getKey(BuiltInRegistries.ITEM.byId(registryId));
+                    mismatches.add("  tick " + buffer.getLong(position + EventRecorder.RECORD_TICK) + " " + kind + " " + key
+                        + " ranks [" + String.join(",", decision.getRankIds()) + "]: recorded "
+                        + (recordedVerdict ? "denied" : "allowed") + ", now " + (verdict ? "denied" : "allowed"));
+                }
+            }
+        }
+
+        System.out.println("Replayed " + records + " of " + count + " recorded decisions (" + nbtDependent
+                           + " NBT-dependent and " + unknownRankSets + " with unknown rank sets skipped)");
+        for (EventRecorder.Kind kind : kinds) {
+            int i = kind.ordinal();
+            LatencyHistogram.Snapshot recorded = recordedLatency[i].snapshot();
+            LatencyHistogram.Snapshot replayed = replayedLatency[i].snapshot();
+            System.out.printf("%-15s compared=%d mismatched=%d recorded p50=%dns p99=%dns p99.9=%dns replayed p50=%dns p99=%dns p99.9=%dns%n",
+                kind, compared[i], mismatched[i],
+                recorded.getValueAtPercentile(50), recorded.getValueAtPercentile(99), recorded.getValueAtPercentile(99.9),
+                replayed.getValueAtPercentile(50), replayed.getValueAtPercentile(99), replayed.getValueAtPercentile(99.9));
+        }
+        if (!mismatches.isEmpty()) {
+            System.out.println("First mismatches:");
+            mismatches.forEach(System.out::println);
+        }
+    }
+}
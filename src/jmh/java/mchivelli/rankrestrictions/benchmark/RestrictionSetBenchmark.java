@@ -0,0 +1,92 @@
+package mchivelli.rankrestrictions.benchmark;
+
+import mchivelli.rankrestrictions.config.RankRestrictionData;
+import mchivelli.rankrestrictions.config.RestrictionSet;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.Item;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pattern-level checks: {@link RestrictionSet#isRestricted} and {@link RankRestrictionData#getMatchingRestrictionSet}.
+ * <p>
+ * The vanilla registry can't be grown after bootstrap, so the probed IDs are synthetic, spread over
+ * {@code registrySize} IDs in 100 mod namespaces, and paired with real items for the tag checks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RestrictionSetBenchmark {
+    private static final int PROBES = 4096;
+
+    @Param({"1000", "10000"})
+    public int registrySize;
+
+    @Param({"1", "5", "20"})
+    public int setsPerRank;
+
+    @Param({"10", "100"})
+    public int patternsPerSet;
+
+    private RestrictionSet firstSet;
+    private RankRestrictionData rankData;
+    private ResourceLocation[] probeIds;
+    private Item[] probeItems;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        BenchmarkBootstrap.init();
+        Random random = new Random(42);
+
+        List<String> itemIds = RestrictionWorkload.syntheticItemIds(registrySize, 100);
+        List<String> namespaces = RestrictionWorkload.namespaces(itemIds);
+        List<RestrictionSet> sets = new ArrayList<>();
+        for (int i = 0; i < setsPerRank; i++) {
+            RestrictionSet set = new RestrictionSet(RestrictionWorkload.patterns(random, itemIds, namespaces, patternsPerSet), new ArrayList<>(), null);
+            set.bindTags();
+            sets.add(set);
+        }
+        rankData = new RankRestrictionData("bench", sets);
+        firstSet = sets.get(0);
+
+        List<Item> realItems = new ArrayList<>();
+        BuiltInRegistries.ITEM.forEach(realItems::add);
+        probeIds = new ResourceLocation[PROBES];
+        probeItems = new Item[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probeIds[i] = new ResourceLocation(itemIds.get(random.nextInt(itemIds.size())));
+            probeItems[i] = realItems.get(random.nextInt(realItems.size()));
+        }
+    }
+
+    private int next() {
+        cursor = (cursor + 1) & (PROBES - 1);
+        return cursor;
+    }
+
+    @Benchmark
+    public boolean restrictionSetIsRestricted() {
+        int i = next();
+        return firstSet.isRestricted(probeIds[i], probeItems[i]);
+    }
+
+    @Benchmark
+    public RestrictionSet rankDataGetMatchingRestrictionSet() {
+        int i = next();
+        return rankData.getMatchingRestrictionSet(probeIds[i], probeItems[i]);
+    }
+}
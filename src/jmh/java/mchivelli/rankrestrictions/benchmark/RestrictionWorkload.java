@@ -0,0 +1,53 @@
+package mchivelli.rankrestrictions.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates restriction patterns shaped like real configs: mostly exact item IDs, with some mod
+ * wildcards and tags mixed in.
+ */
+final class RestrictionWorkload {
+    // Vanilla item tags, so tag patterns parse into real tag keys
+    private static final String[] TAGS = {
+        "#minecraft:logs", "#minecraft:planks", "#minecraft:wool", "#minecraft:beds", "#minecraft:boats",
+        "#minecraft:swords", "#minecraft:axes", "#minecraft:pickaxes", "#minecraft:music_discs", "#minecraft:arrows"
+    };
+
+    private RestrictionWorkload() {
+    }
+
+    /**
+     * Synthetic item IDs spread over a number of mod namespaces, like a large modpack's registry.
+     */
+    static List<String> syntheticItemIds(int registrySize, int namespaces) {
+        List<String> ids = new ArrayList<>(registrySize);
+        for (int i = 0; i < registrySize; i++) {
+            ids.add("mod" + (i % namespaces) + ":item_" + i);
+        }
+        return ids;
+    }
+
+    static List<String> namespaces(List<String> itemIds) {
+        return itemIds.stream().map(id -> id.substring(0, id.indexOf(':'))).distinct().toList();
+    }
+
+    /**
+     * Picks patterns for one restriction set: 70% exact IDs, 15% mod wildcards, 15% tags.
+     */
+    static List<String> patterns(Random random, List<String> itemIds, List<String> namespaces, int count) {
+        List<String> patterns = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(100);
+            if (kind < 70) {
+                patterns.add(itemIds.get(random.nextInt(itemIds.size())));
+            } else if (kind < 85) {
+                patterns.add(namespaces.get(random.nextInt(namespaces.size())) + ":*");
+            } else {
+                patterns.add(TAGS[random.nextInt(TAGS.length)]);
+            }
+        }
+        return patterns;
+    }
+}
@@ -0,0 +1,21 @@
+package mchivelli.rankrestrictions.cache;
+
+import java.util.UUID;
+
+/**
+ * Player cache lookups for the simulated players of the load generator, whose ranks are known without
+ * FTB Ranks. Kept in the cache package so the lookup it uses doesn't have to be public in the mod.
+ */
+public final class SimulatedPlayerViews {
+    private SimulatedPlayerViews() {
+    }
+
+    /**
+     * Gets a simulated player's view from the cache, with the same caching and expiry as real players.
+     * @param rankIds The player's active rank IDs.
+     * @param powers The FTB Ranks power of each rank.
+     */
+    public static PlayerRestrictionView get(PlayerRestrictionCache cache, UUID playerId, long currentTick, String[] rankIds, int[] powers) {
+        return cache.get(playerId, currentTick, rankIds, powers);
+    }
+}
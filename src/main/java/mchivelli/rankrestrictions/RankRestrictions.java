@@ -1,13 +1,21 @@
 package mchivelli.rankrestrictions;
 
+import mchivelli.rankrestrictions.cache.PlayerRestrictionCache;
 import mchivelli.rankrestrictions.commands.RankRestrictionsCommands;
+import mchivelli.rankrestrictions.config.ConfigWatcher;
 import mchivelli.rankrestrictions.config.RankRestrictionsConfig;
 import mchivelli.rankrestrictions.events.ItemRestrictionEvents;
+import mchivelli.rankrestrictions.metrics.EventRecorder;
+import mchivelli.rankrestrictions.metrics.RestrictionMetrics;
 import mchivelli.rankrestrictions.util.FTBRanksHelper;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.RegisterCommandsEvent;
+import net.minecraftforge.event.TagsUpdatedEvent;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
 import net.minecraftforge.event.server.ServerStartedEvent;
 import net.minecraftforge.event.server.ServerStartingEvent;
+import net.minecraftforge.event.server.ServerStoppedEvent;
 import net.minecraftforge.eventbus.api.IEventBus;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
@@ -30,11 +38,21 @@ public class RankRestrictions {
 
     private static RankRestrictions instance;
     private RankRestrictionsConfig config;
+    private PlayerRestrictionCache playerCache;
+    private RestrictionMetrics metrics;
+    private EventRecorder recorder;
+    private ConfigWatcher configWatcher;
+    private ItemRestrictionEvents itemEvents;
     private boolean hasInitializedRanks = false;
 
     public RankRestrictions() {
         instance = this;
         config = new RankRestrictionsConfig();
+        metrics = new RestrictionMetrics();
+        recorder = new EventRecorder();
+        playerCache = new PlayerRestrictionCache(config, metrics);
+        configWatcher = new ConfigWatcher(config);
+        itemEvents = new ItemRestrictionEvents(metrics, recorder);
 
         // Register to the mod event bus using NeoForge's recommended approach
         // This avoids the deprecated FMLJavaModLoadingContext.get() method
@@ -43,7 +61,7 @@ public class RankRestrictions {
 
         // Register server and client event bus 
         MinecraftForge.EVENT_BUS.register(this);
-        MinecraftForge.EVENT_BUS.register(new ItemRestrictionEvents());
+        MinecraftForge.EVENT_BUS.register(itemEvents);
         MinecraftForge.EVENT_BUS.addListener(this::onRegisterCommands);
         
         LOGGER.info("FTBRanks Rank Restrictions mod initialized");
@@ -57,12 +75,31 @@ public class RankRestrictions {
         return config;
     }
 
+    public PlayerRestrictionCache getPlayerCache() {
+        return playerCache;
+    }
+
+    public RestrictionMetrics getMetrics() {
+        return metrics;
+    }
+
+    public EventRecorder getRecorder() {
+        return recorder;
+    }
+
     private void setup(final FMLCommonSetupEvent event) {
         // Do common setup
         LOGGER.info("FTBRanks Rank Restrictions addon is loading...");
 
         // Load the config
         config.loadConfig();
+
+        // Keep cached per-player restrictions in sync with FTBRanks rank changes
+        playerCache.registerRankListeners();
+        // and apply the changed restrictions to online players right away
+        for (String eventName : new String[] {"ADD_PLAYER", "REMOVE_PLAYER", "CONDITION_CHANGED", "RELOADED"}) {
+            FTBRanksHelper.registerRankEventListener(eventName, event -> itemEvents.requestEnforcementPass());
+        }
     }
 
     @SubscribeEvent
@@ -130,12 +167,25 @@ public class RankRestrictions {
 #                             If omitted, 'default_restriction' from [messages] is used.
 #     - `items` (Optional): A list of item restrictions. Can be empty [].
 #     - `blocks` (Optional): A list of block restrictions. Can be empty [].
+#     - `action` (Optional): "deny" (the default) or "allow". An allow set lets a rank use
+#                            items/blocks that its other ranks deny. When a player's ranks
+#                            disagree, the rank with the highest FTB Ranks power wins, and
+#                            deny wins between ranks of equal power.
+#     - `nbt` (Optional): Conditions on the item stack's NBT. When present, the set's items are
+#                         only restricted if the stack meets all of them. Deny sets only. Forms:
+#                           "enchantment minecraft:sharpness >= 5"  (also >, =, <=, <; books included)
+#                           "Potion = minecraft:strong_harming"      (value at an NBT path)
+#                           "display.Lore ~ Overcharged"             (string/list at a path contains)
 #
 #   Pattern Types for both 'items' and 'blocks' lists:
 #     1. Exact ID: "minecraft:diamond_sword" or "tconstruct:smeltery_controller"
 #     2. Mod Wildcard: "mod_id:*" (restricts all items/blocks from 'mod_id')
 #     3. Tag: "#namespace:tag_path" (e.g., "#minecraft:beds", "#forge:chests")
 #            (The tag must exist and be loaded by Minecraft/Forge).
+#     4. Glob: "mekanism:*_upgrade" or "*:netherite_*"
+#            (* matches any characters and ? one character, within the namespace or the path).
+#     5. Regex: "/mekanism:.*_(upgrade|module)/" (between slashes, matched against the whole ID).
+#            A regex must be its own list entry, since it may contain commas.
 #
 #   Block Restrictions (Right-Click Prevention):
 #     - Only affects blocks with block entities that can be right-clicked (interactive blocks)
@@ -159,6 +209,30 @@ public class RankRestrictions {
 [messages]
 	default_restriction = "&cYou are not allowed to use %%item%% with your current rank!"
 
+[enforcement]
+	# Inventory slots are checked as soon as they change. Every player also gets a full check
+	# once per this many ticks, as a safety net for changes made outside the inventory menus.
+	# Checks are spread evenly over the window (minimum 20).
+	full_sweep_interval_ticks = 6000
+	# Most players fully checked in a single tick
+	sweep_max_players_per_tick = 4
+	# Full checks slow down while the average tick time (ms) is above this
+	sweep_target_mspt = 40.0
+	# How deep to look inside container items such as shulker boxes, bundles and backpacks for
+	# restricted items. 1 checks their contents, 2 also containers inside those. 0 disables.
+	container_scan_depth = 3
+
+[metrics]
+	# Record handler counts and timings, shown by '/rankrestrictions stats'
+	enabled = true
+	# Write the stats to logs/rankrestrictions-stats.txt every this many seconds, 0 to disable
+	dump_interval_seconds = 300
+
+[watcher]
+	# Reload this file automatically when it is saved. A file with errors is not applied,
+	# and the errors are sent to online operators.
+	enabled = true
+
 [restrictions]
 	# This section is automatically managed by the mod.
 	# - On first load (or if this file is deleted), the mod will discover all ranks
@@ -204,6 +278,62 @@ public class RankRestrictions {
         }
     }
     
+    @SubscribeEvent
+    public void onServerStopped(ServerStoppedEvent event) {
+        // FTBRanks creates a new rank manager for every server, so drop everything tied to the old one
+        configWatcher.stop();
+        recorder.stopRecording();
+        config.flushPendingSave();
+        FTBRanksHelper.clearCachedManager();
+        playerCache.invalidateAll();
+        hasInitializedRanks = false;
+    }
+
+    @SubscribeEvent
+    public void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) {
+            return;
+        }
+
+        // Picks up config reloads
+        if (metrics.isEnabled() != config.isMetricsEnabled()) {
+            metrics.setEnabled(config.isMetricsEnabled());
+        }
+        if (config.isWatcherEnabled() != configWatcher.isRunning()) {
+            if (config.isWatcherEnabled()) {
+                configWatcher.start();
+            } else {
+                configWatcher.stop();
+            }
+        }
+        configWatcher.tick(event.getServer());
+
+        int dumpInterval = config.getMetricsDumpIntervalSeconds();
+        if (metrics.isEnabled() && dumpInterval > 0 && event.getServer().getTickCount() % (dumpInterval * 20) == 0) {
+            metrics.dumpAsync(FMLPaths.GAMEDIR.get().resolve("logs/rankrestrictions-stats.txt"));
+        }
+    }
+
+    @SubscribeEvent
+    public void onTagsUpdated(TagsUpdatedEvent event) {
+        // Tag patterns are expanded when the index is compiled, so the index goes stale whenever the server reloads tags
+        if (event.getUpdateCause() == TagsUpdatedEvent.UpdateCause.SERVER_DATA_LOAD) {
+            LOGGER.info("Tags reloaded, recompiling rank restrictions");
+            config.rebuildIndex();
+        }
+    }
+
+    @SubscribeEvent
+    public void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        playerCache.invalidate(event.getEntity().getUUID());
+    }
+
+    @SubscribeEvent
+    public void onPlayerChangedDimension(PlayerEvent.PlayerChangedDimensionEvent event) {
+        // Dimension conditions can change which ranks apply
+        playerCache.invalidate(event.getEntity().getUUID());
+    }
+
     /**
      * Initialize ranks from FTBRanks API
      */
@@ -0,0 +1,367 @@
+package mchivelli.rankrestrictions.audit;
+
+import com.mojang.authlib.GameProfile;
+import mchivelli.rankrestrictions.RankRestrictions;
+import mchivelli.rankrestrictions.cache.PlayerRestrictionView;
+import mchivelli.rankrestrictions.config.RestrictionIndex;
+import mchivelli.rankrestrictions.events.ContainerScanner;
+import mchivelli.rankrestrictions.util.FTBRanksHelper;
+import net.minecraft.SharedConstants;
+import net.minecraft.Util;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.IntTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtUtils;
+import net.minecraft.nbt.Tag;
+import net.minecraft.nbt.visitors.CollectFields;
+import net.minecraft.nbt.visitors.FieldSelector;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.datafix.DataFixTypes;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.level.storage.LevelResource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Checks the saved inventories and ender chests of offline players against the current restrictions by reading
+ * their playerdata files, without loading the players.
+ * <p>
+ * A driver thread lists the playerdata directory lazily and resolves each batch of players' ranks on the server
+ * thread, since FTB Ranks is not thread-safe. Offline, only ranks added to a player explicitly are known; ranks
+ * that apply through conditions need an online player. Players whose ranks restrict nothing are skipped without
+ * opening their file. The remaining files are checked on a small fixed worker pool, with at most
+ * {@link #MAX_QUEUED_FILES} files waiting. Each file is decompressed as a stream and only its inventory and ender
+ * chest lists are built; parsing stops once both were read. Container items are searched like in the live checks.
+ * <p>
+ * Violations are written to a report file. In fix mode they are also removed: the whole file is read, upgraded to
+ * the current game version if it is older, and saved the way Minecraft saves player data, keeping the previous
+ * file as {@code .dat_old}. Online players are skipped, since their data is saved over the file on logout. The
+ * save itself runs on the server thread, where logins happen, and is skipped if the player has logged in or the
+ * file was changed since it was read.
+ */
+public final class OfflineInventoryAudit {
+    private static final int BATCH_SIZE = 256;
+    private static final int MAX_QUEUED_FILES = 64;
+    private static final long PROGRESS_INTERVAL_MS = 5000;
+    private static final long SERVER_TASK_TIMEOUT_SECONDS = 30;
+    private static final String INVENTORY = "Inventory";
+    private static final String ENDER_ITEMS = "EnderItems";
+    private static final String DATA_VERSION = "DataVersion";
+    private static final AtomicBoolean running = new AtomicBoolean();
+
+    private final MinecraftServer server;
+    private final RestrictionIndex index;
+    private final int scanDepth;
+    private final boolean fix;
+    private final Consumer<String> feedback;
+    private final Path playerDir;
+    private final Path reportFile;
+
+    private final AtomicInteger filesChecked = new AtomicInteger();
+    private final AtomicInteger playersSkipped = new AtomicInteger();
+    private final AtomicInteger violatingPlayers = new AtomicInteger();
+    private final AtomicInteger violations = new AtomicInteger();
+    private final AtomicInteger filesFixed = new AtomicInteger();
+    private final AtomicInteger fixesSkipped = new AtomicInteger();
+    private final AtomicInteger filesFailed = new AtomicInteger();
+    private BufferedWriter report;
+
+    private record OfflinePlayer(UUID id, String name, PlayerRestrictionView view) {
+    }
+
+    private OfflineInventoryAudit(MinecraftServer server, RestrictionIndex index, int scanDepth, boolean fix, Consumer<String> feedback, Path reportFile) {
+        this.server = server;
+        this.index = index;
+        this.scanDepth = scanDepth;
+        this.fix = fix;
+        this.feedback = feedback;
+        this.playerDir = server.getWorldPath(LevelResource.PLAYER_DATA_DIR);
+        this.reportFile = reportFile;
+    }
+
+    /**
+     * Starts an audit in the background. Must be called on the server thread.
+     * @param fix Whether to also remove the restricted items from the files.
+     * @param feedback Receives progress messages, on the server thread.
+     * @return The report file, or null if an audit is already running.
+     */
+    public static Path start(MinecraftServer server, RestrictionIndex index, int scanDepth, boolean fix, Path logDir, Consumer<String> feedback) {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Path reportFile = logDir.resolve("rankrestrictions-audit-" + timestamp + ".txt");
+        OfflineInventoryAudit audit = new OfflineInventoryAudit(server, index, scanDepth, fix, feedback, reportFile);
+
+        Thread thread = new Thread(audit::run, "RankRestrictions offline audit");
+        thread.setDaemon(true);
+        thread.start();
+        return reportFile;
+    }
+
+    private void run() {
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, task -> {
+            Thread worker = new Thread(task, "RankRestrictions audit worker #" + threadNumber.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        });
+        Semaphore queuedFiles = new Semaphore(MAX_QUEUED_FILES);
+        long startMillis = System.currentTimeMillis();
+
+        try {
+            Files.createDirectories(reportFile.getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(reportFile);
+                 DirectoryStream<Path> files = Files.newDirectoryStream(playerDir, "*.dat")) {
+                report = writer;
+                writeReport(List.of("# RankRestrictions offline inventory audit, " + LocalDateTime.now() + (fix ? ", removing restricted items" : ""),
+                    "# Only ranks added to players explicitly are known offline; condition-based ranks are not checked."));
+
+                long lastProgress = startMillis;
+                List<UUID> batch = new ArrayList<>(BATCH_SIZE);
+                Map<UUID, Path> batchFiles = new HashMap<>();
+                for (Path file : files) {
+                    UUID playerId = parsePlayerId(file);
+                    if (playerId == null) {
+                        continue;
+                    }
+                    batch.add(playerId);
+                    batchFiles.put(playerId, file);
+                    if (batch.size() == BATCH_SIZE) {
+                        submitBatch(batch, batchFiles, workers, queuedFiles);
+                        batch.clear();
+                        batchFiles.clear();
+                    }
+
+                    long now = System.currentTimeMillis();
+                    if (now - lastProgress >= PROGRESS_INTERVAL_MS) {
+                        lastProgress = now;
+                        sendFeedback("Audit: " + filesChecked.get() + " files checked, " + violations.get() + " restricted items found so far...");
+                    }
+                }
+                submitBatch(batch, batchFiles, workers, queuedFiles);
+
+                workers.shutdown();
+                while (!workers.awaitTermination(PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                    sendFeedback("Audit: " + filesChecked.get() + " files checked, " + violations.get() + " restricted items found so far...");
+                }
+
+                String summary = "Audit finished in " + (System.currentTimeMillis() - startMillis) / 1000 + "s: " + filesChecked.get() + " files checked, "
+                    + playersSkipped.get() + " players skipped (online or unrestricted), " + violations.get() + " restricted items held by "
+                    + violatingPlayers.get() + " players" + (fix ? ", " + filesFixed.get() + " files fixed" : "")
+                    + (fixesSkipped.get() > 0 ? ", " + fixesSkipped.get() + " files not fixed because the player logged in or the file changed" : "")
+                    + (filesFailed.get() > 0 ? ", " + filesFailed.get() + " files unreadable" : "");
+                writeReport(List.of("# " + summary));
+                RankRestrictions.LOGGER.info(summary + ". Report: " + reportFile);
+                sendFeedback(summary + ". Report: " + reportFile.getFileName());
+            }
+        } catch (Exception e) {
+            RankRestrictions.LOGGER.error("Offline inventory audit failed: " + e.getMessage(), e);
+            sendFeedback("Audit failed: " + e.getMessage());
+        } finally {
+            workers.shutdownNow();
+            running.set(false);
+        }
+    }
+
+    private static UUID parsePlayerId(Path file) {
+        String fileName = file.getFileName().toString();
+        try {
+            return UUID.fromString(fileName.substring(0, fileName.length() - ".dat".length()));
+        } catch (IllegalArgumentException e) {
+            return null; // Not a player file
+        }
+    }
+
+    private void submitBatch(List<UUID> batch, Map<UUID, Path> batchFiles, ExecutorService workers, Semaphore queuedFiles) throws Exception {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<UUID> playerIds = List.copyOf(batch);
+        List<OfflinePlayer> players = server.submit(() -> resolvePlayers(playerIds)).get(SERVER_TASK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        playersSkipped.addAndGet(playerIds.size() - players.size());
+
+        for (OfflinePlayer player : players) {
+            Path file = batchFiles.get(player.id);
+            queuedFiles.acquire();
+            workers.execute(() -> {
+                try {
+                    checkFile(file, player);
+                } catch (Exception e) {
+                    filesFailed.incrementAndGet();
+                    RankRestrictions.LOGGER.warn("Could not audit " + file.getFileName() + ": " + e.getMessage());
+                } finally {
+                    queuedFiles.release();
+                }
+            });
+        }
+    }
+
+    /**
+     * Looks up the ranks of a batch of players. Runs on the server thread.
+     * @return The players who are offline and have restrictions.
+     */
+    private List<OfflinePlayer> resolvePlayers(List<UUID> playerIds) {
+        List<OfflinePlayer> players = new ArrayList<>();
+        for (UUID playerId : playerIds) {
+            if (server.getPlayerList().getPlayer(playerId) != null) {
+                continue; // Checked live
+            }
+            GameProfile profile = server.getProfileCache() != null
+                ? server.getProfileCache().get(playerId).orElse(null)
+                : null;
+            if (profile == null) {
+                profile = new GameProfile(playerId, null);
+            }
+            PlayerRestrictionView view = PlayerRestrictionView.forRanks(index, FTBRanksHelper.getAddedRanks(profile));
+            if (!view.isEmpty()) {
+                players.add(new OfflinePlayer(playerId, profile.getName() != null ? profile.getName() : playerId.toString(), view));
+            }
+        }
+        return players;
+    }
+
+    private void checkFile(Path file, OfflinePlayer player) throws Exception {
+        FileTime readTime = Files.getLastModifiedTime(file);
+        CompoundTag data = fix ? NbtIo.readCompressed(file.toFile()) : readInventories(file);
+        int dataVersion = NbtUtils.getDataVersion(data, -1);
+        boolean outdated = dataVersion < SharedConstants.getCurrentVersion().getDataVersion().getVersion();
+        if (outdated) {
+            // Item IDs and tags may have changed since the file was saved
+            data = DataFixTypes.PLAYER.updateToCurrentVersion(server.getFixerUpper(), data, dataVersion);
+        }
+
+        List<String> found = new ArrayList<>();
+        boolean changed = checkItems(data.getList(INVENTORY, Tag.TAG_COMPOUND), "inventory", 0, player.view, found);
+        changed |= checkItems(data.getList(ENDER_ITEMS, Tag.TAG_COMPOUND), "ender chest", 0, player.view, found);
+        filesChecked.incrementAndGet();
+        if (found.isEmpty()) {
+            return;
+        }
+
+        violatingPlayers.incrementAndGet();
+        violations.addAndGet(found.size());
+        boolean saved = false;
+        if (fix && changed) {
+            if (outdated) {
+                NbtUtils.addCurrentDataVersion(data);
+            }
+            CompoundTag fixedData = data;
+            saved = server.submit(() -> saveIfUnchanged(fixedData, player.id, file, readTime)).get(SERVER_TASK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            (saved ? filesFixed : fixesSkipped).incrementAndGet();
+        }
+
+        List<String> lines = new ArrayList<>(found.size() + 1);
+        lines.add(player.name + " (" + player.id + ")" + (saved ? ", removed:" : fix && changed ? ", not fixed, logged in or saved during the audit:" : ":"));
+        found.forEach(line -> lines.add("  - " + line));
+        writeReport(lines);
+    }
+
+    /**
+     * Reads only the data version and the inventory lists of a player file.
+     */
+    private static CompoundTag readInventories(Path file) throws IOException {
+        CollectFields collector = new CollectFields(
+            new FieldSelector(IntTag.TYPE, DATA_VERSION),
+            new FieldSelector(ListTag.TYPE, INVENTORY),
+            new FieldSelector(ListTag.TYPE, ENDER_ITEMS));
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            NbtIo.parse(in, collector);
+        }
+        return collector.getResult() instanceof CompoundTag tag ? tag : new CompoundTag();
+    }
+
+    /**
+     * Finds restricted items in a saved item list and removes them from it, searching container items too.
+     * @param depth The number of containers the list is inside of.
+     * @return Whether the list or a container in it was changed.
+     */
+    private boolean checkItems(ListTag items, String location, int depth, PlayerRestrictionView view, List<String> found) {
+        boolean changed = false;
+        for (int i = 0; i < items.size(); i++) {
+            CompoundTag entry = items.getCompound(i);
+            ResourceLocation itemId = ResourceLocation.tryParse(entry.getString("id"));
+            Item item = itemId != null ? BuiltInRegistries.ITEM.getOptional(itemId).orElse(null) : null;
+            int itemIndex = item != null ? RestrictionIndex.itemId(item) : -1;
+            if (itemIndex < 0) {
+                continue;
+            }
+
+            CompoundTag tag = entry.contains("tag", Tag.TAG_COMPOUND) ? entry.getCompound("tag") : null;
+            String slot = location + " slot " + (entry.contains("Slot") ? entry.getByte("Slot") : i);
+            if (view.isStackRestricted(itemIndex, tag)) {
+                found.add(entry.getByte("Count") + "x " + itemId + " in " + slot + " (rank " + view.getRestrictingRank(itemIndex, tag) + ")");
+                items.remove(i--);
+                changed = true;
+            } else if (depth < scanDepth && tag != null) {
+                ListTag contents = ContainerScanner.containerItems(tag);
+                if (contents != null && checkItems(contents, itemId + " in " + slot, depth + 1, view, found)) {
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Saves a fixed player file, unless the player is online or the file is no longer the one that was read.
+     * Runs on the server thread, so the player can't log in between the check and the save.
+     * @return Whether the file was saved.
+     */
+    private boolean saveIfUnchanged(CompoundTag data, UUID playerId, Path file, FileTime readTime) {
+        try {
+            if (server.getPlayerList().getPlayer(playerId) != null || !Files.getLastModifiedTime(file).equals(readTime)) {
+                return false;
+            }
+            saveFile(data, playerId);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void saveFile(CompoundTag data, UUID playerId) throws IOException {
+        // Same steps as PlayerDataStorage#save
+        Path tempFile = Files.createTempFile(playerDir, playerId + "-", ".dat");
+        NbtIo.writeCompressed(data, tempFile.toFile());
+        Util.safeReplaceFile(playerDir.resolve(playerId + ".dat").toFile(), tempFile.toFile(), playerDir.resolve(playerId + ".dat_old").toFile());
+    }
+
+    private synchronized void writeReport(List<String> lines) throws IOException {
+        for (String line : lines) {
+            report.write(line);
+            report.newLine();
+        }
+    }
+
+    private void sendFeedback(String message) {
+        server.execute(() -> feedback.accept(message));
+    }
+}
@@ -0,0 +1,164 @@
+package mchivelli.rankrestrictions.audit;
+
+import mchivelli.rankrestrictions.config.RestrictionIndex;
+import mchivelli.rankrestrictions.config.RestrictionSet;
+import mchivelli.rankrestrictions.config.RestrictionSnapshot;
+import net.minecraft.Util;
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.BuiltInRegistries;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Writes the effective rule of every rank for every registered item, block and entity type to a CSV file, so
+ * the result of patterns, tags and allow rules can be reviewed without testing in game.
+ * <p>
+ * Each row is one rank's own rule, without other ranks: {@code rank,type,id,effect,set,message}, where the effect
+ * is {@code deny}, {@code deny_nbt} (denied when the stack's NBT meets the set's conditions, listed in the message
+ * column) or {@code allow}, and the set is its position within the rank. Whatever a rank has no rule for is left
+ * out.
+ * <p>
+ * The work is split into ranges of registry IDs per rank and computed as a parallel stream on Minecraft's
+ * background ForkJoin pool, walking only the set bits of each rank's compiled bitsets. The ranges are joined in
+ * order, sorted by rank, then items, blocks and entity types, then registry ID, and written on the I/O pool.
+ */
+public final class RestrictionMatrixExport {
+    private static final int CHUNK_SIZE = 4096;
+    private static final String HEADER = "rank,type,id,effect,set,message";
+
+    private RestrictionMatrixExport() {
+    }
+
+    private enum Type {
+        ITEM,
+        BLOCK,
+        ENTITY
+    }
+
+    private record Chunk(String rankId, RestrictionIndex.RankIndex rank, Type type, BitSet ruled, int from, int to) {
+    }
+
+    private record ChunkRows(String text, int rows) {
+    }
+
+    /**
+     * Computes and writes the matrix in the background.
+     * @param snapshot The restrictions to export.
+     * @param file The CSV file to write.
+     * @return A future completed with the number of rows written.
+     */
+    public static CompletableFuture<Integer> exportAsync(RestrictionSnapshot snapshot, Path file) {
+        return CompletableFuture.supplyAsync(() -> compute(snapshot), Util.backgroundExecutor())
+            .thenApplyAsync(rows -> {
+                write(file, rows);
+                return rows.stream().mapToInt(chunk -> chunk.rows).sum();
+            }, Util.ioPool());
+    }
+
+    private static List<ChunkRows> compute(RestrictionSnapshot snapshot) {
+        RestrictionIndex index = snapshot.getIndex();
+        List<Chunk> chunks = new ArrayList<>();
+        // Sorted so the file doesn't depend on the order of ranks in the config
+        for (String rankId : new TreeMap<>(snapshot.getRankRestrictions()).keySet()) {
+            RestrictionIndex.RankIndex rank = index.getRank(rankId);
+            if (rank == null) {
+                continue;
+            }
+            addChunks(chunks, rankId, rank, Type.ITEM, rank.getRuledItems(), BuiltInRegistries.ITEM.size());
+            addChunks(chunks, rankId, rank, Type.BLOCK, rank.getRuledBlocks(), BuiltInRegistries.BLOCK.size());
+            addChunks(chunks, rankId, rank, Type.ENTITY, rank.getRuledEntities(), BuiltInRegistries.ENTITY_TYPE.size());
+        }
+
+        // A parallel stream started from a ForkJoin worker runs its tasks in that worker's pool
+        return chunks.parallelStream()
+            .map(chunk -> formatChunk(snapshot, chunk))
+            .filter(chunk -> chunk.rows > 0)
+            .toList();
+    }
+
+    private static void addChunks(List<Chunk> chunks, String rankId, RestrictionIndex.RankIndex rank, Type type, BitSet ruled, int size) {
+        if (ruled.isEmpty()) {
+            return;
+        }
+        for (int from = 0; from < size; from += CHUNK_SIZE) {
+            chunks.add(new Chunk(rankId, rank, type, ruled, from, Math.min(size, from + CHUNK_SIZE)));
+        }
+    }
+
+    private static ChunkRows formatChunk(RestrictionSnapshot snapshot, Chunk chunk) {
+        Registry<?> registry = switch (chunk.type) {
+            case ITEM -> BuiltInRegistries.ITEM;
+            case BLOCK -> BuiltInRegistries.BLOCK;
+            case ENTITY -> BuiltInRegistries.ENTITY_TYPE;
+        };
+        String type = chunk.type.name().toLowerCase(Locale.ROOT);
+        StringBuilder text = new StringBuilder();
+        int rows = 0;
+        for (int id = chunk.ruled.nextSetBit(chunk.from); id >= 0 && id < chunk.to; id = chunk.ruled.nextSetBit(id + 1)) {
+            int setIndex = switch (chunk.type) {
+                case ITEM -> chunk.rank.getItemRuleSetIndex(id);
+                case BLOCK -> chunk.rank.getBlockRuleSetIndex(id);
+                case ENTITY -> chunk.rank.getEntityRuleSetIndex(id);
+            };
+            if (setIndex < 0) {
+                continue;
+            }
+            RestrictionSet set = chunk.rank.getSet(setIndex);
+            String key = registryKey(registry, id);
+
+            String effect;
+            String message;
+            if (set.isAllow()) {
+                effect = "allow";
+                message = "";
+            } else if (chunk.type == Type.ITEM && set.hasNbtConditions()) {
+                effect = "deny_nbt";
+                message = snapshot.formatMessage(set, key) + " [" + String.join("; ", set.getNbt()) + "]";
+            } else {
+                effect = "deny";
+                message = snapshot.formatMessage(set, key);
+            }
+
+            text.append(csv(chunk.rankId)).append(',').append(type).append(',').append(key).append(',')
+                .append(effect).append(',').append(setIndex).append(',').append(csv(message)).append('\n');
+            rows++;
+        }
+        return new ChunkRows(text.toString(), rows);
+    }
+
+    private static <T> String registryKey(Registry<T> registry, int id) {
+        return String.valueOf(registry.getKey(registry.byId(id)));
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static void write(Path file, List<ChunkRows> chunks) {
+        try {
+            Files.createDirectories(file.getParent());
+            try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+                writer.write(HEADER);
+                writer.newLine();
+                for (ChunkRows chunk : chunks) {
+                    writer.write(chunk.text);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package mchivelli.rankrestrictions.cache;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rate-limits restriction messages per player and entity, such as the "you can't pick this up" message for an
+ * item entity or the message for a restricted mob, since those events fire every tick or every click.
+ * <p>
+ * Each player gets a small fixed-size table of (entity ID, last message time) pairs held in primitive
+ * arrays. Expired entries are reused and the oldest entry is evicted when the table is full, so the store
+ * never grows past {@link #ENTRIES_PER_PLAYER} entries per online player and the hot path allocates nothing.
+ * Players' tables are dropped when they log out.
+ */
+public class MessageCooldowns {
+    static final int ENTRIES_PER_PLAYER = 32;
+
+    private final long cooldownMillis;
+    private final Map<UUID, PlayerCooldowns> players = new ConcurrentHashMap<>();
+
+    public MessageCooldowns(long cooldownMillis) {
+        this.cooldownMillis = cooldownMillis;
+    }
+
+    /**
+     * Checks whether a message about the given entity may be sent, and if so starts its cooldown.
+     * @param playerId The player's UUID
+     * @param entityId The ID of the entity, such as the item entity the player tried to pick up
+     * @param nowMillis The current time in milliseconds
+     * @return true if the message should be sent, false if it is still on cooldown
+     */
+    public boolean tryAcquire(UUID playerId, int entityId, long nowMillis) {
+        return players.computeIfAbsent(playerId, id -> new PlayerCooldowns()).tryAcquire(entityId, nowMillis, cooldownMillis);
+    }
+
+    public void removePlayer(UUID playerId) {
+        players.remove(playerId);
+    }
+
+    private static final class PlayerCooldowns {
+        private final int[] entityIds = new int[ENTRIES_PER_PLAYER];
+        private final long[] messageTimes = new long[ENTRIES_PER_PLAYER]; // 0 marks a free entry
+
+        synchronized boolean tryAcquire(int entityId, long now, long cooldown) {
+            int reusable = -1;
+            int oldest = 0;
+            for (int i = 0; i < ENTRIES_PER_PLAYER; i++) {
+                long time = messageTimes[i];
+                boolean expired = time == 0 || now - time > cooldown;
+                if (time != 0 && entityIds[i] == entityId) {
+                    if (!expired) {
+                        return false;
+                    }
+                    reusable = i;
+                    break;
+                }
+                if (expired && reusable < 0) {
+                    reusable = i;
+                }
+                if (time < messageTimes[oldest]) {
+                    oldest = i;
+                }
+            }
+
+            int slot = reusable >= 0 ? reusable : oldest;
+            entityIds[slot] = entityId;
+            messageTimes[slot] = now;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package mchivelli.rankrestrictions.cache;
+
+import mchivelli.rankrestrictions.config.RankRestrictionsConfig;
+import mchivelli.rankrestrictions.config.RestrictionIndex;
+import mchivelli.rankrestrictions.metrics.RestrictionMetrics;
+import mchivelli.rankrestrictions.util.FTBRanksHelper;
+import net.minecraft.server.level.ServerPlayer;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches each online player's {@link PlayerRestrictionView}, so event handlers don't have to
+ * re-evaluate every rank condition through FTBRanks on every event.
+ * <p>
+ * Views are invalidated by FTBRanks rank membership/condition/reload events and whenever the
+ * compiled restriction index changes. Since FTBRanks has no event for a player's condition result
+ * changing (playtime, dimension, OP status...), views also expire after a short time.
+ */
+public class PlayerRestrictionCache {
+    private static final long MAX_VIEW_AGE_TICKS = 100; // 5 seconds
+
+    private final RankRestrictionsConfig config;
+    private final RestrictionMetrics metrics;
+    private final Map<UUID, PlayerRestrictionView> views = new ConcurrentHashMap<>();
+
+    public PlayerRestrictionCache(RankRestrictionsConfig config, RestrictionMetrics metrics) {
+        this.config = config;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Registers the invalidation listeners with the FTBRanks events
+     */
+    public void registerRankListeners() {
+        FTBRanksHelper.registerRankEventListener("ADD_PLAYER", this::onPlayerRankEvent);
+        FTBRanksHelper.registerRankEventListener("REMOVE_PLAYER", this::onPlayerRankEvent);
+        FTBRanksHelper.registerRankEventListener("CONDITION_CHANGED", event -> invalidateAll());
+        FTBRanksHelper.registerRankEventListener("RELOADED", event -> invalidateAll());
+    }
+
+    /**
+     * Gets the effective restrictions of the player, building them if the cached view is missing or stale.
+     * @param player The server player
+     * @return The player's restriction view
+     */
+    public PlayerRestrictionView get(ServerPlayer player) {
+        RestrictionIndex index = config.getRestrictionIndex();
+        long currentTick = player.server.getTickCount();
+
+        PlayerRestrictionView view = getValid(player.getUUID(), index, currentTick);
+        if (view == null) {
+            view = PlayerRestrictionView.build(index, FTBRanksHelper.getPlayerRanks(player), currentTick + MAX_VIEW_AGE_TICKS);
+            views.put(player.getUUID(), view);
+        }
+        return view;
+    }
+
+    /**
+     * Like {@link #get(ServerPlayer)}, for a player whose ranks are already known, such as a simulated
+     * player in a load test. Views are cached and expire the same way.
+     * @param rankIds The player's active rank IDs.
+     * @param powers The FTB Ranks power of each rank.
+     */
+    PlayerRestrictionView get(UUID playerId, long currentTick, String[] rankIds, int[] powers) {
+        RestrictionIndex index = config.getRestrictionIndex();
+        PlayerRestrictionView view = getValid(playerId, index, currentTick);
+        if (view == null) {
+            view = PlayerRestrictionView.build(index, rankIds, powers, currentTick + MAX_VIEW_AGE_TICKS);
+            views.put(playerId, view);
+        }
+        return view;
+    }
+
+    private PlayerRestrictionView getValid(UUID playerId, RestrictionIndex index, long currentTick) {
+        PlayerRestrictionView view = views.get(playerId);
+        boolean hit = view != null && view.isValid(index, currentTick);
+        metrics.recordCacheLookup(hit);
+        return hit ? view : null;
+    }
+
+    public void invalidate(UUID playerId) {
+        views.remove(playerId);
+    }
+
+    public void invalidateAll() {
+        views.clear();
+    }
+
+    private void onPlayerRankEvent(Object event) {
+        UUID playerId = FTBRanksHelper.getEventPlayerId(event);
+        if (playerId != null) {
+            invalidate(playerId);
+        } else {
+            invalidateAll();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package mchivelli.rankrestrictions.cache;
+
+import mchivelli.rankrestrictions.config.RestrictionIndex;
+import mchivelli.rankrestrictions.util.FTBRanksHelper;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.item.ItemStack;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The effective restrictions of one player: the {@link RestrictionIndex.Decision} for the player's active
+ * ranks, with allow and deny rules already resolved by rank power, so a check is one bit probe no matter
+ * how many ranks apply.
+ */
+public final class PlayerRestrictionView {
+    private final RestrictionIndex index;
+    private final RestrictionIndex.Decision decision;
+    private final long expiresAtTick;
+
+    private PlayerRestrictionView(RestrictionIndex index, RestrictionIndex.Decision decision, long expiresAtTick) {
+        this.index = index;
+        this.decision = decision;
+        this.expiresAtTick = expiresAtTick;
+    }
+
+    /**
+     * Builds the view for the given set of active ranks.
+     * @param index The compiled restriction index to build from.
+     * @param playerRanks The player's active rank objects from FTBRanks.
+     * @param expiresAtTick The server tick after which the view must be rebuilt.
+     */
+    static PlayerRestrictionView build(RestrictionIndex index, Collection<Object> playerRanks, long expiresAtTick) {
+        String[] rankIds = new String[playerRanks.size()];
+        int[] powers = new int[playerRanks.size()];
+        int count = 0;
+        for (Object rankObj : playerRanks) {
+            String rankId = FTBRanksHelper.getRankName(rankObj);
+            if (rankId == null || rankId.isEmpty() || index.getRank(rankId) == null) continue;
+
+            rankIds[count] = rankId;
+            powers[count] = FTBRanksHelper.getRankPower(rankObj);
+            count++;
+        }
+        return build(index, Arrays.copyOf(rankIds, count), Arrays.copyOf(powers, count), expiresAtTick);
+    }
+
+    /**
+     * Builds the view for ranks that are already resolved to IDs and powers.
+     * @param rankIds The active rank IDs. Ranks without restrictions are ignored.
+     * @param powers The FTB Ranks power of each rank.
+     */
+    static PlayerRestrictionView build(RestrictionIndex index, String[] rankIds, int[] powers, long expiresAtTick) {
+        return new PlayerRestrictionView(index, index.decide(rankIds, powers), expiresAtTick);
+    }
+
+    /**
+     * Builds a view that is used once and never cached, such as for a player who is offline.
+     * @param index The compiled restriction index to build from.
+     * @param playerRanks The player's rank objects from FTBRanks.
+     */
+    public static PlayerRestrictionView forRanks(RestrictionIndex index, Collection<Object> playerRanks) {
+        return build(index, playerRanks, Long.MAX_VALUE);
+    }
+
+    boolean isValid(RestrictionIndex currentIndex, long currentTick) {
+        // A new index means the config was reloaded or tags changed
+        return index == currentIndex && currentTick <= expiresAtTick;
+    }
+
+    public boolean isItemRestricted(int itemId) {
+        return decision.isItemRestricted(itemId);
+    }
+
+    /**
+     * Checks a stack, including rules with NBT conditions. Stacks of items without such rules cost the
+     * same single bit probe as {@link #isItemRestricted(int)}.
+     */
+    public boolean isStackRestricted(int itemId, ItemStack stack) {
+        return isStackRestricted(itemId, stack.getTag());
+    }
+
+    /**
+     * Like {@link #isStackRestricted(int, ItemStack)}, for a stack that is only available as saved data.
+     * @param tag The stack's tag, or null if it has none.
+     */
+    public boolean isStackRestricted(int itemId, CompoundTag tag) {
+        return decision.isItemRestricted(itemId)
+            || (decision.hasNbtRules(itemId) && decision.getNbtRestrictingRank(itemId, tag) != null);
+    }
+
+    /**
+     * Finds the rank responsible for restricting a stack, used for messages and logging.
+     * @return The rank that restricts the stack, or null if it is not restricted.
+     */
+    public String getRestrictingRank(int itemId, ItemStack stack) {
+        return getRestrictingRank(itemId, stack.getTag());
+    }
+
+    /**
+     * Like {@link #getRestrictingRank(int, ItemStack)}, for a stack that is only available as saved data.
+     * @param tag The stack's tag, or null if it has none.
+     */
+    public String getRestrictingRank(int itemId, CompoundTag tag) {
+        if (decision.isItemRestricted(itemId)) {
+            return getRestrictingRank(itemId);
+        }
+        return decision.getNbtRestrictingRank(itemId, tag);
+    }
+
+    /**
+     * Finds the rank responsible for restricting an item, used for messages and logging.
+     * @return The highest-power active rank that restricts the item, or null if it is not restricted.
+     */
+    public String getRestrictingRank(int itemId) {
+        if (!isItemRestricted(itemId)) {
+            return null;
+        }
+        for (String rankId : decision.getRankIds()) {
+            if (index.isItemRestricted(rankId, itemId)) {
+                return rankId;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the decision shared by every player with the same ranks, which also remembers clean containers. NBT
+     * conditions are not memoized; they are evaluated directly per stack.
+     */
+    public RestrictionIndex.Decision getDecision() {
+        return decision;
+    }
+
+    public boolean isBlockRestricted(int blockId) {
+        return decision.isBlockRestricted(blockId);
+    }
+
+    public boolean hasBlockRestrictions() {
+        return decision.hasBlockRestrictions();
+    }
+
+    /**
+     * Finds the rank responsible for restricting a block, used for messages and logging.
+     * @return The highest-power active rank that restricts the block, or null if it is not restricted.
+     */
+    public String getRestrictingBlockRank(int blockId) {
+        if (!isBlockRestricted(blockId)) {
+            return null;
+        }
+        for (String rankId : decision.getRankIds()) {
+            if (index.isBlockRestricted(rankId, blockId)) {
+                return rankId;
+            }
+        }
+        return null;
+    }
+
+    public boolean isEntityRestricted(int entityTypeId) {
+        return decision.isEntityRestricted(entityTypeId);
+    }
+
+    public boolean hasEntityRestrictions() {
+        return decision.hasEntityRestrictions();
+    }
+
+    /**
+     * Finds the rank responsible for restricting an entity type, used for messages and logging.
+     * @return The highest-power active rank that restricts the entity type, or null if it is not restricted.
+     */
+    public String getRestrictingEntityRank(int entityTypeId) {
+        if (!isEntityRestricted(entityTypeId)) {
+            return null;
+        }
+        for (String rankId : decision.getRankIds()) {
+            if (index.isEntityRestricted(rankId, entityTypeId)) {
+                return rankId;
+            }
+        }
+        return null;
+    }
+
+    public boolean isEmpty() {
+        return decision.isEmpty();
+    }
+}
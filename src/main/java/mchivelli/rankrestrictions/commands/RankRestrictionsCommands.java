@@ -1,20 +1,32 @@
 package mchivelli.rankrestrictions.commands;
 
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.context.CommandContext;
 import mchivelli.rankrestrictions.RankRestrictions;
+import mchivelli.rankrestrictions.audit.OfflineInventoryAudit;
+import mchivelli.rankrestrictions.audit.RestrictionMatrixExport;
 import mchivelli.rankrestrictions.config.RankRestrictionsConfig;
+import mchivelli.rankrestrictions.metrics.RestrictionMetrics;
 import mchivelli.rankrestrictions.util.FTBRanksHelper;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
 import net.minecraft.network.chat.Component;
+import net.minecraftforge.fml.loading.FMLPaths;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Command handler for RankRestrictions mod
  */
 public class RankRestrictionsCommands {
+    private static final int DEFAULT_RECORDING_MB = 64;
+
     /**
      * Register the commands with the Minecraft command dispatcher
      * 
@@ -58,6 +70,50 @@ public class RankRestrictionsCommands {
                         return executeListRanks(context);
                     })
                 )
+                .then(Commands.literal("stats")
+                    .executes(context -> {
+                        return executeStats(context);
+                    })
+                    .then(Commands.literal("reset")
+                        .executes(context -> {
+                            return executeStatsReset(context);
+                        })
+                    )
+                )
+                .then(Commands.literal("matrix")
+                    .executes(context -> {
+                        return executeMatrix(context);
+                    })
+                )
+                .then(Commands.literal("audit")
+                    .then(Commands.literal("offline")
+                        .executes(context -> {
+                            return executeOfflineAudit(context, false);
+                        })
+                        .then(Commands.literal("fix")
+                            .executes(context -> {
+                                return executeOfflineAudit(context, true);
+                            })
+                        )
+                    )
+                )
+                .then(Commands.literal("record")
+                    .then(Commands.literal("start")
+                        .executes(context -> {
+                            return executeRecordStart(context, DEFAULT_RECORDING_MB);
+                        })
+                        .then(Commands.argument("sizeMb", IntegerArgumentType.integer(1, 1024))
+                            .executes(context -> {
+                                return executeRecordStart(context, IntegerArgumentType.getInteger(context, "sizeMb"));
+                            })
+                        )
+                    )
+                    .then(Commands.literal("stop")
+                        .executes(context -> {
+                            return executeRecordStop(context);
+                        })
+                    )
+                )
         );
         
         RankRestrictions.LOGGER.info("Successfully registered rankrestrictions commands via direct access");
@@ -177,4 +233,113 @@ public class RankRestrictionsCommands {
         
         return 1;
     }
+
+    /**
+     * Execute the stats command
+     */
+    private static int executeStats(CommandContext<CommandSourceStack> context) {
+        RestrictionMetrics metrics = RankRestrictions.getInstance().getMetrics();
+        List<String> lines = metrics.formatReport();
+
+        context.getSource().sendSuccess(() -> Component.literal("§a" + lines.get(0)), false);
+        for (String line : lines.subList(1, lines.size())) {
+            context.getSource().sendSuccess(() -> Component.literal("§7" + line), false);
+        }
+
+        return 1;
+    }
+
+    /**
+     * Execute the stats reset command
+     */
+    private static int executeStatsReset(CommandContext<CommandSourceStack> context) {
+        RankRestrictions.getInstance().getMetrics().reset();
+        context.getSource().sendSuccess(() -> Component.literal("§aRank restrictions stats reset."), true);
+        return 1;
+    }
+
+    /**
+     * Execute the offline audit command
+     */
+    private static int executeOfflineAudit(CommandContext<CommandSourceStack> context, boolean fix) {
+        RankRestrictionsConfig config = RankRestrictions.getInstance().getConfig();
+        if (!config.isConfigLoaded() || !FTBRanksHelper.isApiAvailable()) {
+            context.getSource().sendFailure(Component.literal("§cRank restrictions or FTBRanks are not loaded yet."));
+            return 0;
+        }
+
+        CommandSourceStack source = context.getSource();
+        Path reportFile = OfflineInventoryAudit.start(source.getServer(), config.getRestrictionIndex(), config.getContainerScanDepth(), fix,
+            FMLPaths.GAMEDIR.get().resolve("logs"), message -> source.sendSuccess(() -> Component.literal("§7" + message), false));
+        if (reportFile == null) {
+            source.sendFailure(Component.literal("§cAn offline audit is already running."));
+            return 0;
+        }
+
+        source.sendSuccess(() -> Component.literal("§aAuditing offline players" + (fix ? " and removing restricted items" : "")
+            + ", the report will be written to logs/" + reportFile.getFileName()), true);
+        return 1;
+    }
+
+    /**
+     * Execute the matrix command
+     */
+    private static int executeMatrix(CommandContext<CommandSourceStack> context) {
+        RankRestrictionsConfig config = RankRestrictions.getInstance().getConfig();
+        if (!config.isConfigLoaded()) {
+            context.getSource().sendFailure(Component.literal("§cRank restrictions are not loaded yet."));
+            return 0;
+        }
+
+        CommandSourceStack source = context.getSource();
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Path file = FMLPaths.GAMEDIR.get().resolve("logs/rankrestrictions-matrix-" + timestamp + ".csv");
+        long startNanos = System.nanoTime();
+        RestrictionMatrixExport.exportAsync(config.getSnapshot(), file).whenComplete((rows, error) -> source.getServer().execute(() -> {
+            if (error != null) {
+                RankRestrictions.LOGGER.error("Failed to export the restriction matrix: " + error.getMessage(), error);
+                source.sendFailure(Component.literal("§cFailed to export the restriction matrix, see the server log."));
+                return;
+            }
+            long millis = (System.nanoTime() - startNanos) / 1_000_000;
+            source.sendSuccess(() -> Component.literal("§aWrote " + rows + " rules to logs/" + file.getFileName() + " in " + millis + " ms"), false);
+        }));
+
+        source.sendSuccess(() -> Component.literal("§7Exporting the restriction matrix..."), false);
+        return 1;
+    }
+
+    /**
+     * Execute the record start command
+     */
+    private static int executeRecordStart(CommandContext<CommandSourceStack> context, int sizeMb) {
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        Path file = FMLPaths.GAMEDIR.get().resolve("logs/rankrestrictions-recording-" + timestamp + ".bin");
+        try {
+            if (!RankRestrictions.getInstance().getRecorder().startRecording(file, sizeMb * 1024L * 1024L)) {
+                context.getSource().sendFailure(Component.literal("§cA recording is already running."));
+                return 0;
+            }
+        } catch (IOException e) {
+            RankRestrictions.LOGGER.error("Failed to start recording: " + e.getMessage(), e);
+            context.getSource().sendFailure(Component.literal("§cFailed to start recording, see the server log."));
+            return 0;
+        }
+        context.getSource().sendSuccess(() -> Component.literal("§aRecording restriction decisions to logs/" + file.getFileName()
+            + " (" + sizeMb + " MB, oldest records are overwritten when full)"), true);
+        return 1;
+    }
+
+    /**
+     * Execute the record stop command
+     */
+    private static int executeRecordStop(CommandContext<CommandSourceStack> context) {
+        long records = RankRestrictions.getInstance().getRecorder().stopRecording();
+        if (records < 0) {
+            context.getSource().sendFailure(Component.literal("§cNo recording is running."));
+            return 0;
+        }
+        context.getSource().sendSuccess(() -> Component.literal("§aStopped recording after " + records + " decisions."), true);
+        return 1;
+    }
 }
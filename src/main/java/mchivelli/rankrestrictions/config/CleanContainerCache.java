@@ -0,0 +1,40 @@
+package mchivelli.rankrestrictions.config;
+
+import net.minecraft.nbt.CompoundTag;
+
+/**
+ * Remembers container items found to hold nothing restricted, by item and tag contents, so identical containers
+ * and the same container on the next sweep are not opened again. Opening one builds an item stack for every
+ * entry inside, which costs far more than hashing and comparing the tag.
+ * <p>
+ * The table is direct-mapped with a fixed number of slots: an entry is found by hashing the item ID with the
+ * tag's hash and replaced by whatever maps to the same slot, so the memory use is bounded. Entries hold a copy
+ * of the tag, since stack tags are modified in place, and a hit is only taken if the tags are equal, so a hash
+ * collision can't skip a container. Entries are immutable and written with a single reference store, so
+ * concurrent readers see either the old or the new entry.
+ */
+final class CleanContainerCache {
+    private static final int SLOTS = 512; // Power of two
+
+    private final Entry[] entries = new Entry[SLOTS];
+
+    private record Entry(int itemId, int tagHash, CompoundTag tag) {
+    }
+
+    /**
+     * @param tagHash The tag's {@link CompoundTag#hashCode()}, computed once by the caller.
+     */
+    boolean contains(int itemId, CompoundTag tag, int tagHash) {
+        Entry entry = entries[slot(itemId, tagHash)];
+        return entry != null && entry.itemId == itemId && entry.tagHash == tagHash && entry.tag.equals(tag);
+    }
+
+    void add(int itemId, CompoundTag tag, int tagHash) {
+        entries[slot(itemId, tagHash)] = new Entry(itemId, tagHash, tag.copy());
+    }
+
+    private static int slot(int itemId, int tagHash) {
+        int h = itemId * 0x9E3779B9 + tagHash;
+        return (h ^ (h >>> 16)) & (SLOTS - 1);
+    }
+}
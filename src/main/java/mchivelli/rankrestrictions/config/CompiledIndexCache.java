@@ -0,0 +1,296 @@
+package mchivelli.rankrestrictions.config;
+
+import mchivelli.rankrestrictions.RankRestrictions;
+import mchivelli.rankrestrictions.engine.Fingerprints;
+import mchivelli.rankrestrictions.util.ForgeRegistryAdapter;
+import net.minecraft.Util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Persists compiled restriction indexes next to restrictions.toml, so an unchanged restart doesn't have to
+ * resolve every pattern against the registries again.
+ * <p>
+ * An entry holds the per-set item, block and entity type registry-ID bitsets of every rank, keyed by a hash of
+ * the raw patterns, actions and NBT conditions, the item, block and entity type registries' ID assignments and
+ * the contents of every referenced tag. Any change to one of those produces a different key, so stale entries
+ * are never used. Strings are hashed by their full bytes into the 64-bit key. The index is compiled once
+ * before tags are loaded and once after, so the file keeps the last {@link #MAX_ENTRIES} entries. The file is
+ * small, so it is read whole rather than memory-mapped, which would keep it open and stop it from being
+ * replaced on Windows. It is rewritten atomically on Minecraft's I/O pool.
+ * <p>
+ * Registries don't change while the server runs, so their part of the key is computed once. What remains per
+ * compile is hashing the patterns and the bound tag members, a few milliseconds against the hundreds a large
+ * config takes to resolve (see {@code EngineBenchmark}).
+ * <p>
+ * File layout, big-endian: magic, version, entry count, then per entry: key, rank count, and per rank:
+ * UTF-8 rank ID (length-prefixed), set count, and per set: item, block and entity type bitset words
+ * (each length-prefixed).
+ */
+public class CompiledIndexCache {
+    private static final int MAGIC = 0x52524943; // "RRIC"
+    private static final int VERSION = 3;
+    private static final int MAX_ENTRIES = 4;
+
+    private static volatile RegistryFingerprint registryFingerprint;
+
+    private final Path file;
+
+    public CompiledIndexCache(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Computes the cache key for the given rank data. Tags must already be bound.
+     */
+    static long key(Map<String, RankRestrictionData> rankRestrictions) {
+        long hash = mix(VERSION, registryFingerprint());
+        // Sorted so the key doesn't depend on the order of ranks in the file
+        for (Map.Entry<String, RankRestrictionData> entry : new TreeMap<>(rankRestrictions).entrySet()) {
+            hash = mixString(hash, entry.getKey());
+            for (RestrictionSet set : entry.getValue().getRestrictionSets()) {
+                hash = mix(hash, set.getAction().ordinal());
+                hash = mix(hash, set.getItems().size());
+                for (String pattern : set.getItems()) {
+                    hash = mixString(hash, pattern);
+                }
+                hash = mix(hash, set.getBlocks().size());
+                for (String pattern : set.getBlocks()) {
+                    hash = mixString(hash, pattern);
+                }
+                hash = mix(hash, set.getEntities().size());
+                for (String pattern : set.getEntities()) {
+                    hash = mixString(hash, pattern);
+                }
+                hash = mix(hash, set.getNbt().size());
+                for (String condition : set.getNbt()) {
+                    hash = mixString(hash, condition);
+                }
+                hash = mix(hash, set.tagFingerprint());
+            }
+        }
+        return hash;
+    }
+
+    private static long registryFingerprint() {
+        int items = ForgeRegistryAdapter.ITEMS.size();
+        int blocks = ForgeRegistryAdapter.BLOCKS.size();
+        int entities = ForgeRegistryAdapter.ENTITY_TYPES.size();
+        RegistryFingerprint known = registryFingerprint;
+        // The sizes only guard against a compile before registration finished
+        if (known == null || known.items() != items || known.blocks() != blocks || known.entities() != entities) {
+            long hash = Fingerprints.registry(ForgeRegistryAdapter.ITEMS);
+            hash = mix(hash, Fingerprints.registry(ForgeRegistryAdapter.BLOCKS));
+            hash = mix(hash, Fingerprints.registry(ForgeRegistryAdapter.ENTITY_TYPES));
+            known = new RegistryFingerprint(items, blocks, entities, hash);
+            registryFingerprint = known;
+        }
+        return known.hash();
+    }
+
+    private record RegistryFingerprint(int items, int blocks, int entities, long hash) {
+    }
+
+    private static long mixString(long hash, String value) {
+        return Fingerprints.mixString(hash, value);
+    }
+
+    static long mix(long hash, long value) {
+        return Fingerprints.mix(hash, value);
+    }
+
+    /**
+     * Reads the entry with the given key.
+     * @return Rank ID to {item bitsets, block bitsets, entity type bitsets} with one bitset per restriction set, or null if there is no such entry.
+     */
+    public Map<String, BitSet[][]> load(long key) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            int entries = readHeader(buffer);
+            for (int i = 0; i < entries; i++) {
+                long entryKey = buffer.getLong();
+                if (entryKey == key) {
+                    return readEntry(buffer);
+                }
+                skipEntry(buffer);
+            }
+        } catch (IOException | RuntimeException e) {
+            // A damaged cache only costs a recompile
+            RankRestrictions.LOGGER.warn("Ignoring unreadable compiled restriction cache " + file.getFileName() + ": " + e);
+        }
+        return null;
+    }
+
+    /**
+     * Adds the index to the cache file on Minecraft's I/O pool, keeping the most recent entries.
+     */
+    public void storeAsync(long key, RestrictionIndex index) {
+        byte[] entry = encodeEntry(key, index); // Encoded now, the index is immutable anyway
+        Util.ioPool().execute(() -> store(key, entry));
+    }
+
+    private synchronized void store(long key, byte[] newEntry) {
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            List<ByteBuffer> keptEntries = readOtherEntries(key);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(1 + keptEntries.size());
+                out.write(newEntry);
+                for (ByteBuffer kept : keptEntries) {
+                    byte[] bytes = new byte[kept.remaining()];
+                    kept.get(bytes);
+                    out.write(bytes);
+                }
+            }
+            try {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            RankRestrictions.LOGGER.warn("Failed to write compiled restriction cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Copies the raw bytes of the newest entries other than the given key, up to {@link #MAX_ENTRIES} - 1.
+     */
+    private List<ByteBuffer> readOtherEntries(long key) {
+        List<ByteBuffer> kept = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return kept;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            int entries = readHeader(buffer);
+            for (int i = 0; i < entries && kept.size() < MAX_ENTRIES - 1; i++) {
+                int start = buffer.position();
+                long entryKey = buffer.getLong();
+                skipEntry(buffer);
+                if (entryKey != key) {
+                    kept.add(buffer.duplicate().limit(buffer.position()).position(start));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            kept.clear(); // Start over with just the new entry
+        }
+        return kept;
+    }
+
+    private static int readHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 12 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("not a compiled restriction cache of this version");
+        }
+        return buffer.getInt();
+    }
+
+    private static Map<String, BitSet[][]> readEntry(ByteBuffer buffer) {
+        int rankCount = buffer.getInt();
+        Map<String, BitSet[][]> ranks = new HashMap<>();
+        for (int r = 0; r < rankCount; r++) {
+            byte[] idBytes = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(idBytes);
+            int setCount = buffer.getInt();
+            BitSet[] items = new BitSet[setCount];
+            BitSet[] blocks = new BitSet[setCount];
+            BitSet[] entities = new BitSet[setCount];
+            for (int i = 0; i < setCount; i++) {
+                items[i] = readBits(buffer);
+                blocks[i] = readBits(buffer);
+                entities[i] = readBits(buffer);
+            }
+            ranks.put(new String(idBytes, StandardCharsets.UTF_8), new BitSet[][] {items, blocks, entities});
+        }
+        return ranks;
+    }
+
+    private static BitSet readBits(ByteBuffer buffer) {
+        int words = buffer.getInt();
+        if (words < 0 || words > buffer.remaining() / Long.BYTES) {
+            throw new BufferUnderflowException();
+        }
+        BitSet bits = BitSet.valueOf(buffer.asLongBuffer().limit(words));
+        buffer.position(buffer.position() + words * Long.BYTES);
+        return bits;
+    }
+
+    private static void skipEntry(ByteBuffer buffer) {
+        int rankCount = buffer.getInt();
+        for (int r = 0; r < rankCount; r++) {
+            buffer.position(buffer.position() + (buffer.getShort() & 0xFFFF));
+            int setCount = buffer.getInt();
+            for (int i = 0; i < setCount * 3; i++) {
+                int words = buffer.getInt();
+                buffer.position(buffer.position() + words * Long.BYTES);
+            }
+        }
+    }
+
+    private static byte[] encodeEntry(long key, RestrictionIndex index) {
+        Map<String, RestrictionIndex.RankIndex> ranks = index.getRanks();
+        int size = Long.BYTES + Integer.BYTES;
+        for (Map.Entry<String, RestrictionIndex.RankIndex> entry : ranks.entrySet()) {
+            size += Short.BYTES + entry.getKey().getBytes(StandardCharsets.UTF_8).length + Integer.BYTES;
+            for (BitSet bits : entry.getValue().getSetItems()) {
+                size += Integer.BYTES + wordCount(bits) * Long.BYTES;
+            }
+            for (BitSet bits : entry.getValue().getSetBlocks()) {
+                size += Integer.BYTES + wordCount(bits) * Long.BYTES;
+            }
+            for (BitSet bits : entry.getValue().getSetEntities()) {
+                size += Integer.BYTES + wordCount(bits) * Long.BYTES;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putLong(key);
+        buffer.putInt(ranks.size());
+        for (Map.Entry<String, RestrictionIndex.RankIndex> entry : ranks.entrySet()) {
+            byte[] idBytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) idBytes.length);
+            buffer.put(idBytes);
+            BitSet[] setItems = entry.getValue().getSetItems();
+            BitSet[] setBlocks = entry.getValue().getSetBlocks();
+            BitSet[] setEntities = entry.getValue().getSetEntities();
+            buffer.putInt(setItems.length);
+            for (int i = 0; i < setItems.length; i++) {
+                writeBits(buffer, setItems[i]);
+                writeBits(buffer, setBlocks[i]);
+                writeBits(buffer, setEntities[i]);
+            }
+        }
+        return buffer.array();
+    }
+
+    private static int wordCount(BitSet bits) {
+        return (bits.length() + Long.SIZE - 1) / Long.SIZE; // Same as toLongArray().length
+    }
+
+    private static void writeBits(ByteBuffer buffer, BitSet bits) {
+        long[] words = bits.toLongArray();
+        buffer.putInt(words.length);
+        for (long word : words) {
+            buffer.putLong(word);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package mchivelli.rankrestrictions.config;
+
+import mchivelli.rankrestrictions.RankRestrictions;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coalesces config saves and runs them on a dedicated I/O thread.
+ * <p>
+ * The first save request schedules a write {@link #COALESCE_MILLIS} later; requests made before that
+ * write starts are folded into it. The write always saves the latest config, so no edit is lost, and an
+ * edit made while a write is in progress schedules one more write.
+ */
+public class ConfigSaver {
+    private static final long COALESCE_MILLIS = 1000;
+    private static final long FLUSH_TIMEOUT_SECONDS = 10;
+
+    private final Runnable writer;
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "RankRestrictions config saver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ConfigSaver(Runnable writer) {
+        this.writer = writer;
+    }
+
+    public void requestSave() {
+        if (pending.compareAndSet(false, true)) {
+            executor.schedule(this::writeIfPending, COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes a pending save right away and waits for it to finish.
+     */
+    public void flush() {
+        if (!pending.get()) {
+            return;
+        }
+        try {
+            executor.submit(this::writeIfPending).get(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            RankRestrictions.LOGGER.error("Failed to flush pending config save: " + e.getMessage(), e);
+        }
+    }
+
+    private void writeIfPending() {
+        // Cleared before writing, so an edit made during the write requests another one
+        if (pending.getAndSet(false)) {
+            writer.run();
+        }
+    }
+}
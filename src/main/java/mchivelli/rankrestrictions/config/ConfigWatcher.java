@@ -0,0 +1,165 @@
+package mchivelli.rankrestrictions.config;
+
+import mchivelli.rankrestrictions.RankRestrictions;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reloads restrictions.toml when it changes on disk.
+ * <p>
+ * A daemon thread watches the config directory. Editors often save in several writes, so the file is
+ * only read once no change has been seen for {@link #DEBOUNCE_MILLIS}. The thread then parses and compiles
+ * the file itself, and the result is applied on the next server tick, so the server thread never waits on
+ * TOML parsing. Files with validation errors are not applied; the errors are sent to online operators.
+ * Saves made by the mod itself are recognized by their content hash and ignored.
+ */
+public class ConfigWatcher {
+    private static final long DEBOUNCE_MILLIS = 500;
+    private static final int MAX_REPORTED_ERRORS = 5;
+
+    private final RankRestrictionsConfig config;
+    private final AtomicReference<RankRestrictionsConfig.ParsedConfig> pendingReload = new AtomicReference<>();
+    private WatchService watchService;
+    private Thread thread;
+
+    public ConfigWatcher(RankRestrictionsConfig config) {
+        this.config = config;
+    }
+
+    public synchronized boolean isRunning() {
+        return thread != null;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+
+        Path directory = config.getConfigFile().getParent();
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            RankRestrictions.LOGGER.error("Failed to watch " + directory + " for config changes: " + e.getMessage());
+            closeWatchService();
+            return;
+        }
+
+        WatchService service = watchService;
+        thread = new Thread(() -> run(service), "RankRestrictions config watcher");
+        thread.setDaemon(true);
+        thread.start();
+        RankRestrictions.LOGGER.info("Watching " + config.getConfigFile() + " for changes");
+    }
+
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        closeWatchService(); // Also wakes the thread if it is waiting for events
+        thread = null;
+        pendingReload.set(null);
+    }
+
+    /**
+     * Applies a reload prepared by the watcher thread, if there is one. Must be called on the server thread.
+     */
+    public void tick(MinecraftServer server) {
+        RankRestrictionsConfig.ParsedConfig parsed = pendingReload.getAndSet(null);
+        if (parsed == null) {
+            return;
+        }
+
+        String fileName = config.getConfigFile().getFileName().toString();
+        if (!parsed.isValid()) {
+            RankRestrictions.LOGGER.warn(fileName + " changed on disk but has errors, keeping the current restrictions:");
+            parsed.errors.forEach(error -> RankRestrictions.LOGGER.warn("  " + error));
+
+            sendToOps(server, "§c[RankRestrictions] " + fileName + " has errors and was not reloaded:");
+            parsed.errors.stream().limit(MAX_REPORTED_ERRORS).forEach(error -> sendToOps(server, "§7 - " + error));
+            if (parsed.errors.size() > MAX_REPORTED_ERRORS) {
+                sendToOps(server, "§7 ... and " + (parsed.errors.size() - MAX_REPORTED_ERRORS) + " more, see the server log");
+            }
+            return;
+        }
+
+        config.applyParsedConfig(parsed);
+        RankRestrictions.LOGGER.info("Reloaded " + fileName + " after it changed on disk (" + parsed.snapshot.getRankRestrictions().size() + " ranks)");
+        sendToOps(server, "§a[RankRestrictions] Reloaded " + fileName);
+    }
+
+    private void run(WatchService service) {
+        String fileName = config.getConfigFile().getFileName().toString();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                if (!drainEvents(service.take(), fileName)) {
+                    continue;
+                }
+
+                // Wait until the directory has been quiet for the debounce time
+                WatchKey next;
+                while ((next = service.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    drainEvents(next, fileName);
+                }
+
+                RankRestrictionsConfig.ParsedConfig parsed = config.parseChangedFile();
+                if (parsed != null) {
+                    pendingReload.set(parsed); // A newer parse replaces one that wasn't applied yet
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        } catch (Exception e) {
+            RankRestrictions.LOGGER.error("Config watcher stopped: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Consumes the key's events and re-arms it.
+     * @return Whether any of the events may concern the config file.
+     */
+    private static boolean drainEvents(WatchKey key, String fileName) {
+        boolean relevant = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            // OVERFLOW means events were lost, so assume the file changed
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                || (event.context() instanceof Path path && path.getFileName().toString().equals(fileName))) {
+                relevant = true;
+            }
+        }
+        key.reset();
+        return relevant;
+    }
+
+    private static void sendToOps(MinecraftServer server, String message) {
+        for (ServerPlayer player : server.getPlayerList().getPlayers()) {
+            if (server.getPlayerList().isOp(player.getGameProfile())) {
+                player.sendSystemMessage(Component.literal(message));
+            }
+        }
+    }
+
+    private void closeWatchService() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // Nothing left to release
+            }
+            watchService = null;
+        }
+    }
+}
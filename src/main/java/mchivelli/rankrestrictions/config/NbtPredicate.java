@@ -0,0 +1,212 @@
+package mchivelli.rankrestrictions.config;
+
+import net.minecraft.nbt.CollectionTag;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NumericTag;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.enchantment.EnchantmentHelper;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A condition on an item stack's NBT, parsed once from the config. Supported forms:
+ * <ul>
+ *   <li>{@code enchantment minecraft:sharpness >= 5}: the level of an enchantment, on the item or stored in a
+ *   book, compared with {@code >=, >, =, <=, <}. A missing enchantment has level 0. Without a comparison, any
+ *   level matches.</li>
+ *   <li>{@code Potion = minecraft:strong_harming}: the tag at a dot-separated path equals a value. Numbers are
+ *   compared numerically; list elements are addressed by index, e.g. {@code CustomPotionEffects.0.Id = 7}.</li>
+ *   <li>{@code display.Lore ~ Overcharged}: the string at the path contains the value, the list at the path has
+ *   a string element containing it or another element equal to it, or the compound at the path has it as a key.
+ *   Lore lines are JSON text such as {@code {"text":"Overcharged"}}, so they are matched by substring.</li>
+ * </ul>
+ */
+public final class NbtPredicate {
+    private static final Pattern ENCHANTMENT = Pattern.compile("enchantment\\s+([^\\s<>=]+)\\s*(?:(>=|<=|>|<|=)\\s*(\\d+))?", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PATH = Pattern.compile("([^\\s=~]+)\\s*([=~])\\s*(.+)");
+
+    private enum Kind { ENCHANTMENT, EQUALS, CONTAINS }
+
+    private final String source;
+    private final Kind kind;
+    private final ResourceLocation enchantmentId;
+    private final String operator;
+    private final int level;
+    private final String[] path;
+    private final String value;
+    private final Double numericValue; // The value as a number, if it is one
+
+    private NbtPredicate(String source, Kind kind, ResourceLocation enchantmentId, String operator, int level, String[] path, String value) {
+        this.source = source;
+        this.kind = kind;
+        this.enchantmentId = enchantmentId;
+        this.operator = operator;
+        this.level = level;
+        this.path = path;
+        this.value = value;
+        this.numericValue = value != null ? parseNumber(value) : null;
+    }
+
+    /**
+     * Parses a predicate as written in the config.
+     * @throws IllegalArgumentException If the predicate is malformed, with a message describing the problem.
+     */
+    public static NbtPredicate parse(String source) {
+        String trimmed = source.trim();
+        Matcher enchantment = ENCHANTMENT.matcher(trimmed);
+        if (enchantment.matches()) {
+            ResourceLocation id = ResourceLocation.tryParse(enchantment.group(1).toLowerCase(Locale.ROOT));
+            if (id == null) {
+                throw new IllegalArgumentException("invalid enchantment ID in '" + trimmed + "'");
+            }
+            String operator = enchantment.group(2) != null ? enchantment.group(2) : ">=";
+            int level;
+            try {
+                level = enchantment.group(3) != null ? Integer.parseInt(enchantment.group(3)) : 1;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("enchantment level out of range in '" + trimmed + "'");
+            }
+            return new NbtPredicate(trimmed, Kind.ENCHANTMENT, id, operator, level, null, null);
+        }
+
+        Matcher pathMatcher = PATH.matcher(trimmed);
+        if (pathMatcher.matches()) {
+            String[] path = pathMatcher.group(1).split("\\.", -1);
+            for (String key : path) {
+                if (key.isEmpty()) {
+                    throw new IllegalArgumentException("empty key in NBT path '" + pathMatcher.group(1) + "'");
+                }
+            }
+            Kind kind = pathMatcher.group(2).equals("=") ? Kind.EQUALS : Kind.CONTAINS;
+            return new NbtPredicate(trimmed, kind, null, null, 0, path, unquote(pathMatcher.group(3).trim()));
+        }
+        throw new IllegalArgumentException("invalid NBT condition '" + trimmed + "', expected 'enchantment <id> >= <level>', '<path> = <value>' or '<path> ~ <value>'");
+    }
+
+    /**
+     * Checks a single condition without keeping it, for validating a config before it is applied.
+     * @return A description of the problem, or null if the condition is valid.
+     */
+    public static String validate(String source) {
+        try {
+            parse(source);
+            return null;
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private static Double parseNumber(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Tests the condition against a stack's tag.
+     * @param tag The stack's tag, or null if it has none.
+     */
+    public boolean test(CompoundTag tag) {
+        if (kind == Kind.ENCHANTMENT) {
+            return compare(enchantmentLevel(tag));
+        }
+        Tag target = resolve(tag);
+        if (target == null) {
+            return false;
+        }
+        return kind == Kind.EQUALS ? valueEquals(target) : contains(target);
+    }
+
+    private int enchantmentLevel(CompoundTag tag) {
+        if (tag == null) {
+            return 0;
+        }
+        // Enchanted items and enchanted books keep their enchantments under different keys
+        return Math.max(enchantmentLevel(tag, "Enchantments"), enchantmentLevel(tag, "StoredEnchantments"));
+    }
+
+    private int enchantmentLevel(CompoundTag tag, String key) {
+        ListTag enchantments = tag.getList(key, Tag.TAG_COMPOUND);
+        for (int i = 0; i < enchantments.size(); i++) {
+            CompoundTag enchantment = enchantments.getCompound(i);
+            if (enchantmentId.equals(EnchantmentHelper.getEnchantmentId(enchantment))) {
+                return EnchantmentHelper.getEnchantmentLevel(enchantment);
+            }
+        }
+        return 0;
+    }
+
+    private boolean compare(int actual) {
+        return switch (operator) {
+            case ">" -> actual > level;
+            case "=" -> actual == level;
+            case "<=" -> actual <= level;
+            case "<" -> actual < level;
+            default -> actual >= level;
+        };
+    }
+
+    private Tag resolve(CompoundTag tag) {
+        Tag current = tag;
+        for (String key : path) {
+            if (current instanceof CompoundTag compound) {
+                current = compound.get(key);
+            } else if (current instanceof CollectionTag<?> list) {
+                int index = parseIndex(key);
+                current = index >= 0 && index < list.size() ? list.get(index) : null;
+            } else {
+                return null;
+            }
+        }
+        return current;
+    }
+
+    private static int parseIndex(String key) {
+        try {
+            return Integer.parseInt(key);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private boolean valueEquals(Tag tag) {
+        if (tag instanceof NumericTag number) {
+            return numericValue != null && number.getAsDouble() == numericValue;
+        }
+        return tag.getAsString().equals(value);
+    }
+
+    private boolean contains(Tag tag) {
+        if (tag instanceof CompoundTag compound) {
+            return compound.contains(value);
+        }
+        if (tag instanceof CollectionTag<?> list) {
+            for (Tag element : list) {
+                if (element instanceof StringTag string ? string.getAsString().contains(value) : valueEquals(element)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return tag.getAsString().contains(value);
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
@@ -1,46 +1,74 @@
 package mchivelli.rankrestrictions.config;
 
 import net.minecraft.resources.ResourceLocation;
-import net.minecraft.tags.TagKey;
 import net.minecraft.world.item.Item;
 import net.minecraft.world.level.block.Block;
-import net.minecraftforge.registries.ForgeRegistries;
 
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Stores restriction data for a specific rank, including
- * the list of restricted items/blocks and custom messages
+ * the list of restricted items/blocks and custom messages.
+ * Instances are immutable; changes create a modified copy.
  */
 public class RankRestrictionData {
     private final String rankId;
-    private final List<RestrictionSet> restrictionSets = new ArrayList<>();
+    private final List<RestrictionSet> restrictionSets;
 
     public RankRestrictionData(String rankId) {
+        this(rankId, List.of());
+    }
+
+    public RankRestrictionData(String rankId, List<RestrictionSet> restrictionSets) {
         this.rankId = rankId;
+        this.restrictionSets = List.copyOf(restrictionSets);
     }
 
     public String getRankId() {
         return rankId;
     }
 
-    public void addRestrictionSet(RestrictionSet set) {
-        if (set != null) {
-            this.restrictionSets.add(set);
+    public List<RestrictionSet> getRestrictionSets() {
+        return restrictionSets; // Immutable, safe to share
+    }
+
+    /**
+     * Creates a copy of this rank whose sets are copies too, see {@link RestrictionSet#copy()}.
+     */
+    public RankRestrictionData copy() {
+        List<RestrictionSet> sets = new ArrayList<>(restrictionSets.size());
+        for (RestrictionSet set : restrictionSets) {
+            sets.add(set.copy());
         }
+        return new RankRestrictionData(rankId, sets);
     }
 
-    public void clearRestrictions() {
-        this.restrictionSets.clear();
+    /**
+     * Creates a copy of this rank with the set at the given index replaced, or appended if the index is the number of sets.
+     */
+    public RankRestrictionData withRestrictionSet(int setIndex, RestrictionSet set) {
+        List<RestrictionSet> sets = new ArrayList<>(restrictionSets);
+        if (setIndex == sets.size()) {
+            sets.add(set);
+        } else {
+            sets.set(setIndex, set);
+        }
+        return new RankRestrictionData(rankId, sets);
     }
 
-    public List<RestrictionSet> getRestrictionSets() {
-        return new ArrayList<>(restrictionSets); // Return a copy
+    /**
+     * Creates a copy of this rank without the set at the given index.
+     */
+    public RankRestrictionData withoutRestrictionSet(int setIndex) {
+        List<RestrictionSet> sets = new ArrayList<>(restrictionSets);
+        sets.remove(setIndex);
+        return new RankRestrictionData(rankId, sets);
     }
 
     /**
-     * Checks if the given item is restricted by any of the RestrictionSets for this rank.
+     * Checks if the given item is restricted by any of the deny RestrictionSets for this rank.
+     * Allow sets are ignored here; they only matter when ranks are combined.
      * @param itemRL The ResourceLocation of the item to check.
      * @param itemToCheck The Item object itself.
      * @return The matching RestrictionSet if the item is restricted, null otherwise.
@@ -48,69 +76,15 @@ public class RankRestrictionData {
     public RestrictionSet getMatchingRestrictionSet(ResourceLocation itemRL, Item itemToCheck) {
         if (itemToCheck == null) return null;
 
-        String itemIdString = itemRL.toString();
-        String modId = itemRL.getNamespace();
-
+        // Each set parses its patterns once on construction, so there is no need to re-split the raw strings here
         for (RestrictionSet set : restrictionSets) {
-            for (String restriction : set.getItems()) {
-                String trimmedRestriction = restriction.trim();
-                if (trimmedRestriction.isEmpty()) continue;
-
-                // Handle comma-separated values within a single restriction string in the list
-                if (trimmedRestriction.contains(",")) {
-                    String[] parts = trimmedRestriction.split(",");
-                    for (String part : parts) {
-                        if (checkSingleRestriction(part.trim(), itemIdString, modId, itemToCheck, itemRL)) {
-                            return set;
-                        }
-                    }
-                } else {
-                    if (checkSingleRestriction(trimmedRestriction, itemIdString, modId, itemToCheck, itemRL)) {
-                        return set;
-                    }
-                }
+            if (!set.isAllow() && set.isRestricted(itemRL, itemToCheck)) {
+                return set;
             }
         }
         return null;
     }
 
-    /**
-     * Helper method to check a single restriction pattern (item ID, mod wildcard, or tag).
-     */
-    private boolean checkSingleRestriction(String restriction, String itemIdString, String modId, Item itemToCheck, ResourceLocation itemResourceLocation) {
-        if (restriction.isEmpty()) return false;
-
-        // Direct item ID match
-        if (restriction.equals(itemIdString)) {
-            return true;
-        }
-
-        // Mod ID wildcard match (e.g., "modid:*")
-        if (restriction.equals(modId + ":*")) {
-            return true;
-        }
-
-        // Tag match (e.g., "#forge:tools")
-        if (restriction.startsWith("#")) {
-            String tagName = restriction.substring(1);
-            ResourceLocation tagId;
-            try {
-                if (tagName.contains(":")) {
-                    tagId = ResourceLocation.tryParse(tagName);
-                } else {
-                    tagId = ResourceLocation.tryParse("minecraft:" + tagName); // Default to minecraft namespace
-                }
-                TagKey<Item> tagKey = TagKey.create(ForgeRegistries.ITEMS.getRegistryKey(), tagId);
-                if (itemToCheck.getDefaultInstance().is(tagKey)) {
-                    return true;
-                }
-            } catch (Exception e) {
-                mchivelli.rankrestrictions.RankRestrictions.LOGGER.warn("Invalid tag format in restrictions: " + restriction + " for rank " + rankId, e);
-            }
-        }
-        return false;
-    }
-
     /**
      * Convenience method to quickly check if an item is restricted without needing the specific set.
      */
@@ -119,7 +93,7 @@ public class RankRestrictionData {
     }
     
     /**
-     * Checks if the given block is restricted by any of the RestrictionSets for this rank.
+     * Checks if the given block is restricted by any of the deny RestrictionSets for this rank.
      * @param blockRL The ResourceLocation of the block to check.
      * @param blockToCheck The Block object itself.
      * @return The matching RestrictionSet if the block is restricted, null otherwise.
@@ -128,7 +102,7 @@ public class RankRestrictionData {
         if (blockToCheck == null) return null;
 
         for (RestrictionSet set : restrictionSets) {
-            if (set.isBlockRestricted(blockRL, blockToCheck)) {
+            if (!set.isAllow() && set.isBlockRestricted(blockRL, blockToCheck)) {
                 return set;
             }
         }
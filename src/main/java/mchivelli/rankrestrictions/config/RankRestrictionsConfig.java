@@ -4,32 +4,57 @@ import com.electronwill.nightconfig.core.file.CommentedFileConfig;
 import mchivelli.rankrestrictions.RankRestrictions;
 import mchivelli.rankrestrictions.util.FTBRanksHelper;
 import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.entity.EntityType;
 import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.level.block.Block;
 import net.minecraftforge.registries.ForgeRegistries;
 import net.minecraftforge.fml.loading.FMLPaths;
 import com.electronwill.nightconfig.core.Config;
 
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Collections;
 import java.util.Collection;
+import java.util.zip.CRC32;
 
 public class RankRestrictionsConfig {
     
     private final Path configDir;
     private final Path configFile;
-    private final Map<String, RankRestrictionData> rankRestrictions = new HashMap<>();
-    private String defaultRestrictionMessage = "&cYou are not allowed to use %item% with your current rank!";
-    private boolean configLoaded = false;
+    private final CompiledIndexCache indexCache;
+    private static final String DEFAULT_RESTRICTION_MESSAGE = "&cYou are not allowed to use %item% with your current rank!";
+    private static final int MAX_CONTAINER_SCAN_DEPTH = 8;
+
+    // Settings are replaced together with the snapshot on load, defaults live in ParsedConfig
+    private volatile int fullSweepIntervalTicks = 6000;
+    private volatile int sweepMaxPlayersPerTick = 4;
+    private volatile float sweepTargetMspt = 40.0f;
+    private volatile int containerScanDepth = 3;
+    private volatile boolean metricsEnabled = true;
+    private volatile int metricsDumpIntervalSeconds = 300;
+    private volatile boolean watcherEnabled = true;
+    private volatile boolean configLoaded = false;
+    private volatile long knownContentHash = -1; // CRC32 of the file as last loaded or saved
+    private volatile int tagGeneration; // Bumped whenever tags are reloaded
+    private volatile int editGeneration; // Bumped by every change to the rank data or default message not read from the file
+    private final Object saveLock = new Object(); // Serializes file writes without blocking edits
+    private final ConfigSaver saver = new ConfigSaver(this::saveConfig);
+    // The live rank data, default message and compiled index, replaced as a whole on every change.
+    // Readers never lock; writers synchronize on this config so concurrent edits don't drop each other's changes.
+    private volatile RestrictionSnapshot snapshot = RestrictionSnapshot.compile(Collections.emptyMap(), DEFAULT_RESTRICTION_MESSAGE);
     
     public RankRestrictionsConfig() {
         configDir = FMLPaths.CONFIGDIR.get().resolve("rankrestrictions");
         configFile = configDir.resolve("restrictions.toml");
+        indexCache = new CompiledIndexCache(configDir.resolve("restrictions.cache"));
         
         try {
             if (!Files.exists(configDir)) {
@@ -44,11 +69,37 @@ public class RankRestrictionsConfig {
     public boolean isConfigLoaded() {
         return configLoaded;
     }
+
+    /**
+     * Gets the current immutable config snapshot. Callers that read more than one value should
+     * read them all from the same snapshot.
+     */
+    public RestrictionSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Gets the compiled, registry-ID indexed restrictions used by the event handlers.
+     */
+    public RestrictionIndex getRestrictionIndex() {
+        return snapshot.getIndex();
+    }
+
+    /**
+     * Recompiles the restriction index from the current rank data.
+     * Must be called after tags are reloaded.
+     */
+    public synchronized void rebuildIndex() {
+        long start = System.nanoTime();
+        tagGeneration++;
+        snapshot = snapshot.recompile(indexCache);
+        RankRestrictions.LOGGER.debug("Compiled restriction index for " + snapshot.getRankRestrictions().size() + " ranks in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
     
     /**
      * Loads the configuration from file
      */
-    public void loadConfig() {
+    public synchronized void loadConfig() {
         boolean isNewConfig = !Files.exists(configFile);
         
         // If config doesn't exist, create an empty config file but don't populate it yet
@@ -72,20 +123,126 @@ public class RankRestrictionsConfig {
             return;
         }
         
+        try {
+            long contentHash = contentHash(configFile);
+            ParsedConfig parsed = parseConfig(contentHash);
+            if (parsed.snapshot == null) {
+                // The file couldn't be read at all, keep what we have
+                RankRestrictions.LOGGER.error("Failed to load config: " + String.join("; ", parsed.errors));
+                return;
+            }
+            for (String error : parsed.errors) {
+                RankRestrictions.LOGGER.warn(error);
+            }
+            applyParsedConfig(parsed);
+            
+            Map<String, RankRestrictionData> rankRestrictions = snapshot.getRankRestrictions();
+            RankRestrictions.LOGGER.info("Loaded config with " + rankRestrictions.size() + " ranks");
+            
+            // Log all loaded restrictions for debugging
+            for (Map.Entry<String, RankRestrictionData> entry : rankRestrictions.entrySet()) {
+                RankRestrictionData rrd = entry.getValue();
+                if (!rrd.isEmpty()) {
+                    RankRestrictions.LOGGER.info("Rank '" + entry.getKey() + "' has " + rrd.getRestrictionSets().size() + " restriction set(s).");
+                    for (RestrictionSet rs : rrd.getRestrictionSets()) {
+                        RankRestrictions.LOGGER.debug("  - Set with " + rs.getItems().size() + " items. Message: '" + (rs.getMessage() != null ? rs.getMessage() : "<default>") + "'. Items: " + String.join(", ", rs.getItems()));
+                    }
+                }
+            }
+            
+        } catch (Exception e) {
+            RankRestrictions.LOGGER.error("Failed to load config: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the config file for the file watcher, unless its content is what this config last loaded or saved.
+     * Safe to call from any thread; nothing is applied.
+     * @return The parsed config, or null if the file is missing or unchanged.
+     */
+    ParsedConfig parseChangedFile() {
+        try {
+            if (!Files.exists(configFile)) {
+                return null;
+            }
+            long contentHash = contentHash(configFile);
+            if (contentHash == knownContentHash) {
+                return null; // Our own save, or a touch without changes
+            }
+            return parseConfig(contentHash);
+        } catch (Exception e) {
+            ParsedConfig failed = new ParsedConfig(0, tagGeneration, editGeneration, snapshot);
+            failed.errors.add("Could not read " + configFile.getFileName() + ": " + e.getMessage());
+            return failed;
+        }
+    }
+
+    /**
+     * Parses and compiles the config file into a new snapshot and settings, without applying them.
+     * Problems are collected in {@link ParsedConfig#errors}; if the file can't be parsed at all the snapshot is null.
+     */
+    private ParsedConfig parseConfig(long contentHash) {
+        // The generation is read first, so an edit made while the snapshot is read shows up as a newer generation
+        int generation = editGeneration;
+        RestrictionSnapshot current = snapshot;
+        ParsedConfig parsed = new ParsedConfig(contentHash, tagGeneration, generation, current);
+        List<String> errors = parsed.errors;
         try {
             CommentedFileConfig config = CommentedFileConfig.builder(configFile)
                 .sync()
-                .autosave()
                 .preserveInsertionOrder()
                 .build();
             
             // Load the existing config
             config.load();
             
+            // Everything is parsed into a new map and published at the end, so readers never see a partially loaded config.
+            // Ranks missing from the file are kept, as copies: compiling binds tags, which must not change the sets
+            // of the published snapshot.
+            Map<String, RankRestrictionData> rankRestrictions = new LinkedHashMap<>();
+            for (Map.Entry<String, RankRestrictionData> entry : current.getRankRestrictions().entrySet()) {
+                rankRestrictions.put(entry.getKey(), entry.getValue().copy());
+            }
+            String defaultRestrictionMessage = current.getDefaultRestrictionMessage();
+
             // Load the default message
             if (config.contains("messages.default_restriction")) {
                 defaultRestrictionMessage = config.get("messages.default_restriction");
             }
+
+            // Load enforcement settings
+            if (config.contains("enforcement.full_sweep_interval_ticks")) {
+                int interval = config.getIntOrElse("enforcement.full_sweep_interval_ticks", parsed.fullSweepIntervalTicks);
+                parsed.fullSweepIntervalTicks = Math.max(20, interval);
+            }
+            if (config.contains("enforcement.sweep_max_players_per_tick")) {
+                parsed.sweepMaxPlayersPerTick = Math.max(1, config.getIntOrElse("enforcement.sweep_max_players_per_tick", parsed.sweepMaxPlayersPerTick));
+            }
+            if (config.contains("enforcement.container_scan_depth")) {
+                int depth = config.getIntOrElse("enforcement.container_scan_depth", parsed.containerScanDepth);
+                parsed.containerScanDepth = Math.max(0, Math.min(MAX_CONTAINER_SCAN_DEPTH, depth));
+            }
+            if (config.contains("enforcement.sweep_target_mspt")) {
+                Object rawTarget = config.get("enforcement.sweep_target_mspt");
+                if (rawTarget instanceof Number number) {
+                    parsed.sweepTargetMspt = Math.max(1.0f, number.floatValue());
+                } else {
+                    errors.add("enforcement.sweep_target_mspt must be a number");
+                }
+            }
+            
+            // Load metrics settings
+            if (config.contains("metrics.enabled")) {
+                parsed.metricsEnabled = config.getOrElse("metrics.enabled", parsed.metricsEnabled);
+            }
+            if (config.contains("metrics.dump_interval_seconds")) {
+                parsed.metricsDumpIntervalSeconds = Math.max(0, config.getIntOrElse("metrics.dump_interval_seconds", parsed.metricsDumpIntervalSeconds));
+            }
+
+            // Load watcher settings
+            if (config.contains("watcher.enabled")) {
+                parsed.watcherEnabled = config.getOrElse("watcher.enabled", parsed.watcherEnabled);
+            }
             
             // Don't clear existing restrictions if we're reloading - merge instead
             // This prevents data loss when the config is reloaded
@@ -104,8 +261,8 @@ public class RankRestrictionsConfig {
                         if (rawRankConfig instanceof Config) {
                             Config rankConfig = (Config) rawRankConfig;
                             
-                            RankRestrictionData data = rankRestrictions.computeIfAbsent(rankId, k -> new RankRestrictionData(rankId));
-                            data.clearRestrictions(); // Clear existing sets before loading new ones for this rank
+                            // Existing sets of this rank are replaced by the ones in the file
+                            List<RestrictionSet> sets = new ArrayList<>();
 
                             if (rankConfig.contains("restriction_sets")) {
                                 Object rawSets = rankConfig.get("restriction_sets");
@@ -122,13 +279,35 @@ public class RankRestrictionsConfig {
                                                 .filter(List.class::isInstance)
                                                 .map(l -> ((List<?>)l).stream().map(String::valueOf).collect(java.util.stream.Collectors.toList()))
                                                 .orElseGet(ArrayList::new);
+                                            List<String> entities = setTable.getOptional("entities")
+                                                .filter(List.class::isInstance)
+                                                .map(l -> ((List<?>)l).stream().map(String::valueOf).collect(java.util.stream.Collectors.toList()))
+                                                .orElseGet(ArrayList::new);
                                             String message = setTable.getOptional("message").map(String::valueOf).orElse(null);
-                                            if (!items.isEmpty() || !blocks.isEmpty()) {
-                                                data.addRestrictionSet(new RestrictionSet(items, blocks, message));
+                                            String actionName = setTable.getOptional("action").map(String::valueOf).orElse("deny");
+                                            RestrictionSet.Action action = RestrictionSet.Action.parse(actionName);
+                                            if (action == null) {
+                                                errors.add("Rank '" + rankId + "': invalid action '" + actionName + "', expected \"deny\" or \"allow\"");
+                                                action = RestrictionSet.Action.DENY;
                                             }
+                                            List<String> nbt = setTable.getOptional("nbt")
+                                                .filter(List.class::isInstance)
+                                                .map(l -> ((List<?>)l).stream().map(String::valueOf).collect(java.util.stream.Collectors.toList()))
+                                                .orElseGet(ArrayList::new);
+                                            validatePatterns(rankId, items, errors);
+                                            validatePatterns(rankId, blocks, errors);
+                                            validatePatterns(rankId, entities, errors);
+                                            validateNbtConditions(rankId, nbt, action, errors);
+                                            if (!items.isEmpty() || !blocks.isEmpty() || !entities.isEmpty()) {
+                                                sets.add(new RestrictionSet(items, blocks, entities, message, action, nbt));
+                                            }
+                                        } else {
+                                            errors.add("Rank '" + rankId + "' has a restriction set that is not a table");
                                         }
                                     }
-                                    RankRestrictions.LOGGER.debug("Loaded " + data.getRestrictionSets().size() + " restriction sets for rank " + rankId);
+                                    RankRestrictions.LOGGER.debug("Loaded " + sets.size() + " restriction sets for rank " + rankId);
+                                } else {
+                                    errors.add("Rank '" + rankId + "': restriction_sets must be an array of tables");
                                 }
                             } else {
                                 // LEGACY SUPPORT: Load old format if new 'restriction_sets' is not present
@@ -140,46 +319,172 @@ public class RankRestrictionsConfig {
                                             .map(l2 -> ((List<?>)l2).stream().map(String::valueOf).collect(java.util.stream.Collectors.toList()))
                                             .orElseGet(ArrayList::new));
                                 String legacyMessage = rankConfig.getOptional("messageForRestrictionSet").map(String::valueOf).orElse(null);
+                                validatePatterns(rankId, legacyRestrictions, errors);
                                 if (!legacyRestrictions.isEmpty()) {
-                                    data.addRestrictionSet(new RestrictionSet(legacyRestrictions, new ArrayList<>(), legacyMessage));
+                                    sets.add(new RestrictionSet(legacyRestrictions, new ArrayList<>(), legacyMessage));
                                     RankRestrictions.LOGGER.debug("Loaded legacy restrictions as a single set for rank " + rankId);
                                 }
                             }
-                            rankRestrictions.put(rankId, data);
+                            rankRestrictions.put(rankId, new RankRestrictionData(rankId, sets));
+                            parsed.fileRankIds.add(rankId);
                         } else {
-                            RankRestrictions.LOGGER.warn("Skipping non-config entry for rank: " + rankId + " under restrictions. Value type: " + (rawRankConfig != null ? rawRankConfig.getClass().getName() : "null"));
+                            errors.add("Skipping non-config entry for rank: " + rankId + " under restrictions. Value type: " + (rawRankConfig != null ? rawRankConfig.getClass().getName() : "null"));
                         }
                     }
                 } else if (rawRestrictionsTable != null) {
-                    RankRestrictions.LOGGER.warn("The 'restrictions' entry in config is not a table. Found type: " + rawRestrictionsTable.getClass().getName() + ". Expected com.electronwill.nightconfig.core.Config.");
+                    errors.add("The 'restrictions' entry in config is not a table. Found type: " + rawRestrictionsTable.getClass().getName() + ". Expected com.electronwill.nightconfig.core.Config.");
                 } else {
                     RankRestrictions.LOGGER.info("No 'restrictions' table found in config, or it is empty.");
                 }
             }
             
-            configLoaded = true;
-            RankRestrictions.LOGGER.info("Loaded config with " + rankRestrictions.size() + " ranks");
-            
-            // Log all loaded restrictions for debugging
-            for (Map.Entry<String, RankRestrictionData> entry : rankRestrictions.entrySet()) {
-                RankRestrictionData rrd = entry.getValue();
-                if (!rrd.isEmpty()) {
-                    RankRestrictions.LOGGER.info("Rank '" + entry.getKey() + "' has " + rrd.getRestrictionSets().size() + " restriction set(s).");
-                    for (RestrictionSet rs : rrd.getRestrictionSets()) {
-                        RankRestrictions.LOGGER.debug("  - Set with " + rs.getItems().size() + " items. Message: '" + (rs.getMessage() != null ? rs.getMessage() : "<default>") + "'. Items: " + String.join(", ", rs.getItems()));
-                    }
+            long start = System.nanoTime();
+            parsed.snapshot = RestrictionSnapshot.compile(rankRestrictions, defaultRestrictionMessage, indexCache);
+            RankRestrictions.LOGGER.debug("Compiled restriction index for " + rankRestrictions.size() + " ranks in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (Exception e) {
+            errors.add("Could not parse " + configFile.getFileName() + ": " + e.getMessage());
+        }
+        return parsed;
+    }
+
+    private static void validatePatterns(String rankId, List<String> patterns, List<String> errors) {
+        for (String patternGroup : patterns) {
+            for (String pattern : RestrictionSet.splitPatterns(patternGroup)) {
+                String error = RestrictionSet.validatePattern(pattern);
+                if (error != null) {
+                    errors.add("Rank '" + rankId + "': " + error);
                 }
             }
-            
-        } catch (Exception e) {
-            RankRestrictions.LOGGER.error("Failed to load config: " + e.getMessage(), e);
+        }
+    }
+
+    private static void validateNbtConditions(String rankId, List<String> conditions, RestrictionSet.Action action, List<String> errors) {
+        if (conditions.isEmpty()) {
+            return;
+        }
+        if (action == RestrictionSet.Action.ALLOW) {
+            errors.add("Rank '" + rankId + "': nbt conditions are only supported on deny sets");
+        }
+        for (String condition : conditions) {
+            String error = NbtPredicate.validate(condition);
+            if (error != null) {
+                errors.add("Rank '" + rankId + "': " + error);
+            }
+        }
+    }
+
+    /**
+     * Publishes a parsed config. Runs on whatever thread loads the config; for the file watcher, that is the server thread.
+     */
+    synchronized void applyParsedConfig(ParsedConfig parsed) {
+        fullSweepIntervalTicks = parsed.fullSweepIntervalTicks;
+        sweepMaxPlayersPerTick = parsed.sweepMaxPlayersPerTick;
+        sweepTargetMspt = parsed.sweepTargetMspt;
+        containerScanDepth = parsed.containerScanDepth;
+        metricsEnabled = parsed.metricsEnabled;
+        metricsDumpIntervalSeconds = parsed.metricsDumpIntervalSeconds;
+        watcherEnabled = parsed.watcherEnabled;
+        if (parsed.editGeneration != editGeneration) {
+            // Edited in game while the file watcher was parsing; publishing the parsed snapshot would drop the edits
+            snapshot = mergeEdits(parsed);
+        } else {
+            // Tags reloaded while the file watcher was compiling, so its index already holds stale tag members
+            snapshot = parsed.tagGeneration == tagGeneration ? parsed.snapshot : parsed.snapshot.recompile(indexCache);
+        }
+        knownContentHash = parsed.contentHash;
+        configLoaded = true;
+    }
+
+    /**
+     * Combines a parsed config with the edits made since its parse started. Ranks the file defines replace the
+     * live ones, unless they were edited in game meanwhile; those edits are newer and are kept. Compiles on the
+     * calling thread, which only happens when an edit races a file change.
+     */
+    private RestrictionSnapshot mergeEdits(ParsedConfig parsed) {
+        RestrictionSnapshot current = snapshot;
+        Map<String, RankRestrictionData> base = parsed.base.getRankRestrictions();
+        Map<String, RankRestrictionData> merged = new LinkedHashMap<>(current.getRankRestrictions());
+        for (String rankId : parsed.fileRankIds) {
+            RankRestrictionData live = current.getRankRestrictions().get(rankId);
+            if (live != null && live != base.get(rankId)) {
+                RankRestrictions.LOGGER.warn("Rank " + rankId + " was edited in game while " + configFile.getFileName()
+                                             + " was being reloaded, keeping the in-game edit");
+                continue;
+            }
+            merged.put(rankId, parsed.snapshot.getRankRestrictions().get(rankId));
+        }
+        // Same for the default message
+        String message = current.getDefaultRestrictionMessage().equals(parsed.base.getDefaultRestrictionMessage())
+            ? parsed.snapshot.getDefaultRestrictionMessage() : current.getDefaultRestrictionMessage();
+        return RestrictionSnapshot.compile(merged, message, indexCache);
+    }
+
+    private static long contentHash(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(Files.readAllBytes(file));
+        return crc.getValue();
+    }
+
+    /**
+     * A config read from disk but not yet applied: the compiled snapshot, the settings, and any validation errors.
+     */
+    static final class ParsedConfig {
+        final long contentHash;
+        final int tagGeneration;
+        final int editGeneration;
+        final RestrictionSnapshot base; // The live snapshot when the parse started
+        final List<String> fileRankIds = new ArrayList<>(); // Ranks defined in the file
+        final List<String> errors = new ArrayList<>();
+        RestrictionSnapshot snapshot;
+        int fullSweepIntervalTicks = 6000; // Safety-net full inventory check, every 5 minutes by default
+        int sweepMaxPlayersPerTick = 4;
+        float sweepTargetMspt = 40.0f;
+        int containerScanDepth = 3; // 0 disables scanning inside shulker boxes and backpacks
+        boolean metricsEnabled = true;
+        int metricsDumpIntervalSeconds = 300; // 0 disables the stats file
+        boolean watcherEnabled = true;
+
+        ParsedConfig(long contentHash, int tagGeneration, int editGeneration, RestrictionSnapshot base) {
+            this.contentHash = contentHash;
+            this.tagGeneration = tagGeneration;
+            this.editGeneration = editGeneration;
+            this.base = base;
+        }
+
+        boolean isValid() {
+            return snapshot != null && errors.isEmpty();
         }
     }
     
     /**
-     * Saves the configuration to file
+     * Saves the configuration on the config saver thread, combined with any other saves requested shortly
+     * before or after. Used by every edit, so a burst of edits costs a single write and no tick time.
+     */
+    public void requestSave() {
+        saver.requestSave();
+    }
+
+    /**
+     * Writes a pending save now, if there is one. Called when the server stops.
+     */
+    public void flushPendingSave() {
+        saver.flush();
+    }
+
+    /**
+     * Saves the configuration to file immediately, on the calling thread.
+     * The file is written to a temporary file first and then moved over the config,
+     * so a crash mid-write never leaves a truncated config behind.
      */
     public void saveConfig() {
+        synchronized (saveLock) {
+            writeConfigFile();
+        }
+    }
+
+    private void writeConfigFile() {
+        RestrictionSnapshot current = snapshot;
+        Path tempFile = configFile.resolveSibling(configFile.getFileName() + ".tmp");
         try {
             Files.createDirectories(configFile.getParent());
             boolean isFirstSave = !Files.exists(configFile) || Files.size(configFile) == 0;
@@ -192,6 +497,7 @@ public class RankRestrictionsConfig {
                 headerContent.append("# This mod allows you to restrict both ITEMS and BLOCKS based on player ranks.\n");
                 headerContent.append("# Items are restricted from inventory, pickup, and usage.\n");
                 headerContent.append("# Blocks are restricted from interaction (only blocks with block entities like furnaces, machines).\n");
+                headerContent.append("# Entities are restricted from interaction and attacks (mounts, villagers, golems, modded mobs).\n");
                 headerContent.append("#\n");
                 headerContent.append("# IMPORTANT: FORMATTING GUIDE\n");
                 headerContent.append("# - Each restriction MUST be enclosed in double quotes: \"minecraft:diamond_sword\"\n");
@@ -199,10 +505,12 @@ public class RankRestrictionsConfig {
                 headerContent.append("# - Each restriction entry must be separated by a comma except the last one\n");
                 headerContent.append("# - Tags start with #: \"#minecraft:beds\"\n");
                 headerContent.append("#\n");
-                headerContent.append("# Pattern Types for both 'items' and 'blocks' lists:\n");
+                headerContent.append("# Pattern Types for the 'items', 'blocks' and 'entities' lists:\n");
                 headerContent.append("#   1. Exact ID: \"minecraft:diamond_sword\" or \"tconstruct:smeltery_controller\"\n");
                 headerContent.append("#   2. Mod Wildcard: \"mod_id:*\" (restricts all items/blocks from 'mod_id')\n");
                 headerContent.append("#   3. Tag: \"#namespace:tag_path\" (e.g., \"#minecraft:beds\", \"#forge:chests\")\n");
+                headerContent.append("#   4. Glob: \"mekanism:*_upgrade\" or \"*:netherite_*\" (* = any characters, ? = one character)\n");
+                headerContent.append("#   5. Regex: \"/mekanism:.*_(upgrade|module)/\" (between slashes, must be its own list entry)\n");
                 headerContent.append("#\n");
                 headerContent.append("# Block Restrictions (Right-Click Prevention):\n");
                 headerContent.append("#   - Only affects blocks with block entities that can be right-clicked (interactive blocks)\n");
@@ -220,6 +528,10 @@ public class RankRestrictionsConfig {
                 headerContent.append("#   - Restrict crafting tables: \"minecraft:crafting_table\"\n");
                 headerContent.append("#   - Restrict anvils: \"#minecraft:anvil\"\n");
                 headerContent.append("#\n");
+                headerContent.append("# Entity Restrictions (Interaction and Attack Prevention):\n");
+                headerContent.append("#   - Patterns match entity type IDs, e.g. \"minecraft:villager\", \"alexsmobs:*\" or \"#minecraft:raiders\"\n");
+                headerContent.append("#   - Prevents right-clicking (riding, trading, leashing) and attacking matching entities\n");
+                headerContent.append("#\n");
                 headerContent.append("# COMPLETE EXAMPLES (commented out):\n\n");
                 headerContent.append("# Example configuration with the new 'restriction_sets' format:\n");
                 headerContent.append("# [restrictions.example_rank] # This is the rank ID from FTB Ranks\n");
@@ -228,6 +540,7 @@ public class RankRestrictionsConfig {
                 headerContent.append("#     items = [\n");
                 headerContent.append("#       \"minecraft:diamond_sword\",           # Regular item ID\n");
                 headerContent.append("#       \"minecraft:netherite_pickaxe\",       # Another item\n");
+                headerContent.append("#       \"*:netherite_*\",                    # Glob: every netherite item from any mod\n");
                 headerContent.append("#       \"#minecraft:beds\"                  # Minecraft tag (all bed variants)\n");
                 headerContent.append("#     ]\n");
                 headerContent.append("#     blocks = [\n");
@@ -249,26 +562,83 @@ public class RankRestrictionsConfig {
                 headerContent.append("#     blocks = [\"modid:*\"] # Restrict all blocks from 'modid'\n");
                 headerContent.append("#     message = \"&eItems and blocks from this mod are forbidden for your rank.\"\n");
                 headerContent.append("#\n");
+                headerContent.append("# [restrictions.vip] # A higher-power rank can re-allow what lower ranks deny\n");
+                headerContent.append("#   [[restriction_sets]]\n");
+                headerContent.append("#     action = \"allow\" # \"deny\" (the default) or \"allow\"\n");
+                headerContent.append("#     items = [\"minecraft:diamond_sword\"]\n");
+                headerContent.append("#     # When a player's ranks disagree, the rank with the highest FTB Ranks power wins.\n");
+                headerContent.append("#     # Between ranks of equal power, deny wins.\n");
+                headerContent.append("#\n");
+                headerContent.append("# [restrictions.member] # NBT conditions restrict only some stacks of the listed items\n");
+                headerContent.append("#   [[restriction_sets]]\n");
+                headerContent.append("#     items = [\"minecraft:enchanted_book\", \"*:*_sword\"]\n");
+                headerContent.append("#     # All conditions must match. Forms: 'enchantment <id> >= <level>' (also >, =, <=, <),\n");
+                headerContent.append("#     # '<nbt.path> = <value>' and '<nbt.path> ~ <value>' (contains)\n");
+                headerContent.append("#     nbt = [\"enchantment minecraft:sharpness >= 5\"]\n");
+                headerContent.append("#     message = \"&cSharpness V and above is not allowed for your rank.\"\n");
+                headerContent.append("#\n");
                 headerContent.append("# [restrictions.guest] # Example for a guest rank\n");
                 headerContent.append("#   [[restriction_sets]]\n");
                 headerContent.append("#     items = [ \"#forge:chests\", \"minecraft:shulker_box\" ]\n");
                 headerContent.append("#     blocks = [ \"minecraft:chest\", \"minecraft:ender_chest\", \"#forge:chests\" ]\n");
                 headerContent.append("#     message = \"&6Guests cannot use storage items or blocks like %item%.\"\n");
+                headerContent.append("#   [[restriction_sets]]\n");
+                headerContent.append("#     entities = [ \"minecraft:villager\", \"minecraft:iron_golem\", \"*:*horse\" ]\n");
+                headerContent.append("#     message = \"&6Guests cannot ride, trade with or attack %item%.\"\n");
                 headerContent.append("#\n");
                 headerContent.append("# [messages]\n");
                 headerContent.append("# default_restriction = \"&cYou are not allowed to use %item% with your current rank!\"\n");
-                Files.writeString(configFile, headerContent.toString());
+                headerContent.append("#\n");
+                headerContent.append("# [enforcement]\n");
+                headerContent.append("# # Inventory slots are checked as soon as they change. Every player also gets a full\n");
+                headerContent.append("# # check once per this many ticks, as a safety net for changes made outside the\n");
+                headerContent.append("# # inventory menus. Checks are spread evenly over the window. Minimum 20.\n");
+                headerContent.append("# full_sweep_interval_ticks = 6000\n");
+                headerContent.append("# # Most players fully checked in a single tick\n");
+                headerContent.append("# sweep_max_players_per_tick = 4\n");
+                headerContent.append("# # Full checks slow down while the average tick time (ms) is above this\n");
+                headerContent.append("# sweep_target_mspt = 40.0\n");
+                headerContent.append("# # How deep to look inside container items such as shulker boxes, bundles and backpacks\n");
+                headerContent.append("# # for restricted items. 1 checks their contents, 2 also containers inside those. 0 disables.\n");
+                headerContent.append("# container_scan_depth = 3\n");
+                headerContent.append("#\n");
+                headerContent.append("# [metrics]\n");
+                headerContent.append("# # Record handler counts and timings, shown by /rankrestrictions stats\n");
+                headerContent.append("# enabled = true\n");
+                headerContent.append("# # Write the stats to logs/rankrestrictions-stats.txt every this many seconds, 0 to disable\n");
+                headerContent.append("# dump_interval_seconds = 300\n");
+                headerContent.append("#\n");
+                headerContent.append("# [watcher]\n");
+                headerContent.append("# # Reload this file automatically when it is saved. Invalid files are not applied and the errors are sent to ops.\n");
+                headerContent.append("# enabled = true\n");
+                Files.writeString(tempFile, headerContent.toString());
+            } else {
+                // Start from the current file so comments and unknown keys are kept
+                Files.copy(configFile, tempFile, StandardCopyOption.REPLACE_EXISTING);
             }
 
-            CommentedFileConfig config = CommentedFileConfig.builder(configFile)
+            // No autosave, the file is written once below instead of after every set()
+            CommentedFileConfig config = CommentedFileConfig.builder(tempFile)
                 .sync()
-                .autosave()
                 .preserveInsertionOrder()
                 .build();
             config.load();
 
             // Save default message
-            config.set("messages.default_restriction", defaultRestrictionMessage);
+            config.set("messages.default_restriction", current.getDefaultRestrictionMessage());
+
+            // Save enforcement settings
+            config.set("enforcement.full_sweep_interval_ticks", fullSweepIntervalTicks);
+            config.set("enforcement.sweep_max_players_per_tick", sweepMaxPlayersPerTick);
+            config.set("enforcement.sweep_target_mspt", (double) sweepTargetMspt);
+            config.set("enforcement.container_scan_depth", containerScanDepth);
+
+            // Save metrics settings
+            config.set("metrics.enabled", metricsEnabled);
+            config.set("metrics.dump_interval_seconds", metricsDumpIntervalSeconds);
+
+            // Save watcher settings
+            config.set("watcher.enabled", watcherEnabled);
 
             // Prepare the restrictions table
             Config restrictionsTable = config.getOptional("restrictions").map(o -> (Config)o).orElseGet(() -> Config.inMemory());
@@ -278,7 +648,7 @@ public class RankRestrictionsConfig {
             // For safety, we only update existing or add new ones.
             // If a rank is removed from FTB Ranks, its config will remain here unless manually deleted.
 
-            for (Map.Entry<String, RankRestrictionData> entry : this.rankRestrictions.entrySet()) {
+            for (Map.Entry<String, RankRestrictionData> entry : current.getRankRestrictions().entrySet()) {
                 String rankId = entry.getKey();
                 RankRestrictionData data = entry.getValue();
                 List<Config> setsToSave = new ArrayList<>();
@@ -287,9 +657,18 @@ public class RankRestrictionsConfig {
                     Config setTable = Config.inMemory();
                     setTable.set("items", set.getItems());
                     setTable.set("blocks", set.getBlocks());
+                    if (!set.getEntities().isEmpty()) {
+                        setTable.set("entities", set.getEntities()); // Most sets have none, keep them out of the file
+                    }
                     if (set.getMessage() != null && !set.getMessage().isEmpty()) {
                         setTable.set("message", set.getMessage());
                     }
+                    if (set.isAllow()) {
+                        setTable.set("action", set.getAction().getName()); // Deny is the default, keep it implicit
+                    }
+                    if (!set.getNbt().isEmpty()) {
+                        setTable.set("nbt", set.getNbt());
+                    }
                     setsToSave.add(setTable);
                 }
                 // Set the array of tables for the rank
@@ -298,24 +677,88 @@ public class RankRestrictionsConfig {
             config.set("restrictions", restrictionsTable);
             
             config.save();
-            RankRestrictions.LOGGER.info("Saved config with " + this.rankRestrictions.size() + " ranks.");
+            config.close();
+            knownContentHash = contentHash(tempFile); // So the file watcher doesn't reload our own write
+            moveIntoPlace(tempFile);
+            RankRestrictions.LOGGER.info("Saved config with " + current.getRankRestrictions().size() + " ranks.");
 
         } catch (Exception e) {
             RankRestrictions.LOGGER.error("Failed to save config: " + e.getMessage(), e);
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException ignored) {
+                // Overwritten by the next save
+            }
+        }
+    }
+
+    private void moveIntoPlace(Path tempFile) throws IOException {
+        try {
+            Files.move(tempFile, configFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, configFile, StandardCopyOption.REPLACE_EXISTING);
         }
     }
 
+    /**
+     * Gets the window over which every online player gets one full inventory check. Changed slots are
+     * checked as soon as they change, so this is only a safety net for changes that bypass the inventory menus.
+     */
+    public int getFullSweepIntervalTicks() {
+        return fullSweepIntervalTicks;
+    }
+
+    public int getSweepMaxPlayersPerTick() {
+        return sweepMaxPlayersPerTick;
+    }
+
+    /**
+     * Gets the average tick time in milliseconds above which full inventory checks are slowed down.
+     */
+    public float getSweepTargetMspt() {
+        return sweepTargetMspt;
+    }
+
+    /**
+     * Gets how many levels of nested container items are searched for restricted items. 0 disables it.
+     */
+    public int getContainerScanDepth() {
+        return containerScanDepth;
+    }
+
+    public boolean isWatcherEnabled() {
+        return watcherEnabled;
+    }
+
+    public Path getConfigFile() {
+        return configFile;
+    }
+
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    /**
+     * Gets how often the stats are written to the stats file, in seconds. 0 means never.
+     */
+    public int getMetricsDumpIntervalSeconds() {
+        return metricsDumpIntervalSeconds;
+    }
+
     public String getDefaultRestrictionMessage() {
-        return defaultRestrictionMessage;
+        return snapshot.getDefaultRestrictionMessage();
     }
 
     public void setDefaultRestrictionMessage(String message) {
-        this.defaultRestrictionMessage = message;
-        saveConfig(); // Save config when default message changes
+        synchronized (this) {
+            snapshot = snapshot.withDefaultRestrictionMessage(message);
+            editGeneration++;
+        }
+        requestSave(); // Save config when default message changes
     }
 
     public Map<String, RankRestrictionData> getRankRestrictions() {
-        return Collections.unmodifiableMap(rankRestrictions);
+        return snapshot.getRankRestrictions();
     }
 
     /**
@@ -330,22 +773,30 @@ public class RankRestrictionsConfig {
         }
 
         boolean configWasModified = false;
-        for (Object rankObj : ranks) {
-            String rankId = FTBRanksHelper.getRankName(rankObj);
-            if (rankId != null && !rankId.isEmpty()) {
-                if (!rankRestrictions.containsKey(rankId)) {
-                    RankRestrictions.LOGGER.info("Discovered new rank from FTBRanks: " + rankId + ". Adding to config with default (empty) restrictions.");
-                    rankRestrictions.put(rankId, new RankRestrictionData(rankId)); // Add with no restrictions initially
-                    configWasModified = true;
+        synchronized (this) {
+            RestrictionSnapshot current = snapshot;
+            Map<String, RankRestrictionData> rankRestrictions = new LinkedHashMap<>(current.getRankRestrictions());
+            for (Object rankObj : ranks) {
+                String rankId = FTBRanksHelper.getRankName(rankObj);
+                if (rankId != null && !rankId.isEmpty()) {
+                    if (!rankRestrictions.containsKey(rankId)) {
+                        RankRestrictions.LOGGER.info("Discovered new rank from FTBRanks: " + rankId + ". Adding to config with default (empty) restrictions.");
+                        rankRestrictions.put(rankId, new RankRestrictionData(rankId)); // Add with no restrictions initially
+                        configWasModified = true;
+                    }
+                } else {
+                    RankRestrictions.LOGGER.warn("Found a rank from FTBRanks with a null or empty ID. Skipping.");
                 }
-            } else {
-                RankRestrictions.LOGGER.warn("Found a rank from FTBRanks with a null or empty ID. Skipping.");
+            }
+            if (configWasModified) {
+                snapshot = RestrictionSnapshot.compile(rankRestrictions, current.getDefaultRestrictionMessage(), indexCache);
+                editGeneration++;
             }
         }
 
         if (configWasModified) {
             RankRestrictions.LOGGER.info("New ranks were added from FTBRanks. Saving configuration...");
-            saveConfig();
+            requestSave();
         } else {
             RankRestrictions.LOGGER.info("No new ranks discovered from FTBRanks that were not already in the config.");
         }
@@ -358,13 +809,18 @@ public class RankRestrictionsConfig {
      * @return True if the item is restricted for the rank, false otherwise.
      */
     public boolean isItemRestrictedForRank(String rankId, ResourceLocation itemLocation) {
-        RankRestrictionData data = rankRestrictions.get(rankId);
-        if (data != null) {
-            Item itemToCheck = ForgeRegistries.ITEMS.getValue(itemLocation);
-            // Ensure itemToCheck is not null, though isRestricted should handle it.
-            return data.isRestricted(itemLocation, itemToCheck); 
-        }
-        return false; // Default to not restricted if rank or data not found
+        Item itemToCheck = ForgeRegistries.ITEMS.getValue(itemLocation);
+        return itemToCheck != null && isItemRestrictedForRank(rankId, itemToCheck);
+    }
+
+    /**
+     * Checks if a specific item is restricted for a given rank using the compiled index.
+     * @param rankId The ID of the rank to check.
+     * @param item The item to check.
+     * @return True if the item is restricted for the rank, false otherwise.
+     */
+    public boolean isItemRestrictedForRank(String rankId, Item item) {
+        return snapshot.getIndex().isItemRestricted(rankId, RestrictionIndex.itemId(item));
     }
     
     /**
@@ -374,101 +830,114 @@ public class RankRestrictionsConfig {
      * @return True if the block is restricted for the rank, false otherwise.
      */
     public boolean isBlockRestrictedForRank(String rankId, ResourceLocation blockLocation) {
-        RankRestrictionData data = rankRestrictions.get(rankId);
-        if (data != null) {
-            Block blockToCheck = ForgeRegistries.BLOCKS.getValue(blockLocation);
-            return data.isBlockRestricted(blockLocation, blockToCheck); 
-        }
-        return false; // Default to not restricted if rank or data not found
+        Block blockToCheck = ForgeRegistries.BLOCKS.getValue(blockLocation);
+        return blockToCheck != null && isBlockRestrictedForRank(rankId, blockToCheck);
+    }
+
+    /**
+     * Checks if a specific block is restricted for a given rank using the compiled index.
+     * @param rankId The ID of the rank to check.
+     * @param block The block to check.
+     * @return True if the block is restricted for the rank, false otherwise.
+     */
+    public boolean isBlockRestrictedForRank(String rankId, Block block) {
+        return snapshot.getIndex().isBlockRestricted(rankId, RestrictionIndex.blockId(block));
     }
 
     // Gets the specific restriction message for an item and rank
     public String getRestrictionMessage(ResourceLocation itemLocation, String rankId) {
-        RankRestrictionData data = rankRestrictions.get(rankId);
-        if (data != null) {
-            // Iterate through restriction sets to find the one that restricts this item
-            Item itemToCheck = ForgeRegistries.ITEMS.getValue(itemLocation);
-            for (RestrictionSet set : data.getRestrictionSets()) {
-                if (set.isRestricted(itemLocation, itemToCheck)) { // Check if the item is in this specific set
-                    String message = set.getMessage();
-                    if (message != null && !message.isEmpty()) {
-                        return message.replace("%item%", itemLocation.toString());
-                    }
-                    break; // Found the restricting set
-                }
-            }
-        }
-        // If no specific message, return the default message
-        return defaultRestrictionMessage.replace("%item%", itemLocation.toString());
+        RestrictionSnapshot current = snapshot;
+        Item itemToCheck = ForgeRegistries.ITEMS.getValue(itemLocation);
+        RestrictionSet set = itemToCheck != null ? current.getIndex().getMatchingItemSet(rankId, RestrictionIndex.itemId(itemToCheck)) : null;
+        return formatMessage(current, set, itemLocation);
+    }
+
+    // Gets the specific restriction message for an item and rank using the compiled index
+    public String getRestrictionMessage(Item item, String rankId) {
+        RestrictionSnapshot current = snapshot;
+        RestrictionSet set = current.getIndex().getMatchingItemSet(rankId, RestrictionIndex.itemId(item));
+        return formatMessage(current, set, ForgeRegistries.ITEMS.getKey(item));
+    }
+
+    // Gets the restriction message for a stack, including sets that restrict it through NBT conditions
+    public String getRestrictionMessage(ItemStack stack, String rankId) {
+        RestrictionSnapshot current = snapshot;
+        Item item = stack.getItem();
+        RestrictionSet set = current.getIndex().getMatchingStackSet(rankId, RestrictionIndex.itemId(item), stack.getTag());
+        return formatMessage(current, set, ForgeRegistries.ITEMS.getKey(item));
+    }
+
+    private static String formatMessage(RestrictionSnapshot current, RestrictionSet set, ResourceLocation location) {
+        return current.formatMessage(set, String.valueOf(location));
     }
     
     // Gets the specific restriction message for a block and rank
     public String getBlockRestrictionMessage(ResourceLocation blockLocation, String rankId) {
-        RankRestrictionData data = rankRestrictions.get(rankId);
-        if (data != null) {
-            // Iterate through restriction sets to find the one that restricts this block
-            Block blockToCheck = ForgeRegistries.BLOCKS.getValue(blockLocation);
-            for (RestrictionSet set : data.getRestrictionSets()) {
-                if (set.isBlockRestricted(blockLocation, blockToCheck)) { // Check if the block is in this specific set
-                    String message = set.getMessage();
-                    if (message != null && !message.isEmpty()) {
-                        return message.replace("%item%", blockLocation.toString());
-                    }
-                    break; // Found the restricting set
-                }
-            }
-        }
-        // If no specific message, return the default message
-        return defaultRestrictionMessage.replace("%item%", blockLocation.toString());
+        RestrictionSnapshot current = snapshot;
+        Block blockToCheck = ForgeRegistries.BLOCKS.getValue(blockLocation);
+        RestrictionSet set = blockToCheck != null ? current.getIndex().getMatchingBlockSet(rankId, RestrictionIndex.blockId(blockToCheck)) : null;
+        return formatMessage(current, set, blockLocation);
+    }
+
+    // Gets the specific restriction message for a block and rank using the compiled index
+    public String getBlockRestrictionMessage(Block block, String rankId) {
+        RestrictionSnapshot current = snapshot;
+        RestrictionSet set = current.getIndex().getMatchingBlockSet(rankId, RestrictionIndex.blockId(block));
+        return formatMessage(current, set, ForgeRegistries.BLOCKS.getKey(block));
+    }
+
+    // Gets the specific restriction message for an entity type and rank using the compiled index
+    public String getEntityRestrictionMessage(EntityType<?> type, String rankId) {
+        RestrictionSnapshot current = snapshot;
+        RestrictionSet set = current.getIndex().getMatchingEntitySet(rankId, RestrictionIndex.entityTypeId(type));
+        return formatMessage(current, set, ForgeRegistries.ENTITY_TYPES.getKey(type));
     }
     
     // Method to add or update a restriction for a specific rank and set index
     public void addOrUpdateRestriction(String rankId, int setIndex, List<String> items, String message) {
-        RankRestrictionData data = rankRestrictions.computeIfAbsent(rankId, k -> new RankRestrictionData(rankId));
-        List<RestrictionSet> sets = data.getRestrictionSets();
-        if (setIndex < 0 || setIndex > sets.size()) { // Allow adding as a new set if index is sets.size()
-            RankRestrictions.LOGGER.warn("Invalid set index " + setIndex + " for rank " + rankId + ". Max index is " + sets.size());
-            if (setIndex == sets.size()) { // If trying to add a new set at the end
-                 // Handled by ensuring list size below
-            } else {
+        synchronized (this) {
+            RestrictionSnapshot current = snapshot;
+            RankRestrictionData data = current.getRankRestrictions().getOrDefault(rankId, new RankRestrictionData(rankId));
+            List<RestrictionSet> sets = data.getRestrictionSets();
+            if (setIndex < 0 || setIndex > sets.size()) { // Allow adding as a new set if index is sets.size()
+                RankRestrictions.LOGGER.warn("Invalid set index " + setIndex + " for rank " + rankId + ". Max index is " + sets.size());
                 return;
             }
-        }
 
-        RestrictionSet setToUpdate;
-        if (setIndex == sets.size()) {
-            setToUpdate = new RestrictionSet(new ArrayList<>(), message);
-            data.addRestrictionSet(setToUpdate); // Add new set
-        } else {
-            setToUpdate = sets.get(setIndex);
+            // Sets are immutable, so an update replaces the set and keeps its block and entity patterns, action and NBT conditions
+            RestrictionSet existing = setIndex < sets.size() ? sets.get(setIndex) : null;
+            List<String> blocks = existing != null ? existing.getBlocks() : new ArrayList<>();
+            List<String> entities = existing != null ? existing.getEntities() : List.of();
+            RestrictionSet.Action action = existing != null ? existing.getAction() : RestrictionSet.Action.DENY;
+            List<String> nbt = existing != null ? existing.getNbt() : List.of();
+            RestrictionSet updatedSet = new RestrictionSet(items, blocks, entities, message, action, nbt);
+            snapshot = current.withRank(data.withRestrictionSet(setIndex, updatedSet));
+            editGeneration++;
         }
-        
-        setToUpdate.getItems().clear(); // Clear existing items if updating
-        setToUpdate.getItems().addAll(items);
-        setToUpdate.setMessage(message); // Update message
 
         RankRestrictions.LOGGER.info("Updated restriction set " + setIndex + " for rank " + rankId);
-        saveConfig();
+        requestSave();
     }
 
     // Method to remove a restriction set from a rank
     public void removeRestrictionFromRank(String rankId, int setIndex) {
-        RankRestrictionData data = rankRestrictions.get(rankId);
-        if (data != null) {
-            List<RestrictionSet> sets = data.getRestrictionSets();
-            if (setIndex >= 0 && setIndex < sets.size()) {
-                sets.remove(setIndex);
-                RankRestrictions.LOGGER.info("Removed restriction set " + setIndex + " from rank " + rankId);
-                if (sets.isEmpty() && !rankId.equals("default")) { // Example: don't remove rank if it becomes empty unless it's not a special rank
-                    // rankRestrictions.remove(rankId); // Optionally remove rank if all sets are gone
-                    // RankRestrictions.LOGGER.info("Removed rank " + rankId + " as it has no more restriction sets.");
-                }
-                saveConfig();
-            } else {
+        synchronized (this) {
+            RestrictionSnapshot current = snapshot;
+            RankRestrictionData data = current.getRankRestrictions().get(rankId);
+            if (data == null) {
+                RankRestrictions.LOGGER.warn("Rank " + rankId + " not found for restriction removal.");
+                return;
+            }
+            if (setIndex < 0 || setIndex >= data.getRestrictionSets().size()) {
                 RankRestrictions.LOGGER.warn("Invalid set index " + setIndex + " for rank " + rankId + " during removal.");
+                return;
             }
-        } else {
-            RankRestrictions.LOGGER.warn("Rank " + rankId + " not found for restriction removal.");
+            // The rank itself stays in the config even when its last set is removed
+            snapshot = current.withRank(data.withoutRestrictionSet(setIndex));
+            editGeneration++;
         }
+
+        RankRestrictions.LOGGER.info("Removed restriction set " + setIndex + " from rank " + rankId);
+        requestSave();
     }
 }
@@ -0,0 +1,805 @@
+package mchivelli.rankrestrictions.config;
+
+import mchivelli.rankrestrictions.engine.PowerPrecedence;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.level.block.Block;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Compiled form of every rank's restriction sets, indexed by numeric item, block and entity type registry ID.
+ * <p>
+ * Each rank gets one {@link BitSet} with a bit set for every restricted item, one for every restricted block
+ * and one for every restricted entity type, so checking against a rank is a single bit probe instead of
+ * walking the raw patterns.
+ * Tag patterns are expanded to their members while compiling, so the index only reflects the tags as they
+ * were when it was compiled and is rebuilt on config load and whenever tags are reloaded.
+ * <p>
+ * Ranks can also re-allow items and blocks with allow sets. What a player with several ranks may use is
+ * resolved once per combination of ranks and powers into a {@link Decision}, which is kept for the lifetime
+ * of the index and shared by every player with the same ranks.
+ * <p>
+ * Items of deny sets with NBT conditions can't be decided by ID alone. They are kept apart from the plain
+ * restrictions and their conditions are evaluated directly against each stack's tag.
+ */
+public final class RestrictionIndex {
+    public static final RestrictionIndex EMPTY = new RestrictionIndex(Collections.emptyMap(), false, false);
+
+    // Players only ever hold a handful of distinct rank combinations; the cap guards against pathological setups
+    private static final int MAX_DECISIONS = 1024;
+
+    private final Map<String, RankIndex> ranks;
+    private final boolean hasBlockRules;
+    private final boolean hasEntityRules;
+    private final Map<String, Decision> decisions = new ConcurrentHashMap<>();
+
+    private RestrictionIndex(Map<String, RankIndex> ranks, boolean hasBlockRules, boolean hasEntityRules) {
+        this.ranks = ranks;
+        this.hasBlockRules = hasBlockRules;
+        this.hasEntityRules = hasEntityRules;
+    }
+
+    /**
+     * Compiles the given rank restrictions against the current registries and tags.
+     * @param rankRestrictions The rank restriction data, keyed by rank ID.
+     * @return The compiled index.
+     */
+    public static RestrictionIndex compile(Map<String, RankRestrictionData> rankRestrictions) {
+        bindTags(rankRestrictions);
+        return compileBound(rankRestrictions);
+    }
+
+    /**
+     * Compiles the given rank restrictions, or loads them from the compiled cache if it holds an index built
+     * from the same patterns, registries and tag contents. A freshly compiled index is written to the cache.
+     * @param rankRestrictions The rank restriction data, keyed by rank ID.
+     * @param cache The compiled cache.
+     * @return The compiled index.
+     */
+    public static RestrictionIndex compile(Map<String, RankRestrictionData> rankRestrictions, CompiledIndexCache cache) {
+        bindTags(rankRestrictions); // Needed for the cache key as well
+        long key = CompiledIndexCache.key(rankRestrictions);
+
+        Map<String, BitSet[][]> cached = cache.load(key);
+        if (cached != null) {
+            RestrictionIndex index = fromSetBits(rankRestrictions, cached);
+            if (index != null) {
+                return index;
+            }
+        }
+
+        RestrictionIndex index = compileBound(rankRestrictions);
+        cache.storeAsync(key, index);
+        return index;
+    }
+
+    private static void bindTags(Map<String, RankRestrictionData> rankRestrictions) {
+        for (RankRestrictionData data : rankRestrictions.values()) {
+            for (RestrictionSet set : data.getRestrictionSets()) {
+                set.bindTags();
+            }
+        }
+    }
+
+    private static RestrictionIndex compileBound(Map<String, RankRestrictionData> rankRestrictions) {
+        Map<String, RankIndex> compiled = new HashMap<>();
+        for (Map.Entry<String, RankRestrictionData> entry : rankRestrictions.entrySet()) {
+            RankIndex rankIndex = RankIndex.compile(entry.getValue());
+            if (rankIndex != null) {
+                compiled.put(entry.getKey(), rankIndex);
+            }
+        }
+        return create(compiled);
+    }
+
+    /**
+     * Rebuilds an index from per-set bitsets read from the compiled cache.
+     * @param setBits Rank ID to {items, blocks, entities} bitsets, one of each per restriction set.
+     * @return The index, or null if the bitsets don't fit the rank data.
+     */
+    private static RestrictionIndex fromSetBits(Map<String, RankRestrictionData> rankRestrictions, Map<String, BitSet[][]> setBits) {
+        Map<String, RankIndex> compiled = new HashMap<>();
+        for (Map.Entry<String, RankRestrictionData> entry : rankRestrictions.entrySet()) {
+            List<RestrictionSet> sets = entry.getValue().getRestrictionSets();
+            if (sets.isEmpty()) {
+                continue;
+            }
+            BitSet[][] bits = setBits.get(entry.getKey());
+            if (bits == null || bits[0].length != sets.size() || bits[1].length != sets.size() || bits[2].length != sets.size()) {
+                return null;
+            }
+            compiled.put(entry.getKey(), RankIndex.of(sets.toArray(new RestrictionSet[0]), bits[0], bits[1], bits[2]));
+        }
+        return compiled.size() == setBits.size() ? create(compiled) : null;
+    }
+
+    private static RestrictionIndex create(Map<String, RankIndex> compiled) {
+        boolean hasBlockRules = false;
+        boolean hasEntityRules = false;
+        for (RankIndex rankIndex : compiled.values()) {
+            hasBlockRules |= rankIndex.hasBlockRules();
+            hasEntityRules |= rankIndex.hasEntityRules();
+        }
+        return new RestrictionIndex(Collections.unmodifiableMap(compiled), hasBlockRules, hasEntityRules);
+    }
+
+    /**
+     * Gets the compiled ranks, for writing the compiled cache.
+     */
+    Map<String, RankIndex> getRanks() {
+        return ranks;
+    }
+
+    /**
+     * Gets the numeric registry ID used to probe this index.
+     * @param item The item.
+     * @return The registry ID, or -1 if the item is not registered.
+     */
+    public static int itemId(Item item) {
+        return BuiltInRegistries.ITEM.getId(item);
+    }
+
+    /**
+     * Gets the numeric registry ID used to probe this index.
+     * @param block The block.
+     * @return The registry ID, or -1 if the block is not registered.
+     */
+    public static int blockId(Block block) {
+        return BuiltInRegistries.BLOCK.getId(block);
+    }
+
+    /**
+     * Gets the numeric registry ID used to probe this index.
+     * @param type The entity type.
+     * @return The registry ID, or -1 if the entity type is not registered.
+     */
+    public static int entityTypeId(EntityType<?> type) {
+        return BuiltInRegistries.ENTITY_TYPE.getId(type);
+    }
+
+    public boolean isItemRestricted(String rankId, int itemId) {
+        RankIndex rankIndex = ranks.get(rankId);
+        return rankIndex != null && rankIndex.isItemRestricted(itemId);
+    }
+
+    public boolean isBlockRestricted(String rankId, int blockId) {
+        RankIndex rankIndex = ranks.get(rankId);
+        return rankIndex != null && rankIndex.isBlockRestricted(blockId);
+    }
+
+    public boolean isEntityRestricted(String rankId, int entityTypeId) {
+        RankIndex rankIndex = ranks.get(rankId);
+        return rankIndex != null && rankIndex.isEntityRestricted(entityTypeId);
+    }
+
+    /**
+     * Finds the first restriction set of the rank that restricts the given item.
+     * @return The matching set, or null if the item is not restricted for this rank.
+     */
+    public RestrictionSet getMatchingItemSet(String rankId, int itemId) {
+        RankIndex rankIndex = ranks.get(rankId);
+        return rankIndex != null ? rankIndex.getMatchingItemSet(itemId) : null;
+    }
+
+    /**
+     * Finds the first restriction set of the rank that restricts the given block.
+     * @return The matching set, or null if the block is not restricted for this rank.
+     */
+    public RestrictionSet getMatchingBlockSet(String rankId, int blockId) {
+        RankIndex rankIndex = ranks.get(rankId);
+        return rankIndex != null ? rankIndex.getMatchingBlockSet(blockId) : null;
+    }
+
+    /**
+     * Finds the first restriction set of the rank that restricts the given entity type.
+     * @return The matching set, or null if the entity type is not restricted for this rank.
+     */
+    public RestrictionSet getMatchingEntitySet(String rankId, int entityTypeId) {
+        RankIndex rankIndex = ranks.get(rankId);
+        return rankIndex != null ? rankIndex.getMatchingEntitySet(entityTypeId) : null;
+    }
+
+    /**
+     * Finds the position within the rank of the first restriction set that restricts the given item.
+     * @return The set's index, or -1 if the item is not restricted for this rank.
+     */
+    public int getMatchingItemSetIndex(String rankId, int itemId) {
+        RankIndex rankIndex = ranks.get(rankId);
+        return rankIndex != null && rankIndex.isItemRestricted(itemId) ? rankIndex.findSetIndex(rankIndex.setItems, itemId) : -1;
+    }
+
+    /**
+     * Finds the position within the rank of the first restriction set that restricts the given block.
+     * @return The set's index, or -1 if the block is not restricted for this rank.
+     */
+    public int getMatchingBlockSetIndex(String rankId, int blockId) {
+        RankIndex rankIndex = ranks.get(rankId);
+        return rankIndex != null && rankIndex.isBlockRestricted(blockId) ? rankIndex.findSetIndex(rankIndex.setBlocks, blockId) : -1;
+    }
+
+    /**
+     * Finds the position within the rank of the first restriction set that restricts the given entity type.
+     * @return The set's index, or -1 if the entity type is not restricted for this rank.
+     */
+    public int getMatchingEntitySetIndex(String rankId, int entityTypeId) {
+        RankIndex rankIndex = ranks.get(rankId);
+        return rankIndex != null && rankIndex.isEntityRestricted(entityTypeId) ? rankIndex.findSetIndex(rankIndex.setEntities, entityTypeId) : -1;
+    }
+
+    /**
+     * Finds the first deny set of the rank that restricts the given stack, including sets with NBT conditions.
+     * @param tag The stack's tag, or null if it has none.
+     * @return The set's index, or -1 if the stack is not restricted for this rank.
+     */
+    public int getMatchingStackSetIndex(String rankId, int itemId, CompoundTag tag) {
+        RankIndex rankIndex = ranks.get(rankId);
+        if (rankIndex == null || itemId < 0) {
+            return -1;
+        }
+        if (rankIndex.isItemRestricted(itemId)) {
+            return rankIndex.findItemSetIndex(itemId);
+        }
+        return rankIndex.findNbtSetIndex(itemId, tag);
+    }
+
+    /**
+     * Finds the first deny set of the rank that restricts the given stack, including sets with NBT conditions.
+     * @return The matching set, or null if the stack is not restricted for this rank.
+     */
+    public RestrictionSet getMatchingStackSet(String rankId, int itemId, CompoundTag tag) {
+        int setIndex = getMatchingStackSetIndex(rankId, itemId, tag);
+        return setIndex >= 0 ? ranks.get(rankId).sets[setIndex] : null;
+    }
+
+    /**
+     * Resolves what a player with the given ranks may use. The rank with the highest power that has a rule
+     * for an item, block or entity type decides; between ranks of equal power, deny wins over allow.
+     * @param rankIds The player's active rank IDs.
+     * @param powers The FTB Ranks power of each rank, in the same order.
+     * @return The decision, shared with every other player that has the same ranks.
+     */
+    public Decision decide(String[] rankIds, int[] powers) {
+        List<RankPower> ruled = new ArrayList<>(rankIds.length);
+        for (int i = 0; i < rankIds.length; i++) {
+            RankIndex rankIndex = ranks.get(rankIds[i]);
+            if (rankIndex != null) {
+                ruled.add(new RankPower(rankIds[i], powers[i], rankIndex));
+            }
+        }
+        if (ruled.isEmpty()) {
+            return Decision.NONE;
+        }
+        ruled.sort(Comparator.comparingInt(RankPower::power).reversed().thenComparing(RankPower::rankId));
+
+        StringBuilder key = new StringBuilder();
+        for (RankPower rank : ruled) {
+            key.append(rank.rankId()).append('@').append(rank.power()).append('\n');
+        }
+        Decision decision = decisions.get(key.toString());
+        if (decision == null) {
+            decision = Decision.resolve(ruled);
+            if (decisions.size() < MAX_DECISIONS) {
+                decisions.put(key.toString(), decision);
+            }
+        }
+        return decision;
+    }
+
+    /**
+     * Gets the compiled restrictions of a rank.
+     * @return The rank's index, or null if the rank has no restrictions.
+     */
+    public RankIndex getRank(String rankId) {
+        return ranks.get(rankId);
+    }
+
+    /**
+     * Checks whether any rank restricts any block, so block interactions can be skipped entirely otherwise.
+     */
+    public boolean hasBlockRules() {
+        return hasBlockRules;
+    }
+
+    /**
+     * Checks whether any rank restricts any entity type, so entity interactions and attacks can be skipped
+     * entirely otherwise.
+     */
+    public boolean hasEntityRules() {
+        return hasEntityRules;
+    }
+
+    public boolean isEmpty() {
+        return ranks.isEmpty();
+    }
+
+    private record RankPower(String rankId, int power, RankIndex index) {
+    }
+
+    /**
+     * The NBT rules of one rank, limited to the items no higher-power rank has decided.
+     */
+    private record NbtRule(String rankId, RankIndex index, BitSet items) {
+    }
+
+    /**
+     * The resolved restrictions of one combination of ranks.
+     */
+    public static final class Decision {
+        static final Decision NONE = new Decision(new String[0], new int[0], new BitSet(), new BitSet(), new BitSet(), new BitSet(), new NbtRule[0]);
+
+        private final String[] rankIds; // Ranks with rules, highest power first
+        private final int[] powers; // The power of each of rankIds
+        private final BitSet items;
+        private final BitSet blocks;
+        private final BitSet entities;
+        private final BitSet nbtItems; // Items whose verdict depends on their NBT
+        private final NbtRule[] nbtRules; // Highest power first
+        private final CleanContainerCache cleanContainers = new CleanContainerCache();
+
+        private Decision(String[] rankIds, int[] powers, BitSet items, BitSet blocks, BitSet entities, BitSet nbtItems, NbtRule[] nbtRules) {
+            this.rankIds = rankIds;
+            this.powers = powers;
+            this.items = items;
+            this.blocks = blocks;
+            this.entities = entities;
+            this.nbtItems = nbtItems;
+            this.nbtRules = nbtRules;
+        }
+
+        /**
+         * Walks the ranks from the highest power down. Every item, block or entity type gets its verdict from the first
+         * power level that has a rule for it, so lower ranks can't override it. NBT rules never decide an item
+         * on their own: they apply unless a higher level decided the item, and lower levels still decide the
+         * stacks the conditions don't match.
+         */
+        private static Decision resolve(List<RankPower> ranks) {
+            BitSet deniedItems = new BitSet();
+            BitSet deniedBlocks = new BitSet();
+            BitSet deniedEntities = new BitSet();
+            BitSet decidedItems = new BitSet();
+            BitSet decidedBlocks = new BitSet();
+            BitSet decidedEntities = new BitSet();
+            BitSet nbtItems = new BitSet();
+            List<NbtRule> nbtRules = new ArrayList<>();
+            String[] rankIds = new String[ranks.size()];
+            int[] powers = new int[ranks.size()];
+
+            int i = 0;
+            while (i < ranks.size()) {
+                int power = ranks.get(i).power();
+                BitSet levelDenyItems = new BitSet();
+                BitSet levelDenyBlocks = new BitSet();
+                BitSet levelDenyEntities = new BitSet();
+                BitSet levelAllowItems = new BitSet();
+                BitSet levelAllowBlocks = new BitSet();
+                BitSet levelAllowEntities = new BitSet();
+                for (; i < ranks.size() && ranks.get(i).power() == power; i++) {
+                    RankIndex rankIndex = ranks.get(i).index();
+                    rankIndex.addItemsTo(levelDenyItems);
+                    rankIndex.addBlocksTo(levelDenyBlocks);
+                    rankIndex.addEntitiesTo(levelDenyEntities);
+                    levelAllowItems.or(rankIndex.allowedItems);
+                    levelAllowBlocks.or(rankIndex.allowedBlocks);
+                    levelAllowEntities.or(rankIndex.allowedEntities);
+                    rankIds[i] = ranks.get(i).rankId();
+                    powers[i] = power;
+
+                    if (rankIndex.hasNbtRules()) {
+                        BitSet applicable = (BitSet) rankIndex.nbtItems.clone();
+                        applicable.andNot(decidedItems);
+                        if (!applicable.isEmpty()) {
+                            nbtRules.add(new NbtRule(rankIds[i], rankIndex, applicable));
+                            nbtItems.or(applicable);
+                        }
+                    }
+                }
+                PowerPrecedence.applyLevel(levelDenyItems, levelAllowItems, deniedItems, decidedItems);
+                PowerPrecedence.applyLevel(levelDenyBlocks, levelAllowBlocks, deniedBlocks, decidedBlocks);
+                PowerPrecedence.applyLevel(levelDenyEntities, levelAllowEntities, deniedEntities, decidedEntities);
+            }
+            nbtItems.andNot(deniedItems); // Denied whatever their NBT
+            return new Decision(rankIds, powers, deniedItems, deniedBlocks, deniedEntities, nbtItems, nbtRules.toArray(new NbtRule[0]));
+        }
+
+        public String[] getRankIds() {
+            return rankIds;
+        }
+
+        /**
+         * Gets the FTB Ranks power of each rank, in the order of {@link #getRankIds()}.
+         */
+        public int[] getPowers() {
+            return powers;
+        }
+
+        public boolean isItemRestricted(int itemId) {
+            return itemId >= 0 && items.get(itemId);
+        }
+
+        /**
+         * Checks whether the item is restricted for some stacks only, depending on their NBT.
+         */
+        public boolean hasNbtRules(int itemId) {
+            return itemId >= 0 && nbtItems.get(itemId);
+        }
+
+        /**
+         * Evaluates the NBT rules that apply to the item against a stack's tag. The conditions only look up
+         * the paths they name, so they are cheaper to evaluate than a whole tag is to hash or compare.
+         * @param tag The stack's tag, or null if it has none.
+         * @return The highest-power rank whose NBT rules restrict the stack, or null if none do.
+         */
+        public String getNbtRestrictingRank(int itemId, CompoundTag tag) {
+            if (!hasNbtRules(itemId)) {
+                return null;
+            }
+            int rule = evaluateNbt(itemId, tag);
+            return rule >= 0 ? nbtRules[rule].rankId() : null;
+        }
+
+        private int evaluateNbt(int itemId, CompoundTag tag) {
+            for (int i = 0; i < nbtRules.length; i++) {
+                if (nbtRules[i].items().get(itemId) && nbtRules[i].index().findNbtSetIndex(itemId, tag) >= 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Checks whether a container item with exactly this tag was already scanned and holds nothing
+         * restricted for these ranks.
+         */
+        public boolean isKnownCleanContainer(int itemId, CompoundTag tag, int tagHash) {
+            return cleanContainers.contains(itemId, tag, tagHash);
+        }
+
+        /**
+         * Remembers that a container item with this tag holds nothing restricted. Only valid for containers
+         * whose contents are entirely stored in the tag.
+         */
+        public void markCleanContainer(int itemId, CompoundTag tag, int tagHash) {
+            cleanContainers.add(itemId, tag, tagHash);
+        }
+
+        public boolean isBlockRestricted(int blockId) {
+            return blockId >= 0 && blocks.get(blockId);
+        }
+
+        public boolean hasBlockRestrictions() {
+            return !blocks.isEmpty();
+        }
+
+        public boolean isEntityRestricted(int entityTypeId) {
+            return entityTypeId >= 0 && entities.get(entityTypeId);
+        }
+
+        public boolean hasEntityRestrictions() {
+            return !entities.isEmpty();
+        }
+
+        public boolean isEmpty() {
+            return items.isEmpty() && blocks.isEmpty() && entities.isEmpty() && nbtItems.isEmpty();
+        }
+    }
+
+    /**
+     * Compiled restrictions of a single rank.
+     */
+    public static final class RankIndex {
+        private static final int SET_MEMO_SLOTS = 256; // Power of two
+
+        private final RestrictionSet[] sets;
+        private final BitSet[] setItems;
+        private final BitSet[] setBlocks;
+        private final BitSet[] setEntities;
+        private final BitSet items; // Denied by this rank
+        private final BitSet blocks;
+        private final BitSet entities;
+        private final BitSet allowedItems; // Allowed by this rank and not also denied by it
+        private final BitSet allowedBlocks;
+        private final BitSet allowedEntities;
+        private final BitSet nbtItems; // Denied by this rank when their NBT matches, and not denied outright
+        // Recently looked up (item ID + 1) << 32 | set index, since a pickup is denied every tick for the same item
+        private final AtomicLongArray itemSetMemo = new AtomicLongArray(SET_MEMO_SLOTS);
+
+        private RankIndex(RestrictionSet[] sets, BitSet[] setItems, BitSet[] setBlocks, BitSet[] setEntities,
+                          BitSet items, BitSet blocks, BitSet entities,
+                          BitSet allowedItems, BitSet allowedBlocks, BitSet allowedEntities, BitSet nbtItems) {
+            this.sets = sets;
+            this.setItems = setItems;
+            this.setBlocks = setBlocks;
+            this.setEntities = setEntities;
+            this.items = items;
+            this.blocks = blocks;
+            this.entities = entities;
+            this.allowedItems = allowedItems;
+            this.allowedBlocks = allowedBlocks;
+            this.allowedEntities = allowedEntities;
+            this.nbtItems = nbtItems;
+        }
+
+        static RankIndex compile(RankRestrictionData data) {
+            List<RestrictionSet> restrictionSets = data.getRestrictionSets();
+            if (restrictionSets.isEmpty()) {
+                return null;
+            }
+
+            // Tags must already be bound
+            RestrictionSet[] sets = restrictionSets.toArray(new RestrictionSet[0]);
+            BitSet[] setItems = new BitSet[sets.length];
+            BitSet[] setBlocks = new BitSet[sets.length];
+            BitSet[] setEntities = new BitSet[sets.length];
+            for (int i = 0; i < sets.length; i++) {
+                setItems[i] = new BitSet(BuiltInRegistries.ITEM.size());
+                sets[i].addRestrictedItemIds(setItems[i]);
+
+                setBlocks[i] = new BitSet(BuiltInRegistries.BLOCK.size());
+                sets[i].addRestrictedBlockIds(setBlocks[i]);
+
+                setEntities[i] = new BitSet(BuiltInRegistries.ENTITY_TYPE.size());
+                sets[i].addRestrictedEntityIds(setEntities[i]);
+            }
+            return of(sets, setItems, setBlocks, setEntities);
+        }
+
+        static RankIndex of(RestrictionSet[] sets, BitSet[] setItems, BitSet[] setBlocks, BitSet[] setEntities) {
+            BitSet items = new BitSet(BuiltInRegistries.ITEM.size());
+            BitSet blocks = new BitSet(BuiltInRegistries.BLOCK.size());
+            BitSet entities = new BitSet(BuiltInRegistries.ENTITY_TYPE.size());
+            BitSet allowedItems = new BitSet();
+            BitSet allowedBlocks = new BitSet();
+            BitSet allowedEntities = new BitSet();
+            BitSet nbtItems = new BitSet();
+            for (int i = 0; i < sets.length; i++) {
+                if (sets[i].isAllow()) {
+                    // NBT conditions are deny-only; config validation reports them on allow sets
+                    if (!sets[i].hasNbtConditions()) {
+                        allowedItems.or(setItems[i]);
+                    }
+                    allowedBlocks.or(setBlocks[i]);
+                    allowedEntities.or(setEntities[i]);
+                } else {
+                    (sets[i].hasNbtConditions() ? nbtItems : items).or(setItems[i]);
+                    blocks.or(setBlocks[i]);
+                    entities.or(setEntities[i]);
+                }
+            }
+            // Within one rank, deny wins
+            allowedItems.andNot(items);
+            allowedBlocks.andNot(blocks);
+            allowedEntities.andNot(entities);
+            nbtItems.andNot(items);
+            return new RankIndex(sets, setItems, setBlocks, setEntities, items, blocks, entities,
+                                 allowedItems, allowedBlocks, allowedEntities, nbtItems);
+        }
+
+        BitSet[] getSetItems() {
+            return setItems;
+        }
+
+        BitSet[] getSetBlocks() {
+            return setBlocks;
+        }
+
+        BitSet[] getSetEntities() {
+            return setEntities;
+        }
+
+        public boolean isItemRestricted(int itemId) {
+            return itemId >= 0 && items.get(itemId);
+        }
+
+        public boolean isBlockRestricted(int blockId) {
+            return blockId >= 0 && blocks.get(blockId);
+        }
+
+        public boolean isEntityRestricted(int entityTypeId) {
+            return entityTypeId >= 0 && entities.get(entityTypeId);
+        }
+
+        public boolean hasBlockRules() {
+            return !blocks.isEmpty();
+        }
+
+        public boolean hasEntityRules() {
+            return !entities.isEmpty();
+        }
+
+        public boolean hasNbtRules() {
+            return !nbtItems.isEmpty();
+        }
+
+        /**
+         * ORs this rank's restricted items into the given bitset.
+         */
+        public void addItemsTo(BitSet target) {
+            target.or(items);
+        }
+
+        /**
+         * ORs this rank's restricted blocks into the given bitset.
+         */
+        public void addBlocksTo(BitSet target) {
+            target.or(blocks);
+        }
+
+        /**
+         * ORs this rank's restricted entity types into the given bitset.
+         */
+        public void addEntitiesTo(BitSet target) {
+            target.or(entities);
+        }
+
+        /**
+         * Gets every item this rank has a rule for: denied, denied depending on NBT, or allowed.
+         * @return A new bitset of item registry IDs.
+         */
+        public BitSet getRuledItems() {
+            BitSet ruled = (BitSet) items.clone();
+            ruled.or(nbtItems);
+            ruled.or(allowedItems);
+            return ruled;
+        }
+
+        /**
+         * Gets every block this rank has a rule for, denied or allowed.
+         * @return A new bitset of block registry IDs.
+         */
+        public BitSet getRuledBlocks() {
+            BitSet ruled = (BitSet) blocks.clone();
+            ruled.or(allowedBlocks);
+            return ruled;
+        }
+
+        /**
+         * Gets every entity type this rank has a rule for, denied or allowed.
+         * @return A new bitset of entity type registry IDs.
+         */
+        public BitSet getRuledEntities() {
+            BitSet ruled = (BitSet) entities.clone();
+            ruled.or(allowedEntities);
+            return ruled;
+        }
+
+        /**
+         * Finds the set that decides this rank's own rule for an item, ignoring other ranks: the first deny
+         * set, else the first deny set with NBT conditions, else the first allow set.
+         * @return The set's index, or -1 if the rank has no rule for the item.
+         */
+        public int getItemRuleSetIndex(int itemId) {
+            if (itemId < 0) {
+                return -1;
+            }
+            if (items.get(itemId)) {
+                return findSetIndex(setItems, itemId);
+            }
+            boolean nbt = nbtItems.get(itemId);
+            if (!nbt && !allowedItems.get(itemId)) {
+                return -1;
+            }
+            for (int i = 0; i < sets.length; i++) {
+                if (sets[i].isAllow() != nbt && sets[i].hasNbtConditions() == nbt && setItems[i].get(itemId)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Like {@link #getItemRuleSetIndex(int)} for a block.
+         */
+        public int getBlockRuleSetIndex(int blockId) {
+            if (blockId < 0) {
+                return -1;
+            }
+            if (blocks.get(blockId)) {
+                return findSetIndex(setBlocks, blockId);
+            }
+            if (!allowedBlocks.get(blockId)) {
+                return -1;
+            }
+            for (int i = 0; i < sets.length; i++) {
+                if (sets[i].isAllow() && setBlocks[i].get(blockId)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Like {@link #getItemRuleSetIndex(int)} for an entity type.
+         */
+        public int getEntityRuleSetIndex(int entityTypeId) {
+            if (entityTypeId < 0) {
+                return -1;
+            }
+            if (entities.get(entityTypeId)) {
+                return findSetIndex(setEntities, entityTypeId);
+            }
+            if (!allowedEntities.get(entityTypeId)) {
+                return -1;
+            }
+            for (int i = 0; i < sets.length; i++) {
+                if (sets[i].isAllow() && setEntities[i].get(entityTypeId)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public RestrictionSet getSet(int setIndex) {
+            return sets[setIndex];
+        }
+
+        public RestrictionSet getMatchingItemSet(int itemId) {
+            return isItemRestricted(itemId) ? findSet(setItems, itemId) : null;
+        }
+
+        public RestrictionSet getMatchingBlockSet(int blockId) {
+            return isBlockRestricted(blockId) ? findSet(setBlocks, blockId) : null;
+        }
+
+        public RestrictionSet getMatchingEntitySet(int entityTypeId) {
+            return isEntityRestricted(entityTypeId) ? findSet(setEntities, entityTypeId) : null;
+        }
+
+        private RestrictionSet findSet(BitSet[] setBits, int id) {
+            int setIndex = findSetIndex(setBits, id);
+            return setIndex >= 0 ? sets[setIndex] : null;
+        }
+
+        /**
+         * Finds the first deny set containing the ID. Item sets with NBT conditions are skipped, they
+         * don't restrict an item by ID alone.
+         */
+        /**
+         * Like {@link #findSetIndex} for an item the rank denies outright, remembering the answer.
+         */
+        private int findItemSetIndex(int itemId) {
+            int slot = itemId & (SET_MEMO_SLOTS - 1);
+            long memo = itemSetMemo.get(slot);
+            if ((int) (memo >>> 32) == itemId + 1) {
+                return (int) memo;
+            }
+            int setIndex = findSetIndex(setItems, itemId);
+            itemSetMemo.lazySet(slot, (long) (itemId + 1) << 32 | (setIndex & 0xFFFFFFFFL));
+            return setIndex;
+        }
+
+        private int findSetIndex(BitSet[] setBits, int id) {
+            for (int i = 0; i < sets.length; i++) {
+                if (!sets[i].isAllow() && setBits[i].get(id) && (setBits != setItems || !sets[i].hasNbtConditions())) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Finds the first deny set with NBT conditions that contains the item and whose conditions the tag meets.
+         */
+        private int findNbtSetIndex(int itemId, CompoundTag tag) {
+            if (!nbtItems.get(itemId)) {
+                return -1;
+            }
+            for (int i = 0; i < sets.length; i++) {
+                if (!sets[i].isAllow() && sets[i].hasNbtConditions() && setItems[i].get(itemId) && sets[i].matchesNbt(tag)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
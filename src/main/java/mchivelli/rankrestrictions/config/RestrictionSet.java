@@ -1,165 +1,293 @@
 package mchivelli.rankrestrictions.config;
 
 import mchivelli.rankrestrictions.RankRestrictions;
+import mchivelli.rankrestrictions.engine.IdPatternSet;
+import mchivelli.rankrestrictions.engine.IdPatterns;
+import mchivelli.rankrestrictions.util.ForgeRegistryAdapter;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.nbt.CompoundTag;
 import net.minecraft.resources.ResourceLocation;
-import net.minecraft.tags.TagKey;
+import net.minecraft.world.entity.EntityType;
 import net.minecraft.world.item.Item;
-import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.level.block.Block;
-import net.minecraft.world.level.block.state.BlockState;
-import net.minecraftforge.registries.ForgeRegistries;
 
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
-import java.util.Set;
 
+/**
+ * One set of item, block and entity type patterns sharing a restriction message and an {@link Action}. The
+ * patterns are immutable; only the expanded tag members are rebound, as a whole, when tags are reloaded.
+ * <p>
+ * The patterns are parsed and resolved to registry IDs by the Forge-independent {@link IdPatternSet}, through
+ * {@link ForgeRegistryAdapter}. Glob ({@code mekanism:*_upgrade}) and regex ({@code /.../}) patterns only run
+ * against registry IDs while the index is compiled, never per event. A deny set with
+ * {@link NbtPredicate NBT conditions} only restricts the stacks of its items that meet all of them.
+ */
 public class RestrictionSet {
-    private String message; // Can be null if this set should use the rank's default or global default message
+    /**
+     * What a set does to the items and blocks it matches. When a player's ranks disagree, the rank with the
+     * highest FTB Ranks power decides, and deny wins between ranks of equal power.
+     */
+    public enum Action {
+        DENY,
+        ALLOW;
+
+        /**
+         * Parses an action as written in the config.
+         * @return The action, or null if the name is not "deny" or "allow".
+         */
+        public static Action parse(String name) {
+            for (Action action : values()) {
+                if (action.getName().equalsIgnoreCase(name.trim())) {
+                    return action;
+                }
+            }
+            return null;
+        }
+
+        public String getName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final String message; // Can be null if this set should use the rank's default or global default message
+    private final Action action;
     private final List<String> rawItemPatterns; // Keep for saving/display if needed, or remove if not
     private final List<String> rawBlockPatterns; // Keep for saving/display if needed
+    private final List<String> rawEntityPatterns;
+    private final List<String> rawNbtConditions;
+    private final List<NbtPredicate> nbtConditions; // Items only match if their NBT meets all of these
 
-    // Item restrictions
-    private final Set<ResourceLocation> restrictedExactItems = new HashSet<>();
-    private final Set<String> restrictedItemModIds = new HashSet<>(); // Store just the mod ID, e.g., "mekanism"
-    private final List<TagKey<Item>> restrictedItemTags = new ArrayList<>();
-    
-    // Block restrictions
-    private final Set<ResourceLocation> restrictedExactBlocks = new HashSet<>();
-    private final Set<String> restrictedBlockModIds = new HashSet<>(); // Store just the mod ID, e.g., "mekanism"
-    private final List<TagKey<Block>> restrictedBlockTags = new ArrayList<>();
+    private final IdPatternSet itemPatterns;
+    private final IdPatternSet blockPatterns;
+    private final IdPatternSet entityPatterns;
+
+    // Registry IDs of the restricted tags' members, expanded by bindTags() whenever tags are (re)loaded
+    private volatile BitSet taggedItemIds = new BitSet();
+    private volatile BitSet taggedBlockIds = new BitSet();
+    private volatile BitSet taggedEntityIds = new BitSet();
 
     public RestrictionSet(List<String> rawItemPatterns, String message) {
-        this.rawItemPatterns = Objects.requireNonNull(rawItemPatterns, "Raw item patterns list cannot be null");
-        this.rawBlockPatterns = new ArrayList<>(); // Initialize empty for now
+        this.rawItemPatterns = copyPatterns(Objects.requireNonNull(rawItemPatterns, "Raw item patterns list cannot be null"));
+        this.rawBlockPatterns = List.of();
+        this.rawEntityPatterns = List.of();
+        this.rawNbtConditions = List.of();
+        this.nbtConditions = List.of();
         this.message = message; // Message can be null
-        preprocessItemRestrictions(rawItemPatterns);
+        this.action = Action.DENY;
+        this.itemPatterns = compilePatterns(this.rawItemPatterns, "item");
+        this.blockPatterns = IdPatternSet.EMPTY;
+        this.entityPatterns = IdPatternSet.EMPTY;
     }
     
     public RestrictionSet(List<String> rawItemPatterns, List<String> rawBlockPatterns, String message) {
-        this.rawItemPatterns = Objects.requireNonNull(rawItemPatterns, "Raw item patterns list cannot be null");
-        this.rawBlockPatterns = Objects.requireNonNull(rawBlockPatterns, "Raw block patterns list cannot be null");
+        this(rawItemPatterns, rawBlockPatterns, message, Action.DENY);
+    }
+
+    public RestrictionSet(List<String> rawItemPatterns, List<String> rawBlockPatterns, String message, Action action) {
+        this(rawItemPatterns, rawBlockPatterns, message, action, List.of());
+    }
+
+    public RestrictionSet(List<String> rawItemPatterns, List<String> rawBlockPatterns, String message, Action action, List<String> rawNbtConditions) {
+        this(rawItemPatterns, rawBlockPatterns, List.of(), message, action, rawNbtConditions);
+    }
+
+    public RestrictionSet(List<String> rawItemPatterns, List<String> rawBlockPatterns, List<String> rawEntityPatterns, String message, Action action, List<String> rawNbtConditions) {
+        this.rawItemPatterns = copyPatterns(Objects.requireNonNull(rawItemPatterns, "Raw item patterns list cannot be null"));
+        this.rawBlockPatterns = copyPatterns(Objects.requireNonNull(rawBlockPatterns, "Raw block patterns list cannot be null"));
+        this.rawEntityPatterns = copyPatterns(Objects.requireNonNull(rawEntityPatterns, "Raw entity patterns list cannot be null"));
+        this.rawNbtConditions = copyPatterns(Objects.requireNonNull(rawNbtConditions, "Raw NBT conditions list cannot be null"));
+        this.nbtConditions = parseNbtConditions(this.rawNbtConditions);
         this.message = message; // Message can be null
-        preprocessItemRestrictions(rawItemPatterns);
-        preprocessBlockRestrictions(rawBlockPatterns);
-    }
-
-    private void preprocessItemRestrictions(List<String> patterns) {
-        for (String patternGroup : patterns) {
-            if (patternGroup == null) continue; // Skip null patterns
-            String[] individualPatterns = patternGroup.split(","); // Handle comma-separated first
-            for (String p : individualPatterns) {
-                String trimmedPattern = p.trim();
-                if (trimmedPattern.isEmpty()) continue;
-
-                if (trimmedPattern.startsWith("#")) { // Tag
-                    String tagName = trimmedPattern.substring(1);
-                    ResourceLocation tagId = ResourceLocation.tryParse(tagName);
-                    // If tag doesn't specify a namespace, default to 'minecraft' as per common convention for some tags.
-                    // However, most modded tags (e.g. #forge:ingots) will be namespaced.
-                    // ResourceLocation.tryParse handles this correctly if namespace is missing by returning null or throwing error depending on string.
-                    // Let's ensure we handle cases like `#beds` (implicitly minecraft:beds)
-                    if (tagId == null && !tagName.contains(":")) { // tryParse might return null for unnamespaced simple strings
-                        tagId = ResourceLocation.tryParse("minecraft:" + tagName);
-                    }
-
-                    if (tagId != null) {
-                        restrictedItemTags.add(TagKey.create(ForgeRegistries.ITEMS.getRegistryKey(), tagId));
-                    } else {
-                        RankRestrictions.LOGGER.warn("Invalid tag format or could not parse tag ID: '" + trimmedPattern + "'");
-                    }
-                } else if (trimmedPattern.endsWith(":*")) { // Mod wildcard
-                    restrictedItemModIds.add(trimmedPattern.substring(0, trimmedPattern.length() - 2));
-                } else { // Exact item ID
-                    ResourceLocation itemRL = ResourceLocation.tryParse(trimmedPattern);
-                    if (itemRL != null) {
-                        restrictedExactItems.add(itemRL);
-                    } else {
-                        RankRestrictions.LOGGER.warn("Invalid item ID format: '" + trimmedPattern + "'");
-                    }
-                }
+        this.action = Objects.requireNonNull(action, "Action cannot be null");
+        this.itemPatterns = compilePatterns(this.rawItemPatterns, "item");
+        this.blockPatterns = compilePatterns(this.rawBlockPatterns, "block");
+        this.entityPatterns = compilePatterns(this.rawEntityPatterns, "entity");
+    }
+
+    /**
+     * Creates an equal set with its own tag bindings, so it can be bound and compiled without affecting a
+     * published snapshot that shares this one.
+     */
+    public RestrictionSet copy() {
+        return new RestrictionSet(rawItemPatterns, rawBlockPatterns, rawEntityPatterns, message, action, rawNbtConditions);
+    }
+
+    /**
+     * Checks a single pattern without building a set, for validating a config before it is applied.
+     * @param pattern A trimmed item or block pattern.
+     * @return A description of the problem, or null if the pattern is valid or empty.
+     */
+    public static String validatePattern(String pattern) {
+        return IdPatterns.validate(pattern);
+    }
+
+    /**
+     * Splits a pattern list entry into its comma-separated patterns. A regex, written between slashes,
+     * is always taken whole so it may contain commas.
+     */
+    public static List<String> splitPatterns(String patternGroup) {
+        return IdPatterns.split(patternGroup);
+    }
+
+    private static IdPatternSet compilePatterns(List<String> patterns, String kind) {
+        return IdPatternSet.compile(patterns, kind, warning -> RankRestrictions.LOGGER.warn(warning));
+    }
+
+    private static List<String> copyPatterns(List<String> patterns) {
+        return patterns.stream().filter(Objects::nonNull).toList();
+    }
+
+    private static List<NbtPredicate> parseNbtConditions(List<String> conditions) {
+        List<NbtPredicate> parsed = new ArrayList<>();
+        for (String condition : conditions) {
+            if (condition.isBlank()) continue;
+            try {
+                parsed.add(NbtPredicate.parse(condition));
+            } catch (IllegalArgumentException e) {
+                RankRestrictions.LOGGER.warn("Ignoring NBT condition: " + e.getMessage());
             }
         }
+        return List.copyOf(parsed);
     }
-    
-    private void preprocessBlockRestrictions(List<String> patterns) {
-        for (String patternGroup : patterns) {
-            if (patternGroup == null) continue; // Skip null patterns
-            String[] individualPatterns = patternGroup.split(","); // Handle comma-separated first
-            for (String p : individualPatterns) {
-                String trimmedPattern = p.trim();
-                if (trimmedPattern.isEmpty()) continue;
-
-                if (trimmedPattern.startsWith("#")) { // Tag
-                    String tagName = trimmedPattern.substring(1);
-                    ResourceLocation tagId = ResourceLocation.tryParse(tagName);
-                    // If tag doesn't specify a namespace, default to 'minecraft' as per common convention for some tags.
-                    if (tagId == null && !tagName.contains(":")) { // tryParse might return null for unnamespaced simple strings
-                        tagId = ResourceLocation.tryParse("minecraft:" + tagName);
-                    }
-
-                    if (tagId != null) {
-                        restrictedBlockTags.add(TagKey.create(ForgeRegistries.BLOCKS.getRegistryKey(), tagId));
-                    } else {
-                        RankRestrictions.LOGGER.warn("Invalid block tag format or could not parse tag ID: '" + trimmedPattern + "'");
-                    }
-                } else if (trimmedPattern.endsWith(":*")) { // Mod wildcard
-                    restrictedBlockModIds.add(trimmedPattern.substring(0, trimmedPattern.length() - 2));
-                } else { // Exact block ID
-                    ResourceLocation blockRL = ResourceLocation.tryParse(trimmedPattern);
-                    if (blockRL != null) {
-                        restrictedExactBlocks.add(blockRL);
-                    } else {
-                        RankRestrictions.LOGGER.warn("Invalid block ID format: '" + trimmedPattern + "'");
-                    }
-                }
-            }
+
+    /**
+     * Expands the restricted tags into the concrete items, blocks and entity types they currently contain, so
+     * checks never have to query tags. Must be called again whenever tags are reloaded.
+     */
+    public void bindTags() {
+        taggedItemIds = itemPatterns.resolveTags(ForgeRegistryAdapter.ITEMS);
+        taggedBlockIds = blockPatterns.resolveTags(ForgeRegistryAdapter.BLOCKS);
+        taggedEntityIds = entityPatterns.resolveTags(ForgeRegistryAdapter.ENTITY_TYPES);
+    }
+
+    /**
+     * Hashes the registry IDs of the currently bound tag members, so a compiled index can tell whether
+     * tag contents changed. Independent of iteration order.
+     */
+    long tagFingerprint() {
+        long hash = 0;
+        BitSet items = taggedItemIds;
+        for (int id = items.nextSetBit(0); id >= 0; id = items.nextSetBit(id + 1)) {
+            hash += CompiledIndexCache.mix(1, id);
+        }
+        BitSet blocks = taggedBlockIds;
+        for (int id = blocks.nextSetBit(0); id >= 0; id = blocks.nextSetBit(id + 1)) {
+            hash += CompiledIndexCache.mix(2, id);
         }
+        BitSet entities = taggedEntityIds;
+        for (int id = entities.nextSetBit(0); id >= 0; id = entities.nextSetBit(id + 1)) {
+            hash += CompiledIndexCache.mix(3, id);
+        }
+        return hash;
+    }
+
+    /**
+     * Sets the registry IDs of every item restricted by this set.
+     * Expands the patterns directly instead of testing every registered item against every pattern.
+     * @param target The bitset to add the item registry IDs to.
+     */
+    public void addRestrictedItemIds(BitSet target) {
+        itemPatterns.addMatchingIds(ForgeRegistryAdapter.ITEMS, target);
+        target.or(taggedItemIds);
+    }
+
+    /**
+     * Sets the registry IDs of every block restricted by this set.
+     * @param target The bitset to add the block registry IDs to.
+     */
+    public void addRestrictedBlockIds(BitSet target) {
+        blockPatterns.addMatchingIds(ForgeRegistryAdapter.BLOCKS, target);
+        target.or(taggedBlockIds);
+    }
+
+    /**
+     * Sets the registry IDs of every entity type restricted by this set.
+     * @param target The bitset to add the entity type registry IDs to.
+     */
+    public void addRestrictedEntityIds(BitSet target) {
+        entityPatterns.addMatchingIds(ForgeRegistryAdapter.ENTITY_TYPES, target);
+        target.or(taggedEntityIds);
     }
 
     public List<String> getItems() {
-        // Return the original raw patterns if they are needed for config saving or display.
-        // If not, this method might be redundant or could be removed.
+        // The original raw patterns, for config saving and display
         return rawItemPatterns;
     }
 
     public String getMessage() {
         return message;
     }
-
-    public void setMessage(String message) {
-        this.message = message;
-    }
     
     public List<String> getBlocks() {
         return rawBlockPatterns;
     }
 
+    public List<String> getEntities() {
+        return rawEntityPatterns;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public List<String> getNbt() {
+        return rawNbtConditions;
+    }
+
+    /**
+     * Checks whether this set's items are only restricted when their NBT meets the set's conditions.
+     * Block and entity patterns are unaffected, they have no stack NBT.
+     */
+    public boolean hasNbtConditions() {
+        return !nbtConditions.isEmpty();
+    }
+
+    /**
+     * Tests a stack's tag against all of this set's NBT conditions.
+     * @param tag The stack's tag, or null if it has none.
+     */
+    public boolean matchesNbt(CompoundTag tag) {
+        for (NbtPredicate condition : nbtConditions) {
+            if (!condition.test(tag)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether this set re-allows what it matches instead of restricting it.
+     */
+    public boolean isAllow() {
+        return action == Action.ALLOW;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         RestrictionSet that = (RestrictionSet) o;
         // Equality should be based on the effective restrictions and message.
-        // Comparing preprocessed sets ensures semantic equality.
-        return restrictedExactItems.equals(that.restrictedExactItems) &&
-               restrictedItemModIds.equals(that.restrictedItemModIds) &&
-               restrictedItemTags.equals(that.restrictedItemTags) &&
-               restrictedExactBlocks.equals(that.restrictedExactBlocks) &&
-               restrictedBlockModIds.equals(that.restrictedBlockModIds) &&
-               restrictedBlockTags.equals(that.restrictedBlockTags) &&
-               Objects.equals(message, that.message);
+        // Comparing compiled patterns ensures semantic equality.
+        return itemPatterns.equals(that.itemPatterns) &&
+               blockPatterns.equals(that.blockPatterns) &&
+               entityPatterns.equals(that.entityPatterns) &&
+               rawNbtConditions.equals(that.rawNbtConditions) &&
+               Objects.equals(message, that.message) &&
+               action == that.action;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(restrictedExactItems, restrictedItemModIds, restrictedItemTags, 
-                           restrictedExactBlocks, restrictedBlockModIds, restrictedBlockTags, message);
+        return Objects.hash(itemPatterns, blockPatterns, entityPatterns, rawNbtConditions, message, action);
     }
 
     /**
-     * Checks if the given item is restricted by this set using pre-processed patterns.
+     * Checks if the given item matches this set's patterns, regardless of its action.
      * @param itemRL The ResourceLocation of the item to check.
      * @param itemToCheck The Item object itself.
      * @return True if the item is restricted by this set, false otherwise.
@@ -167,28 +295,13 @@ public class RestrictionSet {
     public boolean isRestricted(ResourceLocation itemRL, Item itemToCheck) {
         if (itemRL == null || itemToCheck == null) return false;
 
-        // 1. Check exact item IDs (HashSet O(1) average)
-        if (restrictedExactItems.contains(itemRL)) {
-            return true;
-        }
-
-        // 2. Check mod wildcards (HashSet O(1) average for mod ID lookup)
-        if (restrictedItemModIds.contains(itemRL.getNamespace())) {
-            return true;
-        }
-
-        // 3. Check tags (List iteration, but item.getDefaultInstance().is(tagKey) is efficient)
-        ItemStack itemStack = itemToCheck.getDefaultInstance(); // Get once
-        for (TagKey<Item> tagKey : restrictedItemTags) {
-            if (itemStack.is(tagKey)) {
-                return true;
-            }
-        }
-        return false;
+        // Exact IDs, mod wildcards, globs and regexes, then tag members expanded when tags were loaded
+        int itemId = BuiltInRegistries.ITEM.getId(itemToCheck);
+        return itemPatterns.matches(itemRL.toString()) || (itemId >= 0 && taggedItemIds.get(itemId));
     }
     
     /**
-     * Checks if the given block is restricted by this set using pre-processed patterns.
+     * Checks if the given block matches this set's patterns, regardless of its action.
      * @param blockRL The ResourceLocation of the block to check.
      * @param blockToCheck The Block object itself.
      * @return True if the block is restricted by this set, false otherwise.
@@ -196,23 +309,21 @@ public class RestrictionSet {
     public boolean isBlockRestricted(ResourceLocation blockRL, Block blockToCheck) {
         if (blockRL == null || blockToCheck == null) return false;
 
-        // 1. Check exact block IDs (HashSet O(1) average)
-        if (restrictedExactBlocks.contains(blockRL)) {
-            return true;
-        }
+        // Exact IDs, mod wildcards, globs and regexes, then tag members expanded when tags were loaded
+        int blockId = BuiltInRegistries.BLOCK.getId(blockToCheck);
+        return blockPatterns.matches(blockRL.toString()) || (blockId >= 0 && taggedBlockIds.get(blockId));
+    }
 
-        // 2. Check mod wildcards (HashSet O(1) average for mod ID lookup)
-        if (restrictedBlockModIds.contains(blockRL.getNamespace())) {
-            return true;
-        }
+    /**
+     * Checks if the given entity type matches this set's patterns, regardless of its action.
+     * @param entityRL The ResourceLocation of the entity type to check.
+     * @param entityToCheck The EntityType object itself.
+     * @return True if the entity type is restricted by this set, false otherwise.
+     */
+    public boolean isEntityRestricted(ResourceLocation entityRL, EntityType<?> entityToCheck) {
+        if (entityRL == null || entityToCheck == null) return false;
 
-        // 3. Check tags (List iteration, but block.defaultBlockState().is(tagKey) is efficient)
-        BlockState blockState = blockToCheck.defaultBlockState(); // Get once
-        for (TagKey<Block> tagKey : restrictedBlockTags) {
-            if (blockState.is(tagKey)) {
-                return true;
-            }
-        }
-        return false;
+        int entityId = BuiltInRegistries.ENTITY_TYPE.getId(entityToCheck);
+        return entityPatterns.matches(entityRL.toString()) || (entityId >= 0 && taggedEntityIds.get(entityId));
     }
 }
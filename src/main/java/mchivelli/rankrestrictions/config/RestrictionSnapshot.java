@@ -0,0 +1,95 @@
+package mchivelli.rankrestrictions.config;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An immutable, fully compiled state of the restriction config: the rank data, the default message and
+ * the {@link RestrictionIndex} compiled from them.
+ * <p>
+ * {@link RankRestrictionsConfig} publishes snapshots through a single volatile reference, so a reload or an
+ * edit is never visible half-applied and readers on any thread never lock. Changes are made by building a
+ * modified copy and publishing it.
+ */
+public final class RestrictionSnapshot {
+    private final Map<String, RankRestrictionData> rankRestrictions;
+    private final String defaultRestrictionMessage;
+    private final RestrictionIndex index;
+
+    private RestrictionSnapshot(Map<String, RankRestrictionData> rankRestrictions, String defaultRestrictionMessage, RestrictionIndex index) {
+        this.rankRestrictions = rankRestrictions;
+        this.defaultRestrictionMessage = defaultRestrictionMessage;
+        this.index = index;
+    }
+
+    /**
+     * Copies the given rank data and compiles it against the current registries and tags.
+     * @param rankRestrictions The rank restriction data, keyed by rank ID.
+     * @param defaultRestrictionMessage The message used by sets without their own message.
+     * @return The compiled snapshot.
+     */
+    public static RestrictionSnapshot compile(Map<String, RankRestrictionData> rankRestrictions, String defaultRestrictionMessage) {
+        Map<String, RankRestrictionData> copy = Collections.unmodifiableMap(new LinkedHashMap<>(rankRestrictions));
+        return new RestrictionSnapshot(copy, defaultRestrictionMessage, RestrictionIndex.compile(copy));
+    }
+
+    /**
+     * Like {@link #compile(Map, String)}, but reuses an index from the compiled cache when the patterns,
+     * registries and tags are unchanged.
+     */
+    public static RestrictionSnapshot compile(Map<String, RankRestrictionData> rankRestrictions, String defaultRestrictionMessage, CompiledIndexCache cache) {
+        Map<String, RankRestrictionData> copy = Collections.unmodifiableMap(new LinkedHashMap<>(rankRestrictions));
+        return new RestrictionSnapshot(copy, defaultRestrictionMessage, RestrictionIndex.compile(copy, cache));
+    }
+
+    /**
+     * Compiles the same rank data again, after tags were reloaded.
+     */
+    public RestrictionSnapshot recompile(CompiledIndexCache cache) {
+        return new RestrictionSnapshot(rankRestrictions, defaultRestrictionMessage, RestrictionIndex.compile(rankRestrictions, cache));
+    }
+
+    /**
+     * Creates a copy with the given rank's data added or replaced.
+     */
+    public RestrictionSnapshot withRank(RankRestrictionData data) {
+        Map<String, RankRestrictionData> ranks = new LinkedHashMap<>(rankRestrictions);
+        ranks.put(data.getRankId(), data);
+        return compile(ranks, defaultRestrictionMessage);
+    }
+
+    /**
+     * Creates a copy with a different default message. The index is shared, since it doesn't depend on messages.
+     */
+    public RestrictionSnapshot withDefaultRestrictionMessage(String message) {
+        return new RestrictionSnapshot(rankRestrictions, message, index);
+    }
+
+    /**
+     * Gets the message for a restriction by the given set, which is the default message if the set has none.
+     * @param set The matching set, or null if none is known.
+     * @param item Replaces {@code %item%} in the message.
+     */
+    public String formatMessage(RestrictionSet set, String item) {
+        if (set != null) {
+            String message = set.getMessage();
+            if (message != null && !message.isEmpty()) {
+                return message.replace("%item%", item);
+            }
+        }
+        return defaultRestrictionMessage.replace("%item%", item);
+    }
+
+    public Map<String, RankRestrictionData> getRankRestrictions() {
+        return rankRestrictions;
+    }
+
+    public String getDefaultRestrictionMessage() {
+        return defaultRestrictionMessage;
+    }
+
+    public RestrictionIndex getIndex() {
+        return index;
+    }
+}
@@ -0,0 +1,266 @@
+package mchivelli.rankrestrictions.events;
+
+import mchivelli.rankrestrictions.cache.PlayerRestrictionView;
+import mchivelli.rankrestrictions.config.RestrictionIndex;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraftforge.common.capabilities.ForgeCapabilities;
+import net.minecraftforge.common.util.LazyOptional;
+import net.minecraftforge.items.IItemHandler;
+import net.minecraftforge.items.IItemHandlerModifiable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Removes restricted items nested inside container items: shulker boxes and other block items that keep
+ * their contents in {@code BlockEntityTag.Items}, bundles ({@code Items}), and modded containers such as
+ * backpacks that expose a Forge item handler capability. Containers inside containers are searched up to a
+ * depth limit.
+ * <p>
+ * A container whose contents live entirely in its tag and turn out to be clean is remembered by its item and
+ * tag contents on the player's {@link RestrictionIndex.Decision}, so identical containers, and the same
+ * container on the next sweep, are not opened again. Contents behind a capability may be stored outside the
+ * tag, so those containers are always scanned.
+ * <p>
+ * Scans off the server thread must not touch capabilities or build item stacks, since mods only expect them to
+ * be used on their owning thread. Those scans use {@link #findRestrictedContents}, which only reads the saved
+ * entries in the tag, and the server thread removes what it found with {@link #removeContents}.
+ */
+public final class ContainerScanner {
+    private static final String BLOCK_ENTITY_TAG = "BlockEntityTag";
+    private static final String ITEMS = "Items";
+    private static final String SLOT = "Slot";
+
+    private final PlayerRestrictionView view;
+    private final int maxDepth;
+    private List<ItemStack> removed; // Created on the first removal
+    private boolean usedCapability;
+
+    private ContainerScanner(PlayerRestrictionView view, int maxDepth) {
+        this.view = view;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Removes restricted items from inside the given stack, which is modified in place.
+     * @param stack A stack that is not restricted itself.
+     * @param view The restrictions of the player holding it.
+     * @param maxDepth How many levels of containers to open, at least 1.
+     * @return The removed stacks, empty if there were none.
+     */
+    static List<ItemStack> strip(ItemStack stack, PlayerRestrictionView view, int maxDepth) {
+        CompoundTag tag = stack.getTag();
+        boolean tagContainer = tag != null && containerItems(tag) != null;
+        LazyOptional<IItemHandler> handler = stack.getCapability(ForgeCapabilities.ITEM_HANDLER);
+        if (!tagContainer && !handler.isPresent()) {
+            return List.of();
+        }
+
+        int itemId = RestrictionIndex.itemId(stack.getItem());
+        int tagHash = tagContainer ? tag.hashCode() : 0;
+        if (tagContainer && !handler.isPresent() && view.getDecision().isKnownCleanContainer(itemId, tag, tagHash)) {
+            return List.of();
+        }
+
+        ContainerScanner scanner = new ContainerScanner(view, maxDepth);
+        scanner.stripContents(stack, handler, 1);
+        if (scanner.removed == null) {
+            // A nested container behind a capability may hold contents the tag doesn't show
+            if (tagContainer && !scanner.usedCapability) {
+                view.getDecision().markCleanContainer(itemId, tag, tagHash);
+            }
+            return List.of();
+        }
+        return scanner.removed;
+    }
+
+    /**
+     * Finds restricted items in the saved contents of a container item's tag without changing it. Safe to use
+     * off the server thread.
+     * @param tag A container item's tag, which must not be modified while it is read.
+     * @param maxDepth How many levels of containers to open, at least 1.
+     * @return The path of list indices to each restricted entry, starting with the index in the tag's own list,
+     *         in the order they were found. Empty if there are none.
+     */
+    static List<int[]> findRestrictedContents(CompoundTag tag, PlayerRestrictionView view, int maxDepth) {
+        List<int[]> paths = new ArrayList<>();
+        ListTag items = containerItems(tag);
+        if (items != null) {
+            findRestricted(items, new int[0], maxDepth, view, paths);
+        }
+        return paths;
+    }
+
+    private static void findRestricted(ListTag items, int[] parent, int depthLeft, PlayerRestrictionView view, List<int[]> paths) {
+        for (int i = 0; i < items.size(); i++) {
+            CompoundTag entry = items.getCompound(i);
+            int itemId = savedItemId(entry);
+            if (itemId < 0) {
+                continue;
+            }
+            CompoundTag tag = entry.contains("tag", Tag.TAG_COMPOUND) ? entry.getCompound("tag") : null;
+            int[] path = Arrays.copyOf(parent, parent.length + 1);
+            path[parent.length] = i;
+            if (view.isStackRestricted(itemId, tag)) {
+                paths.add(path);
+            } else if (depthLeft > 1 && tag != null) {
+                ListTag contents = containerItems(tag);
+                if (contents != null) {
+                    findRestricted(contents, path, depthLeft - 1, view, paths);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the entries found by {@link #findRestrictedContents} from the stack, which is modified in place.
+     * @param stack A stack with the same tag contents as the one that was scanned.
+     * @return The removed stacks.
+     */
+    static List<ItemStack> removeContents(ItemStack stack, List<int[]> paths) {
+        List<ItemStack> removedStacks = new ArrayList<>(paths.size());
+        // Paths are found in ascending order, so going backwards removes every entry before the indices of
+        // the entries still to be removed can shift
+        for (int p = paths.size() - 1; p >= 0; p--) {
+            int[] path = paths.get(p);
+            ListTag items = containerItems(stack.getTag());
+            for (int level = 0; level < path.length - 1; level++) {
+                items = containerItems(items.getCompound(path[level]).getCompound("tag"));
+            }
+            removedStacks.add(0, ItemStack.of(items.getCompound(path[path.length - 1])));
+            items.remove(path[path.length - 1]);
+        }
+        return removedStacks;
+    }
+
+    /**
+     * Looks up the registry ID of a saved item stack entry.
+     * @return The ID, or -1 if the entry has no known item.
+     */
+    private static int savedItemId(CompoundTag entry) {
+        ResourceLocation itemId = ResourceLocation.tryParse(entry.getString("id"));
+        Item item = itemId != null ? BuiltInRegistries.ITEM.getOptional(itemId).orElse(null) : null;
+        return item != null ? RestrictionIndex.itemId(item) : -1;
+    }
+
+    /**
+     * @return Whether the tag holds container contents.
+     */
+    static boolean hasTagContents(CompoundTag tag) {
+        return tag != null && containerItems(tag) != null;
+    }
+
+    /**
+     * Finds the list of contained items in a container item's tag.
+     * @return The list, or null if the tag has none.
+     */
+    public static ListTag containerItems(CompoundTag tag) {
+        if (tag.contains(BLOCK_ENTITY_TAG, Tag.TAG_COMPOUND)) {
+            CompoundTag blockEntityTag = tag.getCompound(BLOCK_ENTITY_TAG);
+            if (blockEntityTag.contains(ITEMS, Tag.TAG_LIST)) {
+                return blockEntityTag.getList(ITEMS, Tag.TAG_COMPOUND);
+            }
+        }
+        if (tag.contains(ITEMS, Tag.TAG_LIST)) {
+            return tag.getList(ITEMS, Tag.TAG_COMPOUND);
+        }
+        return null;
+    }
+
+    /**
+     * @return Whether anything inside the stack was changed.
+     */
+    private boolean stripContents(ItemStack stack, LazyOptional<IItemHandler> handler, int depth) {
+        if (handler.isPresent()) {
+            // The handler is the authority when a mod provides one; the tag may only mirror it
+            usedCapability = true;
+            return handler.map(h -> stripHandler(h, depth)).orElse(false);
+        }
+        CompoundTag tag = stack.getTag();
+        ListTag items = tag != null ? containerItems(tag) : null;
+        return items != null && stripList(items, depth);
+    }
+
+    private boolean stripList(ListTag items, int depth) {
+        boolean changed = false;
+        for (int i = 0; i < items.size(); i++) {
+            CompoundTag entry = items.getCompound(i);
+            ItemStack inner = ItemStack.of(entry);
+            if (inner.isEmpty()) {
+                continue;
+            }
+            if (isRestricted(inner)) {
+                addRemoved(inner);
+                items.remove(i--);
+                changed = true;
+            } else if (depth < maxDepth && stripNested(inner, depth)) {
+                CompoundTag saved = inner.save(new CompoundTag());
+                if (entry.contains(SLOT)) {
+                    saved.putByte(SLOT, entry.getByte(SLOT));
+                }
+                items.set(i, saved);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    private boolean stripHandler(IItemHandler handler, int depth) {
+        boolean changed = false;
+        for (int slot = 0; slot < handler.getSlots(); slot++) {
+            ItemStack inner = handler.getStackInSlot(slot); // Must not be modified directly
+            if (inner.isEmpty()) {
+                continue;
+            }
+            if (isRestricted(inner)) {
+                ItemStack taken = handler instanceof IItemHandlerModifiable modifiable
+                    ? removeFromSlot(modifiable, slot, inner)
+                    : handler.extractItem(slot, inner.getCount(), false);
+                if (!taken.isEmpty()) {
+                    addRemoved(taken);
+                    changed = true;
+                }
+            } else if (depth < maxDepth && handler instanceof IItemHandlerModifiable modifiable) {
+                ItemStack copy = inner.copy();
+                if (stripNested(copy, depth)) {
+                    modifiable.setStackInSlot(slot, copy);
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static ItemStack removeFromSlot(IItemHandlerModifiable handler, int slot, ItemStack inner) {
+        ItemStack taken = inner.copy();
+        handler.setStackInSlot(slot, ItemStack.EMPTY);
+        return taken;
+    }
+
+    private boolean stripNested(ItemStack inner, int depth) {
+        CompoundTag tag = inner.getTag();
+        LazyOptional<IItemHandler> handler = inner.getCapability(ForgeCapabilities.ITEM_HANDLER);
+        if ((tag == null || containerItems(tag) == null) && !handler.isPresent()) {
+            return false;
+        }
+        return stripContents(inner, handler, depth + 1);
+    }
+
+    private boolean isRestricted(ItemStack stack) {
+        return view.isStackRestricted(RestrictionIndex.itemId(stack.getItem()), stack);
+    }
+
+    private void addRemoved(ItemStack stack) {
+        if (removed == null) {
+            removed = new ArrayList<>();
+        }
+        removed.add(stack);
+    }
+}
@@ -0,0 +1,171 @@
+package mchivelli.rankrestrictions.events;
+
+import mchivelli.rankrestrictions.RankRestrictions;
+import mchivelli.rankrestrictions.cache.PlayerRestrictionCache;
+import mchivelli.rankrestrictions.cache.PlayerRestrictionView;
+import mchivelli.rankrestrictions.config.RankRestrictionsConfig;
+import mchivelli.rankrestrictions.config.RestrictionIndex;
+import net.minecraft.Util;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.item.ItemStack;
+import net.minecraftforge.common.capabilities.ForgeCapabilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+/**
+ * Re-checks the inventories of all online players right after the restrictions change, instead of waiting for
+ * each player's next full sweep. A pass is requested whenever the compiled index is replaced (reload command,
+ * config watcher, edits, tag reloads) and by the FTB Ranks events that can change players' ranks.
+ * <p>
+ * On the server thread, every occupied inventory slot is copied along with the player's current view. The
+ * copies' item IDs and tags are checked in parallel on Minecraft's background ForkJoin pool, which only reads
+ * NBT and finds the restricted stacks and container entries. The removals are made on the server thread in one
+ * batch on a later tick. A slot is only changed if it still holds what was copied, and a player is skipped if
+ * their restrictions changed in the meantime. Containers with an item handler capability are left to the
+ * regular checks, since capabilities must not be used off the server thread.
+ * Requests made while a pass is running start another pass once it has been applied.
+ */
+class EnforcementPass {
+    private final AtomicBoolean requested = new AtomicBoolean();
+    private RestrictionIndex lastIndex;
+    private CompletableFuture<List<PlayerResult>> running;
+
+    /**
+     * One copied inventory slot.
+     * @param original The copy to compare with the live slot before changing it. Its tag is only read.
+     * @param scanContents Whether the stack is a container whose saved contents should be checked.
+     */
+    private record SlotCopy(int slot, int itemId, ItemStack original, boolean scanContents) {
+    }
+
+    private record PlayerCopy(UUID playerId, PlayerRestrictionView view, List<SlotCopy> slots) {
+    }
+
+    /**
+     * A change to one slot.
+     * @param restricted Whether the stack is restricted itself and the whole slot is removed.
+     * @param contentPaths Otherwise, the restricted entries in the container's contents, as found by
+     *                     {@link ContainerScanner#findRestrictedContents}.
+     */
+    record SlotResult(int slot, ItemStack original, boolean restricted, List<int[]> contentPaths) {
+    }
+
+    record PlayerResult(UUID playerId, PlayerRestrictionView view, List<SlotResult> slots) {
+    }
+
+    public void request() {
+        requested.set(true);
+    }
+
+    /**
+     * Applies a finished pass and starts a requested one. Must be called once per server tick.
+     * @param applier Applies the changes of one player, who is online, not in creative and still has the same restrictions.
+     */
+    public void tick(MinecraftServer server, RankRestrictionsConfig config, PlayerRestrictionCache playerCache, BiConsumer<ServerPlayer, PlayerResult> applier) {
+        RestrictionIndex index = config.getRestrictionIndex();
+        if (index != lastIndex) {
+            if (lastIndex != null) {
+                request(); // Nobody is online before the first tick; later logins have their occupied slots marked by the slot tracker
+            }
+            lastIndex = index;
+        }
+
+        if (running != null) {
+            if (!running.isDone()) {
+                return;
+            }
+            List<PlayerResult> results = running.join();
+            running = null;
+            apply(server, playerCache, results, applier);
+        }
+
+        if (!requested.getAndSet(false)) {
+            return;
+        }
+        int scanDepth = config.getContainerScanDepth();
+        List<PlayerCopy> players = copyInventories(server, playerCache, scanDepth);
+        if (players.isEmpty()) {
+            return;
+        }
+
+        // A parallel stream started from a ForkJoin worker runs its tasks in that worker's pool
+        running = CompletableFuture.supplyAsync(() -> players.parallelStream()
+                .map(player -> scan(player, scanDepth))
+                .filter(result -> !result.slots.isEmpty())
+                .toList(), Util.backgroundExecutor())
+            .exceptionally(e -> {
+                RankRestrictions.LOGGER.error("Enforcement pass failed: " + e.getMessage(), e);
+                return List.of();
+            });
+    }
+
+    private static List<PlayerCopy> copyInventories(MinecraftServer server, PlayerRestrictionCache playerCache, int scanDepth) {
+        List<PlayerCopy> players = new ArrayList<>();
+        for (ServerPlayer player : server.getPlayerList().getPlayers()) {
+            if (player.isCreative()) {
+                continue;
+            }
+            PlayerRestrictionView view = playerCache.get(player);
+            if (view.isEmpty()) {
+                continue;
+            }
+
+            Inventory inventory = player.getInventory();
+            List<SlotCopy> slots = new ArrayList<>();
+            for (int slot = 0; slot < inventory.getContainerSize(); slot++) {
+                ItemStack stack = inventory.getItem(slot);
+                if (stack.isEmpty()) {
+                    continue;
+                }
+                boolean scanContents = scanDepth > 0 && ContainerScanner.hasTagContents(stack.getTag())
+                    && !stack.getCapability(ForgeCapabilities.ITEM_HANDLER).isPresent();
+                slots.add(new SlotCopy(slot, RestrictionIndex.itemId(stack.getItem()), stack.copy(), scanContents));
+            }
+            if (!slots.isEmpty()) {
+                players.add(new PlayerCopy(player.getUUID(), view, slots));
+            }
+        }
+        return players;
+    }
+
+    /**
+     * Checks one player's copied slots. Runs on a background thread, so it only reads the copies' tags.
+     */
+    private static PlayerResult scan(PlayerCopy player, int scanDepth) {
+        List<SlotResult> results = new ArrayList<>();
+        for (SlotCopy copy : player.slots) {
+            CompoundTag tag = copy.original.getTag();
+            if (player.view.isStackRestricted(copy.itemId, tag)) {
+                results.add(new SlotResult(copy.slot, copy.original, true, List.of()));
+            } else if (copy.scanContents && !player.view.getDecision().isKnownCleanContainer(copy.itemId, tag, tag.hashCode())) {
+                List<int[]> paths = ContainerScanner.findRestrictedContents(tag, player.view, scanDepth);
+                if (!paths.isEmpty()) {
+                    results.add(new SlotResult(copy.slot, copy.original, false, paths));
+                }
+            }
+        }
+        return new PlayerResult(player.playerId, player.view, results);
+    }
+
+    private static void apply(MinecraftServer server, PlayerRestrictionCache playerCache, List<PlayerResult> results, BiConsumer<ServerPlayer, PlayerResult> applier) {
+        for (PlayerResult result : results) {
+            ServerPlayer player = server.getPlayerList().getPlayer(result.playerId);
+            if (player == null || player.isCreative()) {
+                continue;
+            }
+            // A rank change during the scan is picked up by the next pass or sweep
+            if (playerCache.get(player).getDecision() != result.view.getDecision()) {
+                continue;
+            }
+            applier.accept(player, result);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package mchivelli.rankrestrictions.events;
+
+import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.inventory.AbstractContainerMenu;
+import net.minecraft.world.inventory.ContainerListener;
+import net.minecraft.world.inventory.Slot;
+import net.minecraft.world.item.ItemStack;
+
+import java.util.BitSet;
+
+/**
+ * Records which slots of a player's inventory received a new item since they were last checked.
+ * <p>
+ * It is attached as a slot listener to the player's inventory menu and to every container menu the
+ * player opens. Menus report changed slots when they sync to the client once per tick, so only the
+ * slots that actually changed have to be checked.
+ */
+public class InventorySlotTracker implements ContainerListener {
+    private final Inventory inventory;
+    private final BitSet dirtySlots = new BitSet();
+
+    public InventorySlotTracker(Inventory inventory) {
+        this.inventory = inventory;
+    }
+
+    public Inventory getInventory() {
+        return inventory;
+    }
+
+    @Override
+    public void slotChanged(AbstractContainerMenu menu, int menuSlot, ItemStack stack) {
+        // Slots that were emptied can't hold a restricted item
+        if (stack.isEmpty() || menuSlot < 0 || menuSlot >= menu.slots.size()) {
+            return;
+        }
+
+        Slot slot = menu.slots.get(menuSlot);
+        if (slot.container == inventory) {
+            dirtySlots.set(slot.getContainerSlot());
+        }
+    }
+
+    @Override
+    public void dataChanged(AbstractContainerMenu menu, int dataSlot, int value) {
+        // Not interested in menu data like furnace progress
+    }
+
+    /**
+     * Marks every occupied inventory slot as changed. The menus were already synced when the tracker is
+     * attached, so they won't report the items the player already holds.
+     */
+    public void markOccupiedSlots() {
+        for (int slot = 0; slot < inventory.getContainerSize(); slot++) {
+            if (!inventory.getItem(slot).isEmpty()) {
+                dirtySlots.set(slot);
+            }
+        }
+    }
+
+    public boolean hasDirtySlots() {
+        return !dirtySlots.isEmpty();
+    }
+
+    /**
+     * Gets the next changed inventory slot, as in {@link BitSet#nextSetBit(int)}.
+     */
+    public int nextDirtySlot(int fromSlot) {
+        return dirtySlots.nextSetBit(fromSlot);
+    }
+
+    public void clear() {
+        dirtySlots.clear();
+    }
+}
@@ -0,0 +1,70 @@
+package mchivelli.rankrestrictions.events;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Spreads full inventory sweeps of online players evenly over a window of ticks.
+ * <p>
+ * Players are kept in a round-robin queue. Every tick earns sweep credit of {@code players / window},
+ * so each player is swept about once per window no matter when they joined, and the sweeps of players
+ * who joined on the same tick don't land on the same tick. When the server's average tick time is over
+ * the target the credit is scaled down, deferring sweeps instead of adding to the lag.
+ */
+public class InventorySweepScheduler {
+    private static final double MIN_CREDIT_SCALE = 0.25;
+
+    private final Deque<UUID> queue = new ArrayDeque<>();
+    private double credit;
+
+    public void addPlayer(UUID playerId) {
+        if (!queue.contains(playerId)) {
+            queue.addLast(playerId);
+        }
+    }
+
+    public void removePlayer(UUID playerId) {
+        queue.remove(playerId);
+    }
+
+    /**
+     * Sweeps the players whose turn it is. Must be called once per server tick.
+     * @param server The server
+     * @param windowTicks The number of ticks over which every player should be swept once
+     * @param maxPlayersPerTick The maximum number of players swept in one tick
+     * @param targetMspt The average tick time in milliseconds above which sweeps are slowed down
+     * @param sweeper Performs the sweep of one player
+     */
+    public void tick(MinecraftServer server, int windowTicks, int maxPlayersPerTick, float targetMspt, Consumer<ServerPlayer> sweeper) {
+        if (queue.isEmpty()) {
+            credit = 0;
+            return;
+        }
+
+        float mspt = server.getAverageTickTime();
+        double scale = mspt <= targetMspt ? 1.0 : Math.max(MIN_CREDIT_SCALE, targetMspt / mspt);
+        // Credit is capped so deferred sweeps are not all caught up in one burst
+        credit = Math.min(maxPlayersPerTick, credit + scale * queue.size() / windowTicks);
+
+        int budget = (int) credit;
+        credit -= budget;
+        for (int i = 0; i < budget && !queue.isEmpty(); i++) {
+            UUID playerId = queue.pollFirst();
+            ServerPlayer player = server.getPlayerList().getPlayer(playerId);
+            if (player == null) {
+                continue; // Logged out without us noticing, drop it from the rotation
+            }
+            queue.addLast(playerId);
+            sweeper.accept(player);
+        }
+    }
+
+    public int getQueuedPlayers() {
+        return queue.size();
+    }
+}
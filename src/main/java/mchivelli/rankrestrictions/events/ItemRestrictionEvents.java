@@ -1,160 +1,318 @@
 package mchivelli.rankrestrictions.events;
 
 import mchivelli.rankrestrictions.RankRestrictions;
+import mchivelli.rankrestrictions.cache.MessageCooldowns;
+import mchivelli.rankrestrictions.cache.PlayerRestrictionView;
+import mchivelli.rankrestrictions.config.RankRestrictionsConfig;
+import mchivelli.rankrestrictions.config.RestrictionIndex;
+import mchivelli.rankrestrictions.metrics.EventRecorder;
+import mchivelli.rankrestrictions.metrics.RestrictionMetrics;
 import mchivelli.rankrestrictions.util.FTBRanksHelper;
 import net.minecraft.ChatFormatting;
 import net.minecraft.network.chat.Component;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.InteractionResult;
+import net.minecraft.world.entity.Entity;
 import net.minecraft.world.entity.EquipmentSlot;
 import net.minecraft.world.entity.item.ItemEntity;
 import net.minecraft.world.entity.player.Inventory;
+import net.minecraft.world.entity.player.Player;
+import net.minecraft.world.item.Item;
 import net.minecraft.world.item.ItemStack;
 import net.minecraft.world.level.block.Block;
-import net.minecraft.world.level.block.entity.BlockEntity;
+import net.minecraft.world.level.block.state.BlockState;
 import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.event.entity.living.LivingEquipmentChangeEvent;
+import net.minecraftforge.event.entity.player.AttackEntityEvent;
 import net.minecraftforge.event.entity.player.EntityItemPickupEvent;
+import net.minecraftforge.event.entity.player.PlayerContainerEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
 import net.minecraftforge.event.entity.player.PlayerInteractEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.registries.ForgeRegistries;
 
-import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class ItemRestrictionEvents {
 
-    // Cooldown for item pickup denial messages: PlayerUUID -> <ItemEntityID, LastMessageTimestamp>
-    private static final Map<UUID, Map<Integer, Long>> pickupMessageCooldowns = new ConcurrentHashMap<>();
+    // Cooldown for item pickup denial messages, per player and item entity
     private static final long PICKUP_MESSAGE_COOLDOWN_MS = 5000; // 5 seconds
+    private static final MessageCooldowns pickupMessageCooldowns = new MessageCooldowns(PICKUP_MESSAGE_COOLDOWN_MS);
+    // Same for entity interaction and attack messages, per player and target entity
+    private static final long ENTITY_MESSAGE_COOLDOWN_MS = 2000; // 2 seconds
+    private static final MessageCooldowns entityMessageCooldowns = new MessageCooldowns(ENTITY_MESSAGE_COOLDOWN_MS);
+
+    // Changed-slot trackers of online players: PlayerUUID -> tracker attached to the player's menus
+    private final Map<UUID, InventorySlotTracker> slotTrackers = new ConcurrentHashMap<>();
+    private final InventorySweepScheduler sweepScheduler = new InventorySweepScheduler();
+    private final EnforcementPass enforcementPass = new EnforcementPass();
+    private final RestrictionMetrics metrics;
+    private final EventRecorder recorder;
+
+    public ItemRestrictionEvents(RestrictionMetrics metrics, EventRecorder recorder) {
+        this.metrics = metrics;
+        this.recorder = recorder;
+    }
 
     @SubscribeEvent
     public void onPlayerAttemptPickupItem(EntityItemPickupEvent event) {
-        if (!(event.getEntity() instanceof ServerPlayer player)) return;
+        long start = metrics.start();
+        boolean denied = checkPickup(event);
+        metrics.record(RestrictionMetrics.Handler.PICKUP, start, denied ? 1 : 0);
+    }
+
+    private boolean checkPickup(EntityItemPickupEvent event) {
+        if (!(event.getEntity() instanceof ServerPlayer player)) return false;
 
         ItemEntity itemEntity = event.getItem();
         ItemStack itemStack = itemEntity.getItem();
 
         if (player.isCreative() || itemStack.isEmpty()) {
-            return;
+            return false;
         }
 
         if (!RankRestrictions.getInstance().getConfig().isConfigLoaded() || !FTBRanksHelper.isApiAvailable()) {
-            return;
+            return false;
         }
 
-        ResourceLocation itemId = ForgeRegistries.ITEMS.getKey(itemStack.getItem());
-        if (itemId == null) {
-            return;
+        Item item = itemStack.getItem();
+        int itemIndex = RestrictionIndex.itemId(item);
+        if (itemIndex < 0) {
+            return false;
         }
 
-        Collection<Object> playerRanks = FTBRanksHelper.getPlayerRanks(player);
-        if (playerRanks.isEmpty()) {
-            return;
+        long decisionStart = recorder.start();
+        PlayerRestrictionView view = RankRestrictions.getInstance().getPlayerCache().get(player);
+        boolean restricted = view.isStackRestricted(itemIndex, itemStack);
+        recorder.record(player, EventRecorder.Kind.PICKUP, itemIndex, view.getDecision(), restricted, decisionStart);
+        if (!restricted) {
+            return false;
         }
 
-        for (Object rankObj : playerRanks) {
-            String rankId = FTBRanksHelper.getRankName(rankObj);
-            if (rankId == null || rankId.isEmpty()) continue;
-
-            if (RankRestrictions.getInstance().getConfig().isItemRestrictedForRank(rankId, itemId)) {
-                event.setCanceled(true);
-
-                UUID playerUUID = player.getUUID();
-                int entityId = itemEntity.getId();
-                long currentTime = System.currentTimeMillis();
-
-                pickupMessageCooldowns.putIfAbsent(playerUUID, new ConcurrentHashMap<>());
-                Map<Integer, Long> playerCooldowns = pickupMessageCooldowns.get(playerUUID);
-                long lastMessageTime = playerCooldowns.getOrDefault(entityId, 0L);
+        event.setCanceled(true);
+        String rankId = view.getRestrictingRank(itemIndex, itemStack);
+        recordItemHit(rankId, itemIndex, itemStack);
 
-                String itemNameForLog = itemStack.getDisplayName().getString();
-                if (itemNameForLog.isEmpty()) itemNameForLog = itemId.toString();
-
-                if (currentTime - lastMessageTime > PICKUP_MESSAGE_COOLDOWN_MS) {
-                    String itemName = itemStack.getDisplayName().getString();
-                    if (itemName.isEmpty()) {
-                        itemName = itemId.toString();
-                    }
-                    String messageFormat = RankRestrictions.getInstance().getConfig().getRestrictionMessage(itemId, rankId);
-                    String rawMessage = messageFormat.replace("%item%", itemName);
-                    player.sendSystemMessage(Component.literal(rawMessage.replace('&', ChatFormatting.PREFIX_CODE)));
-                    playerCooldowns.put(entityId, currentTime);
-                }
-                
-                RankRestrictions.LOGGER.info("Prevented player " + player.getName().getString() +
-                                          " (rank " + rankId + ") from picking up restricted item " + itemNameForLog);
-                break;
+        // Pickup is attempted every tick while the player stands on the item, so only message and log once per cooldown
+        if (pickupMessageCooldowns.tryAcquire(player.getUUID(), itemEntity.getId(), System.currentTimeMillis())) {
+            ResourceLocation itemId = ForgeRegistries.ITEMS.getKey(item);
+            String itemName = itemStack.getDisplayName().getString();
+            if (itemName.isEmpty()) {
+                itemName = itemId.toString();
             }
+            String messageFormat = RankRestrictions.getInstance().getConfig().getRestrictionMessage(itemStack, rankId);
+            String rawMessage = messageFormat.replace("%item%", itemName);
+            player.sendSystemMessage(Component.literal(rawMessage.replace('&', ChatFormatting.PREFIX_CODE)));
+
+            RankRestrictions.LOGGER.info("Prevented player " + player.getName().getString() +
+                                      " (rank " + rankId + ") from picking up restricted item " + itemName);
         }
+        return true;
     }
 
     @SubscribeEvent
     public void onPlayerRightClickItem(PlayerInteractEvent.RightClickItem event) {
-        if (!(event.getEntity() instanceof ServerPlayer player)) return;
+        long start = metrics.start();
+        boolean denied = checkRightClickItem(event);
+        metrics.record(RestrictionMetrics.Handler.USE_ITEM, start, denied ? 1 : 0);
+    }
+
+    private boolean checkRightClickItem(PlayerInteractEvent.RightClickItem event) {
+        if (!(event.getEntity() instanceof ServerPlayer player)) return false;
         
         ItemStack itemStack = event.getItemStack();
 
         if (player.isCreative() || itemStack.isEmpty()) {
-            return;
+            return false;
         }
 
         if (!RankRestrictions.getInstance().getConfig().isConfigLoaded() || !FTBRanksHelper.isApiAvailable()) {
+            return false;
+        }
+
+        Item item = itemStack.getItem();
+        int itemIndex = RestrictionIndex.itemId(item);
+        if (itemIndex < 0) {
+            return false;
+        }
+
+        long decisionStart = recorder.start();
+        PlayerRestrictionView view = RankRestrictions.getInstance().getPlayerCache().get(player);
+        boolean restricted = view.isStackRestricted(itemIndex, itemStack);
+        recorder.record(player, EventRecorder.Kind.USE_ITEM, itemIndex, view.getDecision(), restricted, decisionStart);
+        if (!restricted) {
+            return false;
+        }
+
+        String rankId = view.getRestrictingRank(itemIndex, itemStack);
+        recordItemHit(rankId, itemIndex, itemStack);
+        event.setCanceled(true);
+        String itemName = itemStack.getDisplayName().getString();
+        if (itemName.isEmpty()) {
+            itemName = String.valueOf(ForgeRegistries.ITEMS.getKey(item));
+        }
+        String messageFormat = RankRestrictions.getInstance().getConfig().getRestrictionMessage(itemStack, rankId);
+        String rawMessage = messageFormat.replace("%item%", itemName);
+        player.sendSystemMessage(Component.literal(rawMessage.replace('&', ChatFormatting.PREFIX_CODE)));
+        
+        RankRestrictions.LOGGER.info("Prevented player " + player.getName().getString() +
+                                  " (rank " + rankId + ") from using restricted item " + itemName);
+        return true;
+    }
+
+    @SubscribeEvent
+    public void onPlayerTick(TickEvent.PlayerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END || !(event.player instanceof ServerPlayer serverPlayer)) {
             return;
         }
 
-        ResourceLocation itemId = ForgeRegistries.ITEMS.getKey(itemStack.getItem());
-        if (itemId == null) {
+        InventorySlotTracker tracker = slotTrackers.get(serverPlayer.getUUID());
+        if (tracker == null || !tracker.hasDirtySlots()) {
             return;
         }
 
-        Collection<Object> playerRanks = FTBRanksHelper.getPlayerRanks(player);
-        if (playerRanks.isEmpty()) {
+        if (RankRestrictions.getInstance().getConfig().isConfigLoaded() && FTBRanksHelper.isApiAvailable()) {
+            long start = metrics.start();
+            int removed = checkChangedSlots(serverPlayer, tracker);
+            metrics.record(RestrictionMetrics.Handler.CHANGED_SLOTS, start, removed);
+        }
+        tracker.clear();
+    }
+
+    @SubscribeEvent
+    public void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) {
             return;
         }
 
-        for (Object rankObj : playerRanks) {
-            String rankId = FTBRanksHelper.getRankName(rankObj);
-            if (rankId == null || rankId.isEmpty()) continue;
+        RankRestrictionsConfig config = RankRestrictions.getInstance().getConfig();
+        sweepScheduler.tick(event.getServer(), config.getFullSweepIntervalTicks(), config.getSweepMaxPlayersPerTick(),
+            config.getSweepTargetMspt(), this::sweepPlayer);
+        if (config.isConfigLoaded() && FTBRanksHelper.isApiAvailable()) {
+            enforcementPass.tick(event.getServer(), config, RankRestrictions.getInstance().getPlayerCache(), this::applyEnforcementPass);
+        }
+    }
+
+    /**
+     * Re-checks every online player's inventory soon, for changes that the compiled index doesn't reflect,
+     * such as FTB Ranks reloading its ranks.
+     */
+    public void requestEnforcementPass() {
+        enforcementPass.request();
+    }
 
-            if (RankRestrictions.getInstance().getConfig().isItemRestrictedForRank(rankId, itemId)) {
-                event.setCanceled(true);
-                String itemName = itemStack.getDisplayName().getString();
-                if (itemName.isEmpty()) {
-                    itemName = itemId.toString();
+    private void applyEnforcementPass(ServerPlayer player, EnforcementPass.PlayerResult result) {
+        long start = metrics.start();
+        Inventory inventory = player.getInventory();
+        int removed = 0;
+        ItemStack firstRemoved = null;
+        String firstRankId = null;
+        for (EnforcementPass.SlotResult slotResult : result.slots()) {
+            int slot = slotResult.slot();
+            // The slot changed since it was copied, the changed-slot check covers it
+            if (slot >= inventory.getContainerSize() || !ItemStack.matches(inventory.getItem(slot), slotResult.original())) {
+                continue;
+            }
+            List<ItemStack> removedStacks;
+            if (slotResult.restricted()) {
+                removedStacks = List.of(inventory.getItem(slot));
+                inventory.setItem(slot, ItemStack.EMPTY);
+            } else {
+                ItemStack replacement = inventory.getItem(slot).copy();
+                removedStacks = ContainerScanner.removeContents(replacement, slotResult.contentPaths());
+                inventory.setItem(slot, replacement);
+            }
+
+            for (ItemStack removedStack : removedStacks) {
+                int itemIndex = RestrictionIndex.itemId(removedStack.getItem());
+                String rankId = result.view().getRestrictingRank(itemIndex, removedStack);
+                recordItemHit(rankId, itemIndex, removedStack);
+                RankRestrictions.LOGGER.info("Removed restricted item " + removedStack.getDisplayName().getString() +
+                                          " from player " + player.getName().getString() + "'s inventory after a restriction change (rank " + rankId + ")");
+                if (firstRemoved == null) {
+                    firstRemoved = removedStack;
+                    firstRankId = rankId;
                 }
-                String messageFormat = RankRestrictions.getInstance().getConfig().getRestrictionMessage(itemId, rankId);
-                String rawMessage = messageFormat.replace("%item%", itemName);
-                player.sendSystemMessage(Component.literal(rawMessage.replace('&', ChatFormatting.PREFIX_CODE)));
-                
-                RankRestrictions.LOGGER.info("Prevented player " + player.getName().getString() +
-                                          " (rank " + rankId + ") from using restricted item " + itemName);
-                break;
+                removed++;
             }
         }
+        // One message per player is enough
+        if (firstRemoved != null) {
+            sendRestrictionRemovedMessage(player, firstRemoved, firstRankId);
+        }
+        metrics.record(RestrictionMetrics.Handler.ENFORCEMENT_PASS, start, removed);
+    }
+
+    private void sweepPlayer(ServerPlayer player) {
+        if (!RankRestrictions.getInstance().getConfig().isConfigLoaded() || !FTBRanksHelper.isApiAvailable()) {
+            return;
+        }
+        long start = metrics.start();
+        int removed = checkPlayerInventory(player);
+        metrics.record(RestrictionMetrics.Handler.FULL_SWEEP, start, removed);
+
+        InventorySlotTracker tracker = slotTrackers.get(player.getUUID());
+        if (tracker != null) {
+            tracker.clear();
+        }
     }
 
     @SubscribeEvent
-    public void onPlayerTick(TickEvent.PlayerTickEvent event) {
-        if (event.phase == TickEvent.Phase.END &&
-            event.player instanceof ServerPlayer serverPlayer &&
-            event.player.tickCount % 600 == 0) { // Check every 30 seconds (600 ticks)
+    public void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
+        if (event.getEntity() instanceof ServerPlayer serverPlayer) {
+            trackInventoryMenu(serverPlayer);
+            sweepScheduler.addPlayer(serverPlayer.getUUID());
+        }
+    }
+
+    @SubscribeEvent
+    public void onPlayerRespawn(PlayerEvent.PlayerRespawnEvent event) {
+        // Respawning creates a new player entity with a new inventory menu
+        if (event.getEntity() instanceof ServerPlayer serverPlayer) {
+            trackInventoryMenu(serverPlayer);
+        }
+    }
 
-            if (!RankRestrictions.getInstance().getConfig().isConfigLoaded() || !FTBRanksHelper.isApiAvailable()) {
-                return;
+    @SubscribeEvent
+    public void onContainerOpen(PlayerContainerEvent.Open event) {
+        // While a container is open only its menu syncs, and it includes the player's inventory slots
+        if (event.getEntity() instanceof ServerPlayer serverPlayer) {
+            InventorySlotTracker tracker = slotTrackers.get(serverPlayer.getUUID());
+            if (tracker != null && tracker.getInventory() == serverPlayer.getInventory()) {
+                event.getContainer().addSlotListener(tracker);
             }
-            checkPlayerInventory(serverPlayer);
         }
     }
-    
+
+    @SubscribeEvent
+    public void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        slotTrackers.remove(event.getEntity().getUUID());
+        pickupMessageCooldowns.removePlayer(event.getEntity().getUUID());
+        entityMessageCooldowns.removePlayer(event.getEntity().getUUID());
+        sweepScheduler.removePlayer(event.getEntity().getUUID());
+    }
+
+    private void trackInventoryMenu(ServerPlayer player) {
+        InventorySlotTracker tracker = new InventorySlotTracker(player.getInventory());
+        slotTrackers.put(player.getUUID(), tracker);
+        // The menu was synced before login and respawn, so it only reports later changes. Mark what the player
+        // already holds so the whole inventory gets checked on the next tick.
+        tracker.markOccupiedSlots();
+        player.inventoryMenu.addSlotListener(tracker);
+    }
+
     @SubscribeEvent
     public void onEquipmentChange(LivingEquipmentChangeEvent event) {
         if (event.getEntity() instanceof ServerPlayer serverPlayer) {
             ItemStack newStack = event.getTo();
             if (!newStack.isEmpty()) {
-                checkEquippedItem(serverPlayer, event.getSlot(), newStack);
+                long start = metrics.start();
+                boolean denied = checkEquippedItem(serverPlayer, event.getSlot(), newStack);
+                metrics.record(RestrictionMetrics.Handler.EQUIP, start, denied ? 1 : 0);
             }
         }
     }
@@ -167,155 +325,311 @@ public class ItemRestrictionEvents {
         if (itemName.isEmpty()) {
             itemName = itemId.toString();
         }
-        String messageFormat = RankRestrictions.getInstance().getConfig().getRestrictionMessage(itemId, rankIdContext);
+        String messageFormat = RankRestrictions.getInstance().getConfig().getRestrictionMessage(restrictedStack, rankIdContext);
         String rawMessage = messageFormat.replace("%item%", itemName);
         player.sendSystemMessage(Component.literal(rawMessage.replace('&', ChatFormatting.PREFIX_CODE)));
     }
 
-    private void checkPlayerInventory(ServerPlayer player) {
+    /**
+     * Checks every slot of the player's inventory.
+     * @return The number of restricted stacks removed.
+     */
+    private int checkPlayerInventory(ServerPlayer player) {
         if (player.isCreative()) {
-            return;
+            return 0;
         }
         
         if (!RankRestrictions.getInstance().getConfig().isConfigLoaded() || !FTBRanksHelper.isApiAvailable()) {
-            return;
+            return 0;
         }
         
-        Collection<Object> playerRanks = FTBRanksHelper.getPlayerRanks(player);
-        if (playerRanks.isEmpty()) {
-            return;
+        PlayerRestrictionView view = RankRestrictions.getInstance().getPlayerCache().get(player);
+        if (view.isEmpty()) {
+            return 0;
         }
         
         Inventory inventory = player.getInventory();
         
+        int removed = 0;
         for (int i = 0; i < inventory.getContainerSize(); i++) {
-            ItemStack stackInSlot = inventory.getItem(i);
-            
-            if (stackInSlot.isEmpty()) {
-                continue;
-            }
-            
-            ResourceLocation currentItemId = ForgeRegistries.ITEMS.getKey(stackInSlot.getItem());
-            if (currentItemId == null) {
-                continue;
-            }
-            
-            for (Object rankObj : playerRanks) {
-                String rankId = FTBRanksHelper.getRankName(rankObj);
-                if (rankId == null || rankId.isEmpty()) continue;
-
-                if (RankRestrictions.getInstance().getConfig().isItemRestrictedForRank(rankId, currentItemId)) {
-                    inventory.setItem(i, ItemStack.EMPTY);
-                    
-                    String itemNameForLog = stackInSlot.getDisplayName().getString();
-                    if (itemNameForLog.isEmpty()) itemNameForLog = currentItemId.toString();
-
-                    RankRestrictions.LOGGER.info("Removed restricted item " + itemNameForLog +
-                                              " from player " + player.getName().getString() + "'s inventory (rank " + rankId + ")");
-                    sendRestrictionRemovedMessage(player, stackInSlot, rankId);
-                    break; 
-                }
-            }
+            removed += checkInventorySlot(player, view, inventory, i);
+        }
+        return removed;
+    }
+
+    /**
+     * Checks the inventory slots that changed since the last check.
+     * @return The number of restricted stacks removed.
+     */
+    private int checkChangedSlots(ServerPlayer player, InventorySlotTracker tracker) {
+        if (player.isCreative()) {
+            return 0;
+        }
+
+        PlayerRestrictionView view = RankRestrictions.getInstance().getPlayerCache().get(player);
+        if (view.isEmpty()) {
+            return 0;
+        }
+
+        Inventory inventory = tracker.getInventory();
+        int removed = 0;
+        for (int slot = tracker.nextDirtySlot(0); slot >= 0 && slot < inventory.getContainerSize(); slot = tracker.nextDirtySlot(slot + 1)) {
+            removed += checkInventorySlot(player, view, inventory, slot);
         }
+        return removed;
     }
 
-    private void checkEquippedItem(ServerPlayer player, EquipmentSlot slot, ItemStack equippedStack) {
+    /**
+     * Checks one inventory slot, and the contents of a container item in it.
+     * @return The number of restricted stacks removed.
+     */
+    private int checkInventorySlot(ServerPlayer player, PlayerRestrictionView view, Inventory inventory, int slot) {
+        ItemStack stackInSlot = inventory.getItem(slot);
+        if (stackInSlot.isEmpty()) {
+            return 0;
+        }
+        
+        int itemIndex = RestrictionIndex.itemId(stackInSlot.getItem());
+        if (!view.isStackRestricted(itemIndex, stackInSlot)) {
+            int scanDepth = RankRestrictions.getInstance().getConfig().getContainerScanDepth();
+            return scanDepth > 0 ? checkContainerContents(player, view, inventory, stackInSlot, scanDepth) : 0;
+        }
+        
+        String rankId = view.getRestrictingRank(itemIndex, stackInSlot);
+        recordItemHit(rankId, itemIndex, stackInSlot);
+        inventory.setItem(slot, ItemStack.EMPTY);
+        
+        String itemNameForLog = stackInSlot.getDisplayName().getString();
+        if (itemNameForLog.isEmpty()) itemNameForLog = String.valueOf(ForgeRegistries.ITEMS.getKey(stackInSlot.getItem()));
+
+        RankRestrictions.LOGGER.info("Removed restricted item " + itemNameForLog +
+                                  " from player " + player.getName().getString() + "'s inventory (rank " + rankId + ")");
+        sendRestrictionRemovedMessage(player, stackInSlot, rankId);
+        return 1;
+    }
+
+    /**
+     * Removes restricted items from inside a container item, such as a shulker box or backpack.
+     * @return The number of restricted stacks removed.
+     */
+    private int checkContainerContents(ServerPlayer player, PlayerRestrictionView view, Inventory inventory, ItemStack container, int scanDepth) {
+        List<ItemStack> removedStacks = ContainerScanner.strip(container, view, scanDepth);
+        if (removedStacks.isEmpty()) {
+            return 0;
+        }
+        inventory.setChanged();
+
+        String containerName = container.getDisplayName().getString();
+        for (ItemStack removedStack : removedStacks) {
+            int itemIndex = RestrictionIndex.itemId(removedStack.getItem());
+            String rankId = view.getRestrictingRank(itemIndex, removedStack);
+            recordItemHit(rankId, itemIndex, removedStack);
+            RankRestrictions.LOGGER.info("Removed restricted item " + removedStack.getDisplayName().getString() + " from " + containerName +
+                                      " in player " + player.getName().getString() + "'s inventory (rank " + rankId + ")");
+        }
+        // One message per container is enough
+        ItemStack first = removedStacks.get(0);
+        sendRestrictionRemovedMessage(player, first, view.getRestrictingRank(RestrictionIndex.itemId(first.getItem()), first));
+        return removedStacks.size();
+    }
+
+    private boolean checkEquippedItem(ServerPlayer player, EquipmentSlot slot, ItemStack equippedStack) {
         if (player.isCreative() || equippedStack.isEmpty()) {
-            return;
+            return false;
         }
 
         if (!RankRestrictions.getInstance().getConfig().isConfigLoaded() || !FTBRanksHelper.isApiAvailable()) {
-            return;
+            return false;
         }
 
-        ResourceLocation itemId = ForgeRegistries.ITEMS.getKey(equippedStack.getItem());
-        if (itemId == null) {
-            return;
+        Item item = equippedStack.getItem();
+        int itemIndex = RestrictionIndex.itemId(item);
+        if (itemIndex < 0) {
+            return false;
         }
 
-        Collection<Object> playerRanks = FTBRanksHelper.getPlayerRanks(player);
-        if (playerRanks.isEmpty()) {
-            return;
+        long decisionStart = recorder.start();
+        PlayerRestrictionView view = RankRestrictions.getInstance().getPlayerCache().get(player);
+        boolean restricted = view.isStackRestricted(itemIndex, equippedStack);
+        recorder.record(player, EventRecorder.Kind.EQUIP, itemIndex, view.getDecision(), restricted, decisionStart);
+        if (!restricted) {
+            return false;
         }
         
-        for (Object rankObj : playerRanks) {
-            String rankId = FTBRanksHelper.getRankName(rankObj);
-            if (rankId == null || rankId.isEmpty()) {
-                RankRestrictions.LOGGER.trace("Empty or null rankId found for player " + player.getName().getString() + ", skipping this rank object during equipment check.");
-                continue;
-            }
-            
-            if (RankRestrictions.getInstance().getConfig().isItemRestrictedForRank(rankId, itemId)) {
-                ItemStack itemToReturn = equippedStack.copy();
-                player.setItemSlot(slot, ItemStack.EMPTY); // Unequip the item
-                
-                if (!player.getInventory().add(itemToReturn)) { // Attempt to return the item to player's inventory
-                    player.drop(itemToReturn, false); // Drop if inventory is full
-                }
-                
-                String itemNameForMessage = itemToReturn.getDisplayName().getString();
-                if (itemNameForMessage.isEmpty()) itemNameForMessage = itemId.toString();
-
-                String messageFormat = RankRestrictions.getInstance().getConfig().getRestrictionMessage(itemId, rankId);
-                String rawMessage = messageFormat.replace("%item%", itemNameForMessage);
-                player.sendSystemMessage(Component.literal(rawMessage.replace('&', ChatFormatting.PREFIX_CODE)));
-                
-                String itemNameForLog = equippedStack.getDisplayName().getString();
-                if (itemNameForLog.isEmpty()) itemNameForLog = itemId.toString();
-                RankRestrictions.LOGGER.info("Unequipped restricted item " + itemNameForLog + " from slot " + slot.getName() + 
-                                           " for player " + player.getName().getString() + " (rank " + rankId + ")");
-                break;
-            }
+        String rankId = view.getRestrictingRank(itemIndex, equippedStack);
+        recordItemHit(rankId, itemIndex, equippedStack);
+        ResourceLocation itemId = ForgeRegistries.ITEMS.getKey(item);
+        ItemStack itemToReturn = equippedStack.copy();
+        player.setItemSlot(slot, ItemStack.EMPTY); // Unequip the item
+        
+        if (!player.getInventory().add(itemToReturn)) { // Attempt to return the item to player's inventory
+            player.drop(itemToReturn, false); // Drop if inventory is full
         }
+        
+        String itemNameForMessage = itemToReturn.getDisplayName().getString();
+        if (itemNameForMessage.isEmpty()) itemNameForMessage = itemId.toString();
+
+        String messageFormat = RankRestrictions.getInstance().getConfig().getRestrictionMessage(equippedStack, rankId);
+        String rawMessage = messageFormat.replace("%item%", itemNameForMessage);
+        player.sendSystemMessage(Component.literal(rawMessage.replace('&', ChatFormatting.PREFIX_CODE)));
+        
+        String itemNameForLog = equippedStack.getDisplayName().getString();
+        if (itemNameForLog.isEmpty()) itemNameForLog = itemId.toString();
+        RankRestrictions.LOGGER.info("Unequipped restricted item " + itemNameForLog + " from slot " + slot.getName() + 
+                                   " for player " + player.getName().getString() + " (rank " + rankId + ")");
+        return true;
     }
     
     @SubscribeEvent
     public void onPlayerRightClickBlock(PlayerInteractEvent.RightClickBlock event) {
-        if (!(event.getEntity() instanceof ServerPlayer player)) return;
+        long start = metrics.start();
+        boolean denied = checkRightClickBlock(event);
+        metrics.record(RestrictionMetrics.Handler.USE_BLOCK, start, denied ? 1 : 0);
+    }
+
+    private boolean checkRightClickBlock(PlayerInteractEvent.RightClickBlock event) {
+        if (!(event.getEntity() instanceof ServerPlayer player)) return false;
         
         if (player.isCreative()) {
-            return;
+            return false;
         }
 
         if (!RankRestrictions.getInstance().getConfig().isConfigLoaded() || !FTBRanksHelper.isApiAvailable()) {
-            return;
+            return false;
         }
 
-        Block clickedBlock = event.getLevel().getBlockState(event.getPos()).getBlock();
-        ResourceLocation blockId = ForgeRegistries.BLOCKS.getKey(clickedBlock);
-        if (blockId == null) {
-            return;
+        // Most packs have no block rules at all, so bail out before touching the level
+        RestrictionIndex index = RankRestrictions.getInstance().getConfig().getRestrictionIndex();
+        if (!index.hasBlockRules()) {
+            return false;
         }
 
-        // Check if the block has a block entity (like furnaces, chests, modded machines)
-        BlockEntity blockEntity = event.getLevel().getBlockEntity(event.getPos());
-        if (blockEntity == null) {
-            return; // Only restrict blocks with block entities (interactive blocks)
+        long decisionStart = recorder.start();
+        PlayerRestrictionView view = RankRestrictions.getInstance().getPlayerCache().get(player);
+        if (!view.hasBlockRestrictions()) {
+            return false;
         }
 
-        Collection<Object> playerRanks = FTBRanksHelper.getPlayerRanks(player);
-        if (playerRanks.isEmpty()) {
-            return;
+        BlockState clickedState = event.getLevel().getBlockState(event.getPos());
+        Block clickedBlock = clickedState.getBlock();
+        int blockIndex = RestrictionIndex.blockId(clickedBlock);
+        // Only restrict blocks with block entities (interactive blocks like furnaces, chests, modded machines)
+        boolean restricted = view.isBlockRestricted(blockIndex) && clickedState.hasBlockEntity();
+        recorder.record(player, EventRecorder.Kind.USE_BLOCK, blockIndex, view.getDecision(), restricted, decisionStart);
+        if (!restricted) {
+            return false;
         }
 
-        for (Object rankObj : playerRanks) {
-            String rankId = FTBRanksHelper.getRankName(rankObj);
-            if (rankId == null || rankId.isEmpty()) continue;
+        String rankId = view.getRestrictingBlockRank(blockIndex);
+        if (metrics.isEnabled()) {
+            metrics.recordRestrictionHit(rankId, index.getMatchingBlockSetIndex(rankId, blockIndex));
+        }
+        event.setCanceled(true);
+        String blockName = clickedBlock.getName().getString();
+        if (blockName.isEmpty()) {
+            blockName = String.valueOf(ForgeRegistries.BLOCKS.getKey(clickedBlock));
+        }
+        String messageFormat = RankRestrictions.getInstance().getConfig().getBlockRestrictionMessage(clickedBlock, rankId);
+        String rawMessage = messageFormat.replace("%item%", blockName);
+        player.sendSystemMessage(Component.literal(rawMessage.replace('&', ChatFormatting.PREFIX_CODE)));
+        
+        RankRestrictions.LOGGER.info("Prevented player " + player.getName().getString() +
+                                  " (rank " + rankId + ") from using restricted block " + blockName);
+        return true;
+    }
 
-            if (RankRestrictions.getInstance().getConfig().isBlockRestrictedForRank(rankId, blockId)) {
-                event.setCanceled(true);
-                String blockName = clickedBlock.getName().getString();
-                if (blockName.isEmpty()) {
-                    blockName = blockId.toString();
-                }
-                String messageFormat = RankRestrictions.getInstance().getConfig().getBlockRestrictionMessage(blockId, rankId);
-                String rawMessage = messageFormat.replace("%item%", blockName);
-                player.sendSystemMessage(Component.literal(rawMessage.replace('&', ChatFormatting.PREFIX_CODE)));
-                
-                RankRestrictions.LOGGER.info("Prevented player " + player.getName().getString() +
-                                          " (rank " + rankId + ") from using restricted block " + blockName);
-                break;
+    @SubscribeEvent
+    public void onPlayerInteractEntity(PlayerInteractEvent.EntityInteract event) {
+        long start = metrics.start();
+        boolean denied = checkEntity(event.getEntity(), event.getTarget(), EventRecorder.Kind.INTERACT_ENTITY, "interacting with");
+        if (denied) {
+            event.setCanceled(true);
+            event.setCancellationResult(InteractionResult.FAIL);
+        }
+        metrics.record(RestrictionMetrics.Handler.INTERACT_ENTITY, start, denied ? 1 : 0);
+    }
+
+    // Fired before EntityInteract for entities with a position-specific interaction, like armor stands
+    @SubscribeEvent
+    public void onPlayerInteractEntitySpecific(PlayerInteractEvent.EntityInteractSpecific event) {
+        long start = metrics.start();
+        boolean denied = checkEntity(event.getEntity(), event.getTarget(), EventRecorder.Kind.INTERACT_ENTITY, "interacting with");
+        if (denied) {
+            event.setCanceled(true);
+            event.setCancellationResult(InteractionResult.FAIL);
+        }
+        metrics.record(RestrictionMetrics.Handler.INTERACT_ENTITY, start, denied ? 1 : 0);
+    }
+
+    @SubscribeEvent
+    public void onPlayerAttackEntity(AttackEntityEvent event) {
+        long start = metrics.start();
+        boolean denied = checkEntity(event.getEntity(), event.getTarget(), EventRecorder.Kind.ATTACK_ENTITY, "attacking");
+        if (denied) {
+            event.setCanceled(true);
+        }
+        metrics.record(RestrictionMetrics.Handler.ATTACK_ENTITY, start, denied ? 1 : 0);
+    }
+
+    /**
+     * Checks whether the player may interact with or attack the target, by the target's entity type.
+     * @param action How the denial is described in the log.
+     * @return True if the event must be cancelled.
+     */
+    private boolean checkEntity(Player entity, Entity target, EventRecorder.Kind kind, String action) {
+        if (!(entity instanceof ServerPlayer player) || target == null) return false;
+
+        if (player.isCreative()) {
+            return false;
+        }
+
+        if (!RankRestrictions.getInstance().getConfig().isConfigLoaded() || !FTBRanksHelper.isApiAvailable()) {
+            return false;
+        }
+
+        // Mob farms fire these constantly, and most packs have no entity rules at all
+        RestrictionIndex index = RankRestrictions.getInstance().getConfig().getRestrictionIndex();
+        if (!index.hasEntityRules()) {
+            return false;
+        }
+
+        long decisionStart = recorder.start();
+        PlayerRestrictionView view = RankRestrictions.getInstance().getPlayerCache().get(player);
+        if (!view.hasEntityRestrictions()) {
+            return false;
+        }
+
+        int entityTypeIndex = RestrictionIndex.entityTypeId(target.getType());
+        boolean restricted = view.isEntityRestricted(entityTypeIndex);
+        recorder.record(player, kind, entityTypeIndex, view.getDecision(), restricted, decisionStart);
+        if (!restricted) {
+            return false;
+        }
+
+        String rankId = view.getRestrictingEntityRank(entityTypeIndex);
+        if (metrics.isEnabled()) {
+            metrics.recordRestrictionHit(rankId, index.getMatchingEntitySetIndex(rankId, entityTypeIndex));
+        }
+        // Interactions fire once per hand and attacks once per swing, so only message and log once per cooldown
+        if (entityMessageCooldowns.tryAcquire(player.getUUID(), target.getId(), System.currentTimeMillis())) {
+            String entityName = target.getType().getDescription().getString();
+            if (entityName.isEmpty()) {
+                entityName = String.valueOf(ForgeRegistries.ENTITY_TYPES.getKey(target.getType()));
             }
+            String messageFormat = RankRestrictions.getInstance().getConfig().getEntityRestrictionMessage(target.getType(), rankId);
+            String rawMessage = messageFormat.replace("%item%", entityName);
+            player.sendSystemMessage(Component.literal(rawMessage.replace('&', ChatFormatting.PREFIX_CODE)));
+
+            RankRestrictions.LOGGER.info("Prevented player " + player.getName().getString() +
+                                      " (rank " + rankId + ") from " + action + " restricted entity " + entityName);
+        }
+        return true;
+    }
+
+    private void recordItemHit(String rankId, int itemIndex, ItemStack stack) {
+        if (metrics.isEnabled()) {
+            RestrictionIndex index = RankRestrictions.getInstance().getConfig().getRestrictionIndex();
+            metrics.recordRestrictionHit(rankId, index.getMatchingStackSetIndex(rankId, itemIndex, stack.getTag()));
         }
     }
 }
@@ -0,0 +1,236 @@
+package mchivelli.rankrestrictions.metrics;
+
+import mchivelli.rankrestrictions.RankRestrictions;
+import mchivelli.rankrestrictions.config.RestrictionIndex;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.server.level.ServerPlayer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Records the restriction decisions of the event handlers, so real traffic can be replayed against another
+ * build to compare verdicts and timings.
+ * <p>
+ * Every decision is one {@value #RECORD_SIZE}-byte record in a memory-mapped file: the server tick, a hash of
+ * the player, the event kind, the item, block or entity type registry ID, the rank set, the verdict and the
+ * nanoseconds the decision took. Once the file is full the oldest records are overwritten, so its size stays
+ * bounded. Writing a record doesn't allocate. Each rank set is written once to a {@code .ranks} file next to
+ * the recording, as its rank IDs and powers, when it is first seen.
+ * <p>
+ * While not recording, a handler pays one volatile read. Recording is only done from the server thread.
+ */
+public final class EventRecorder {
+    public static final int MAGIC = 0x52524543; // "RREC"
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 64;
+    public static final int RECORD_SIZE = 28;
+
+    // Header: magic, version, record size, capacity in records, item and block registry sizes, records written,
+    // start time, entity type registry size
+    public static final int HEADER_CAPACITY = 12;
+    public static final int HEADER_ITEM_REGISTRY_SIZE = 16;
+    public static final int HEADER_BLOCK_REGISTRY_SIZE = 20;
+    public static final int HEADER_COUNT = 24;
+    public static final int HEADER_START_MILLIS = 32;
+    public static final int HEADER_ENTITY_REGISTRY_SIZE = 40;
+
+    // Record: tick, player hash, registry ID, rank set, nanos, kind, verdict, flags
+    public static final int RECORD_TICK = 0;
+    public static final int RECORD_PLAYER = 8;
+    public static final int RECORD_REGISTRY_ID = 12;
+    public static final int RECORD_RANK_SET = 16;
+    public static final int RECORD_NANOS = 20;
+    public static final int RECORD_KIND = 24;
+    public static final int RECORD_VERDICT = 25;
+    public static final int RECORD_FLAGS = 26;
+
+    /** The verdict of the stack depended on its NBT, so the registry ID alone doesn't reproduce it. */
+    public static final byte FLAG_NBT = 1;
+
+    /**
+     * The recorded decisions. The ordinals are written to recordings, so new kinds must be added at the end.
+     */
+    public enum Kind {
+        PICKUP,
+        USE_ITEM,
+        EQUIP,
+        USE_BLOCK,
+        INTERACT_ENTITY,
+        ATTACK_ENTITY;
+
+        public boolean isBlock() {
+            return this == USE_BLOCK;
+        }
+
+        public boolean isEntity() {
+            return this == INTERACT_ENTITY || this == ATTACK_ENTITY;
+        }
+    }
+
+    private volatile Recording recording;
+
+    public boolean isRecording() {
+        return recording != null;
+    }
+
+    /**
+     * Starts timing a decision.
+     * @return The start time to pass to {@link #record}, or 0 if not recording.
+     */
+    public long start() {
+        return recording != null ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Records one decision.
+     * @param registryId The item, block or entity type registry ID.
+     * @param decision The rank set the decision was made with.
+     * @param denied The verdict.
+     * @param start The value returned by {@link #start()} before the decision.
+     */
+    public void record(ServerPlayer player, Kind kind, int registryId, RestrictionIndex.Decision decision, boolean denied, long start) {
+        if (start == 0L) {
+            return;
+        }
+        long nanos = System.nanoTime() - start;
+        Recording current = recording;
+        if (current != null) {
+            current.append(player.server.getTickCount(), player.getUUID().hashCode(), kind, registryId, decision, denied, nanos);
+        }
+    }
+
+    /**
+     * Starts recording to a new file, replacing any file of that name.
+     * @param maxBytes The size of the file, which bounds how many records are kept.
+     * @return False if a recording is already running.
+     */
+    public synchronized boolean startRecording(Path file, long maxBytes) throws IOException {
+        if (recording != null) {
+            return false;
+        }
+        recording = new Recording(file, Math.max(1, (maxBytes - HEADER_SIZE) / RECORD_SIZE));
+        RankRestrictions.LOGGER.info("Recording restriction decisions to " + file);
+        return true;
+    }
+
+    /**
+     * Stops recording and flushes the file.
+     * @return The number of records written, including overwritten ones, or -1 if no recording was running.
+     */
+    public synchronized long stopRecording() {
+        Recording current = recording;
+        if (current == null) {
+            return -1;
+        }
+        recording = null;
+        current.close();
+        RankRestrictions.LOGGER.info("Stopped recording restriction decisions after " + current.count + " records");
+        return current.count;
+    }
+
+    /**
+     * The path of the file listing the rank sets of a recording.
+     */
+    public static Path ranksFile(Path recording) {
+        return recording.resolveSibling(recording.getFileName() + ".ranks");
+    }
+
+    private static final class Recording {
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final long capacity;
+        private final BufferedWriter ranksWriter;
+        // Decisions are memoized per index, so identity lookups are cheap and old indexes can still be collected
+        private final Map<RestrictionIndex.Decision, Integer> rankSets = new WeakHashMap<>();
+        private final Map<String, Integer> rankSetIds = new HashMap<>();
+        private long count;
+
+        Recording(Path file, long capacity) throws IOException {
+            Files.createDirectories(file.getParent());
+            this.capacity = capacity;
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity * RECORD_SIZE);
+                this.ranksWriter = Files.newBufferedWriter(ranksFile(file));
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, RECORD_SIZE);
+            buffer.putInt(HEADER_CAPACITY, (int) capacity);
+            buffer.putInt(HEADER_ITEM_REGISTRY_SIZE, BuiltInRegistries.ITEM.size());
+            buffer.putInt(HEADER_BLOCK_REGISTRY_SIZE, BuiltInRegistries.BLOCK.size());
+            buffer.putLong(HEADER_COUNT, 0);
+            buffer.putLong(HEADER_START_MILLIS, System.currentTimeMillis());
+            buffer.putInt(HEADER_ENTITY_REGISTRY_SIZE, BuiltInRegistries.ENTITY_TYPE.size());
+        }
+
+        void append(long tick, int playerHash, Kind kind, int registryId, RestrictionIndex.Decision decision, boolean denied, long nanos) {
+            int position = HEADER_SIZE + (int) (count % capacity) * RECORD_SIZE;
+            boolean nbtDependent = !kind.isBlock() && !kind.isEntity() && registryId >= 0 && decision.hasNbtRules(registryId);
+            buffer.putLong(position + RECORD_TICK, tick);
+            buffer.putInt(position + RECORD_PLAYER, playerHash);
+            buffer.putInt(position + RECORD_REGISTRY_ID, registryId);
+            buffer.putInt(position + RECORD_RANK_SET, rankSetId(decision));
+            buffer.putInt(position + RECORD_NANOS, (int) Math.min(Integer.MAX_VALUE, nanos));
+            buffer.put(position + RECORD_KIND, (byte) kind.ordinal());
+            buffer.put(position + RECORD_VERDICT, (byte) (denied ? 1 : 0));
+            buffer.put(position + RECORD_FLAGS, nbtDependent ? FLAG_NBT : 0);
+            count++;
+            buffer.putLong(HEADER_COUNT, count);
+        }
+
+        private int rankSetId(RestrictionIndex.Decision decision) {
+            Integer id = rankSets.get(decision);
+            if (id != null) {
+                return id;
+            }
+            // First use of this decision object; the same ranks keep their ID across reloads
+            StringBuilder ranks = new StringBuilder();
+            String[] rankIds = decision.getRankIds();
+            int[] powers = decision.getPowers();
+            for (int i = 0; i < rankIds.length; i++) {
+                if (i > 0) {
+                    ranks.append(',');
+                }
+                ranks.append(rankIds[i]).append(':').append(powers[i]);
+            }
+            id = rankSetIds.get(ranks.toString());
+            if (id == null) {
+                id = rankSetIds.size();
+                rankSetIds.put(ranks.toString(), id);
+                try {
+                    ranksWriter.write(id + "\t" + ranks);
+                    ranksWriter.newLine();
+                    ranksWriter.flush();
+                } catch (IOException e) {
+                    RankRestrictions.LOGGER.error("Failed to write rank set to the recording: " + e.getMessage());
+                }
+            }
+            rankSets.put(decision, id);
+            return id;
+        }
+
+        void close() {
+            try {
+                buffer.force();
+                ranksWriter.close();
+                channel.close();
+            } catch (IOException e) {
+                RankRestrictions.LOGGER.error("Failed to close the recording: " + e.getMessage());
+            }
+        }
+    }
+}
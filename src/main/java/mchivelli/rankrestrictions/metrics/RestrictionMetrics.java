@@ -0,0 +1,240 @@
+package mchivelli.rankrestrictions.metrics;
+
+import mchivelli.rankrestrictions.RankRestrictions;
+import net.minecraft.Util;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runtime counters for the restriction event handlers: invocations, denials and latency per handler,
+ * player cache hit rate, and how often each rank and restriction set actually denied something.
+ * <p>
+ * All counters are {@link LongAdder}s or striped histograms, so recording never serializes handlers
+ * running on different threads. Latency is only measured while metrics are enabled in the config.
+ */
+public class RestrictionMetrics {
+    /**
+     * The instrumented handlers of {@code ItemRestrictionEvents}.
+     */
+    public enum Handler {
+        PICKUP("pickup"),
+        USE_ITEM("use item"),
+        EQUIP("equip"),
+        CHANGED_SLOTS("changed slots"),
+        FULL_SWEEP("full sweep"),
+        ENFORCEMENT_PASS("enforcement pass"),
+        USE_BLOCK("use block"),
+        INTERACT_ENTITY("interact entity"),
+        ATTACK_ENTITY("attack entity");
+
+        private final String displayName;
+
+        Handler(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private final HandlerStats[] handlers = new HandlerStats[Handler.values().length];
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final Map<String, RankHits> rankHits = new ConcurrentHashMap<>();
+    private volatile boolean enabled = true;
+    private volatile long sinceMillis = System.currentTimeMillis();
+
+    public RestrictionMetrics() {
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i] = new HandlerStats();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts timing a handler invocation.
+     * @return The start time to pass to {@link #record}, or 0 if metrics are disabled.
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Records one handler invocation.
+     * @param handler The handler that ran.
+     * @param start The value returned by {@link #start()} when the handler began.
+     * @param denials The number of items or interactions the invocation denied.
+     */
+    public void record(Handler handler, long start, int denials) {
+        if (start == 0L) {
+            return;
+        }
+        HandlerStats stats = handlers[handler.ordinal()];
+        stats.latency.record(System.nanoTime() - start);
+        stats.invocations.increment();
+        if (denials > 0) {
+            stats.denials.add(denials);
+        }
+    }
+
+    public void recordCacheLookup(boolean hit) {
+        if (enabled) {
+            (hit ? cacheHits : cacheMisses).increment();
+        }
+    }
+
+    /**
+     * Records that a rank's restriction set denied something.
+     * @param rankId The restricting rank.
+     * @param setIndex The index of the matching set within the rank, or -1 if unknown.
+     */
+    public void recordRestrictionHit(String rankId, int setIndex) {
+        if (!enabled || rankId == null) {
+            return;
+        }
+        RankHits hits = rankHits.get(rankId);
+        if (hits == null) {
+            hits = rankHits.computeIfAbsent(rankId, id -> new RankHits());
+        }
+        hits.record(setIndex);
+    }
+
+    public void reset() {
+        for (HandlerStats stats : handlers) {
+            stats.invocations.reset();
+            stats.denials.reset();
+            stats.latency.reset();
+        }
+        cacheHits.reset();
+        cacheMisses.reset();
+        rankHits.clear();
+        sinceMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Formats the current counters as plain text lines, for the stats command and the dump file.
+     */
+    public List<String> formatReport() {
+        List<String> lines = new ArrayList<>();
+        long seconds = Math.max(1, (System.currentTimeMillis() - sinceMillis) / 1000);
+        lines.add("RankRestrictions stats over the last " + seconds + "s" + (enabled ? "" : " (recording disabled)"));
+
+        for (Handler handler : Handler.values()) {
+            HandlerStats stats = handlers[handler.ordinal()];
+            LatencyHistogram.Snapshot latency = stats.latency.snapshot();
+            lines.add(String.format("%-16s calls=%d denied=%d p50=%s p99=%s max=%s",
+                handler.getDisplayName(), stats.invocations.sum(), stats.denials.sum(),
+                formatNanos(latency.getValueAtPercentile(50)),
+                formatNanos(latency.getValueAtPercentile(99)),
+                formatNanos(latency.getValueAtPercentile(100))));
+        }
+
+        long hits = cacheHits.sum();
+        long lookups = hits + cacheMisses.sum();
+        lines.add(String.format("player cache   lookups=%d hit rate=%.1f%%", lookups, lookups == 0 ? 0.0 : 100.0 * hits / lookups));
+
+        Map<String, RankHits> sortedHits = new TreeMap<>(rankHits);
+        lines.add("denials by rank:");
+        if (sortedHits.isEmpty()) {
+            lines.add("  (none)");
+        }
+        sortedHits.forEach((rankId, hits) -> lines.add("  " + rankId + ": " + hits.total.sum()));
+        lines.add("denials by restriction set:");
+        int setLines = lines.size();
+        sortedHits.forEach((rankId, hits) -> {
+            LongAdder[] sets = hits.sets;
+            for (int i = 0; i < sets.length; i++) {
+                if (sets[i] != null) {
+                    lines.add("  " + rankId + " #" + (i + 1) + ": " + sets[i].sum());
+                }
+            }
+        });
+        if (lines.size() == setLines) {
+            lines.add("  (none)");
+        }
+        return lines;
+    }
+
+    /**
+     * Writes the report to a file on Minecraft's I/O pool, so the tick doesn't wait on the disk.
+     * @param file The file to overwrite with the report.
+     */
+    public void dumpAsync(Path file) {
+        List<String> lines = formatReport();
+        lines.add(0, "# " + Instant.now());
+        Util.ioPool().execute(() -> {
+            try {
+                Files.createDirectories(file.getParent());
+                Files.write(file, lines);
+            } catch (Exception e) {
+                RankRestrictions.LOGGER.error("Failed to write stats to " + file + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 10_000) {
+            return nanos + "ns";
+        }
+        if (nanos < 10_000_000) {
+            return (nanos / 1_000) + "us";
+        }
+        return (nanos / 1_000_000) + "ms";
+    }
+
+    private static final class HandlerStats {
+        final LongAdder invocations = new LongAdder();
+        final LongAdder denials = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    /**
+     * The denials of one rank, in total and per restriction set. Set counters are indexed by the set's position
+     * in the rank; the "rank #n" labels are only built for the report.
+     */
+    private static final class RankHits {
+        final LongAdder total = new LongAdder();
+        volatile LongAdder[] sets = new LongAdder[0];
+
+        void record(int setIndex) {
+            total.increment();
+            if (setIndex < 0) {
+                return;
+            }
+            LongAdder[] current = sets;
+            LongAdder counter = setIndex < current.length ? current[setIndex] : null;
+            if (counter == null) {
+                counter = addSet(setIndex);
+            }
+            counter.increment();
+        }
+
+        private synchronized LongAdder addSet(int setIndex) {
+            LongAdder[] current = sets;
+            if (setIndex < current.length && current[setIndex] != null) {
+                return current[setIndex];
+            }
+            LongAdder[] grown = Arrays.copyOf(current, Math.max(current.length, setIndex + 1));
+            grown[setIndex] = new LongAdder();
+            sets = grown; // Published whole, so readers never see a partly filled array
+            return grown[setIndex];
+        }
+    }
+}
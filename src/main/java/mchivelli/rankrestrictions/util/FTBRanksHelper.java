@@ -1,16 +1,27 @@
 package mchivelli.rankrestrictions.util;
 
+import com.mojang.authlib.GameProfile;
 import mchivelli.rankrestrictions.RankRestrictions;
 import net.minecraft.server.level.ServerPlayer;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
 
 /**
  * Helper class to safely interact with the FTBRanks API using reflection
  * This avoids hard dependencies on the FTBRanks API at compile time
+ * <p>
+ * The API methods are looked up reflectively once, then bound to {@link MethodHandle}s held in static final
+ * fields so the JIT can inline the calls on the event hot path. Plain reflection is only used if a method
+ * was found but could not be bound. The rank manager is cached for the lifetime of the server.
  */
 public class FTBRanksHelper {
     private static Class<?> ftbRanksClass;
@@ -23,6 +34,21 @@ public class FTBRanksHelper {
     private static Method getPlayerRanksMethod;
     private static Method getRankIdMethod;
     private static Method getRankDisplayNameMethod;
+    private static Method getRankPowerMethod;
+    private static Method getAddedRanksMethod;
+
+    // Handles bound from the methods above, with erased signatures; null if binding failed
+    private static final MethodHandle GET_API;              // ()Object
+    private static final MethodHandle GET_MANAGER;          // (Object api)Object
+    private static final MethodHandle GET_ALL_RANKS;        // (Object manager)Collection
+    private static final MethodHandle GET_PLAYER_RANKS;     // (Object manager, ServerPlayer)List
+    private static final MethodHandle GET_RANK_ID;          // (Object rank)String
+    private static final MethodHandle GET_RANK_DISPLAY_NAME; // (Object rank)String
+    private static final MethodHandle GET_RANK_POWER;       // (Object rank)int
+    private static final MethodHandle GET_ADDED_RANKS;      // (Object manager, GameProfile)Collection
+
+    // The manager is created by FTBRanks when a server starts, so it is only cached until the server stops
+    private static volatile Object cachedManager;
     
     // Initialize reflection methods
     static {
@@ -80,12 +106,90 @@ public class FTBRanksHelper {
             } catch (NoSuchMethodException e) {
                 getRankDisplayNameMethod = rankClass.getMethod("getName");
             }
+
+            try {
+                getRankPowerMethod = rankClass.getMethod("getPower");
+            } catch (NoSuchMethodException e) {
+                // Without powers, all ranks are treated as equal
+                RankRestrictions.LOGGER.warn("FTBRanks rank power is not available, allow rules can't override deny rules");
+            }
+
+            try {
+                getAddedRanksMethod = rankManagerClass.getMethod("getAddedRanks", GameProfile.class);
+            } catch (NoSuchMethodException e) {
+                RankRestrictions.LOGGER.warn("FTBRanks added ranks are not available, offline audits can't see player ranks");
+            }
             
             RankRestrictions.LOGGER.info("FTBRanks API classes loaded successfully via reflection");
         } catch (Exception e) {
             RankRestrictions.LOGGER.error("Failed to initialize FTBRanks API reflection: " + e.getMessage(), e);
             // Don't rethrow - we'll handle the null methods gracefully
         }
+
+        GET_API = bind(getApiMethod, Object.class);
+        GET_MANAGER = bind(getManagerMethod, Object.class, Object.class);
+        GET_ALL_RANKS = bind(getAllRanksMethod, Collection.class, Object.class);
+        GET_PLAYER_RANKS = bind(getPlayerRanksMethod, List.class, Object.class, ServerPlayer.class);
+        GET_RANK_ID = bind(getRankIdMethod, String.class, Object.class);
+        GET_RANK_DISPLAY_NAME = bind(getRankDisplayNameMethod, String.class, Object.class);
+        GET_RANK_POWER = bind(getRankPowerMethod, int.class, Object.class);
+        GET_ADDED_RANKS = bind(getAddedRanksMethod, Collection.class, Object.class, GameProfile.class);
+    }
+
+    /**
+     * Bind a reflected method to a method handle with the given erased signature.
+     * Static methods called with a receiver (e.g. FTBRanksAPI.manager()) get the receiver dropped.
+     * @return The bound handle, or null if the method is missing or could not be bound
+     */
+    private static MethodHandle bind(Method method, Class<?> returnType, Class<?>... parameterTypes) {
+        if (method == null) {
+            return null;
+        }
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().unreflect(method);
+            if (Modifier.isStatic(method.getModifiers()) && method.getParameterCount() < parameterTypes.length) {
+                handle = MethodHandles.dropArguments(handle, 0, parameterTypes[0]);
+            }
+            return handle.asType(MethodType.methodType(returnType, parameterTypes));
+        } catch (Exception e) {
+            RankRestrictions.LOGGER.warn("Could not bind FTBRanks method " + method.getName() + ", falling back to reflection: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Get the FTBRanks rank manager, resolving and caching it on first use
+     * @return The rank manager, or null if FTBRanks is not available yet
+     */
+    public static Object getManager() {
+        Object manager = cachedManager;
+        if (manager != null) {
+            return manager;
+        }
+        if (ftbRanksClass == null || getApiMethod == null || getManagerMethod == null) {
+            return null;
+        }
+
+        try {
+            Object api = GET_API != null ? (Object) GET_API.invokeExact() : getApiMethod.invoke(null);
+            if (api == null) {
+                return null;
+            }
+            manager = GET_MANAGER != null ? (Object) GET_MANAGER.invokeExact(api) : getManagerMethod.invoke(api);
+        } catch (Throwable e) {
+            RankRestrictions.LOGGER.error("Error getting FTBRanks manager: " + e.getMessage(), e);
+            return null;
+        }
+        cachedManager = manager;
+        return manager;
+    }
+
+    /**
+     * Forget the cached rank manager. Must be called when the server stops, since FTBRanks creates a
+     * new manager for every server.
+     */
+    public static void clearCachedManager() {
+        cachedManager = null;
     }
     
     /**
@@ -95,12 +199,13 @@ public class FTBRanksHelper {
     @SuppressWarnings("unchecked")
     public static Collection<Object> getAllRanks() {
         try {
-            if (isApiAvailable()) {
-                Object api = getApiMethod.invoke(null);
-                Object rankManager = getManagerMethod.invoke(api);
-                return (Collection<Object>) getAllRanksMethod.invoke(rankManager);
+            Object rankManager = getManager();
+            if (rankManager != null) {
+                return GET_ALL_RANKS != null
+                    ? (Collection<Object>) (Collection<?>) GET_ALL_RANKS.invokeExact(rankManager)
+                    : (Collection<Object>) getAllRanksMethod.invoke(rankManager);
             }
-        } catch (Exception e) {
+        } catch (Throwable e) {
             RankRestrictions.LOGGER.error("Failed to get ranks from FTBRanks API: " + e.getMessage(), e);
         }
         return Collections.emptyList();
@@ -114,17 +219,39 @@ public class FTBRanksHelper {
     @SuppressWarnings("unchecked")
     public static List<Object> getPlayerRanks(ServerPlayer player) {
         try {
-            if (isApiAvailable()) {
-                Object api = getApiMethod.invoke(null);
-                Object rankManager = getManagerMethod.invoke(api);
-                return (List<Object>) getPlayerRanksMethod.invoke(rankManager, player);
+            Object rankManager = getManager();
+            if (rankManager != null) {
+                return GET_PLAYER_RANKS != null
+                    ? (List<Object>) (List<?>) GET_PLAYER_RANKS.invokeExact(rankManager, player)
+                    : (List<Object>) getPlayerRanksMethod.invoke(rankManager, player);
             }
-        } catch (Exception e) {
+        } catch (Throwable e) {
             RankRestrictions.LOGGER.error("Failed to get player ranks from FTBRanks API: " + e.getMessage(), e);
         }
         return Collections.emptyList();
     }
     
+    /**
+     * Get the ranks explicitly added to a player, which works for offline players too. Ranks that apply
+     * through conditions, such as playtime, need an online player and are not included.
+     * @param profile The player's profile
+     * @return Collection of rank objects or empty list if FTBRanks is not available
+     */
+    @SuppressWarnings("unchecked")
+    public static Collection<Object> getAddedRanks(GameProfile profile) {
+        try {
+            Object rankManager = getManager();
+            if (rankManager != null && getAddedRanksMethod != null) {
+                return GET_ADDED_RANKS != null
+                    ? (Collection<Object>) (Collection<?>) GET_ADDED_RANKS.invokeExact(rankManager, profile)
+                    : (Collection<Object>) getAddedRanksMethod.invoke(rankManager, profile);
+            }
+        } catch (Throwable e) {
+            RankRestrictions.LOGGER.error("Failed to get added ranks from FTBRanks API: " + e.getMessage(), e);
+        }
+        return Collections.emptyList();
+    }
+
     /**
      * Get the ID of a rank object
      * @param rankObj The rank object from FTBRanks
@@ -133,9 +260,11 @@ public class FTBRanksHelper {
     public static String getRankName(Object rankObj) {
         try {
             if (rankObj != null && rankClass.isInstance(rankObj)) {
-                return (String) getRankIdMethod.invoke(rankObj);
+                return GET_RANK_ID != null
+                    ? (String) GET_RANK_ID.invokeExact(rankObj)
+                    : (String) getRankIdMethod.invoke(rankObj);
             }
-        } catch (Exception e) {
+        } catch (Throwable e) {
             RankRestrictions.LOGGER.error("Failed to get rank ID: " + e.getMessage(), e);
             try {
                 // Last resort - try to get string representation
@@ -155,14 +284,34 @@ public class FTBRanksHelper {
     public static String getRankDisplayName(Object rankObj) {
         try {
             if (rankObj != null && rankClass.isInstance(rankObj)) {
-                return (String) getRankDisplayNameMethod.invoke(rankObj);
+                return GET_RANK_DISPLAY_NAME != null
+                    ? (String) GET_RANK_DISPLAY_NAME.invokeExact(rankObj)
+                    : (String) getRankDisplayNameMethod.invoke(rankObj);
             }
-        } catch (Exception e) {
+        } catch (Throwable e) {
             RankRestrictions.LOGGER.error("Failed to get rank display name: " + e.getMessage(), e);
         }
         return getRankName(rankObj); // Fall back to ID if display name fails
     }
     
+    /**
+     * Get the power of a rank, which decides between conflicting allow and deny rules
+     * @param rankObj The rank object from FTBRanks
+     * @return The rank power, or 0 if not available
+     */
+    public static int getRankPower(Object rankObj) {
+        try {
+            if (rankObj != null && getRankPowerMethod != null && rankClass.isInstance(rankObj)) {
+                return GET_RANK_POWER != null
+                    ? (int) GET_RANK_POWER.invokeExact(rankObj)
+                    : (Integer) getRankPowerMethod.invoke(rankObj);
+            }
+        } catch (Throwable e) {
+            RankRestrictions.LOGGER.error("Failed to get rank power: " + e.getMessage(), e);
+        }
+        return 0;
+    }
+    
     /**
      * Get a property from a rank object
      * @param rankObj The rank object from FTBRanks
@@ -187,16 +336,48 @@ public class FTBRanksHelper {
      * @return true if FTBRanks API is available, false otherwise
      */
     public static boolean isApiAvailable() {
+        return getManager() != null;
+    }
+
+    /**
+     * Register a listener for one of the FTBRanks rank events
+     * @param eventName The name of the event field in RankEvent, e.g. "ADD_PLAYER"
+     * @param listener The listener, which receives the raw event object
+     * @return true if the listener was registered, false otherwise
+     */
+    public static boolean registerRankEventListener(String eventName, Consumer<Object> listener) {
         try {
-            if (ftbRanksClass == null || getApiMethod == null || getManagerMethod == null) {
-                return false;
-            }
-            
-            Object api = getApiMethod.invoke(null);
-            return api != null && getManagerMethod.invoke(api) != null;
+            Class<?> rankEventClass = Class.forName("dev.ftb.mods.ftbranks.api.event.RankEvent");
+            Object event = rankEventClass.getField(eventName).get(null);
+            // Architectury's Event#register takes the listener type erased to Object. Look it up on the
+            // interface since the implementation class is not public.
+            Class<?> eventInterface = Class.forName("dev.architectury.event.Event");
+            eventInterface.getMethod("register", Object.class).invoke(event, listener);
+            RankRestrictions.LOGGER.debug("Registered listener for FTBRanks event " + eventName);
+            return true;
         } catch (Exception e) {
-            RankRestrictions.LOGGER.error("Error checking FTBRanks API: " + e.getMessage(), e);
+            RankRestrictions.LOGGER.error("Failed to register listener for FTBRanks event '" + eventName + "': " + e.getMessage(), e);
             return false;
         }
     }
+
+    /**
+     * Get the UUID of the player a rank event refers to
+     * @param event The FTBRanks event object
+     * @return The player's UUID, or null if the event has no player
+     */
+    public static UUID getEventPlayerId(Object event) {
+        try {
+            Method getPlayer = event.getClass().getMethod("getPlayer");
+            Object profile = getPlayer.invoke(event);
+            if (profile instanceof GameProfile gameProfile) {
+                return gameProfile.getId();
+            }
+        } catch (NoSuchMethodException e) {
+            // Not a player event
+        } catch (Exception e) {
+            RankRestrictions.LOGGER.error("Failed to get player from FTBRanks event: " + e.getMessage(), e);
+        }
+        return null;
+    }
 }
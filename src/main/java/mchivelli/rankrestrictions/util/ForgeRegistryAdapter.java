@@ -0,0 +1,59 @@
+package mchivelli.rankrestrictions.util;
+
+import mchivelli.rankrestrictions.engine.IdRegistry;
+import mchivelli.rankrestrictions.engine.TagProvider;
+import net.minecraft.core.Holder;
+import net.minecraft.core.Registry;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.level.block.Block;
+
+import java.util.BitSet;
+
+/**
+ * Exposes a game registry and its tags to the restriction engine. Forge registries are backed by the built-in
+ * registries, so the numeric IDs are the same ones the events probe with.
+ */
+public final class ForgeRegistryAdapter<T> implements IdRegistry, TagProvider {
+    public static final ForgeRegistryAdapter<Item> ITEMS = new ForgeRegistryAdapter<>(BuiltInRegistries.ITEM);
+    public static final ForgeRegistryAdapter<Block> BLOCKS = new ForgeRegistryAdapter<>(BuiltInRegistries.BLOCK);
+    public static final ForgeRegistryAdapter<EntityType<?>> ENTITY_TYPES = new ForgeRegistryAdapter<>(BuiltInRegistries.ENTITY_TYPE);
+
+    private final Registry<T> registry;
+
+    private ForgeRegistryAdapter(Registry<T> registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public int size() {
+        return registry.size();
+    }
+
+    @Override
+    public int getId(String key) {
+        ResourceLocation location = ResourceLocation.tryParse(key);
+        return location != null ? registry.getOptional(location).map(registry::getId).orElse(-1) : -1;
+    }
+
+    @Override
+    public String getKey(int id) {
+        T value = registry.byId(id);
+        ResourceLocation location = value != null ? registry.getKey(value) : null;
+        return location != null ? location.toString() : null;
+    }
+
+    @Override
+    public void addMembers(String tagId, BitSet target) {
+        ResourceLocation location = ResourceLocation.tryParse(tagId);
+        if (location == null) {
+            return;
+        }
+        for (Holder<T> holder : registry.getTagOrEmpty(TagKey.create(registry.key(), location))) {
+            target.set(registry.getId(holder.value()));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package mchivelli.rankrestrictions.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdPatternSetTest {
+    private final TestRegistry registry = new TestRegistry(
+        "minecraft:stone",
+        "minecraft:diamond_sword",
+        "minecraft:netherite_sword",
+        "minecraft:netherite_ingot",
+        "minecraft:aa",
+        "minecraft:ab",
+        "mekanism:speed_upgrade",
+        "mekanism:energy_upgrade",
+        "mekanism:steel_casing",
+        "create:cogwheel")
+        .withTag("minecraft:swords", "minecraft:diamond_sword", "minecraft:netherite_sword")
+        .withTag("forge:ingots", "minecraft:netherite_ingot", "minecraft:missing_ingot");
+
+    private final List<String> warnings = new ArrayList<>();
+
+    private IdPatternSet compile(String... patternGroups) {
+        return IdPatternSet.compile(Arrays.asList(patternGroups), "item", warnings::add);
+    }
+
+    private BitSet matching(IdPatternSet patterns) {
+        BitSet ids = new BitSet();
+        patterns.addMatchingIds(registry, ids);
+        return ids;
+    }
+
+    @Test
+    void matchesExactIds() {
+        IdPatternSet patterns = compile("minecraft:stone, diamond_sword", "minecraft:unknown");
+        assertEquals(registry.idsOf("minecraft:stone", "minecraft:diamond_sword"), matching(patterns));
+        assertTrue(warnings.isEmpty());
+    }
+
+    @Test
+    void matchesModWildcards() {
+        assertEquals(registry.idsOf("mekanism:speed_upgrade", "mekanism:energy_upgrade", "mekanism:steel_casing"), matching(compile("mekanism:*")));
+    }
+
+    @Test
+    void matchesGlobsAndRegexesTogether() {
+        IdPatternSet patterns = compile("mekanism:*_upgrade", "/.*:netherite_.*/");
+        assertEquals(registry.idsOf("mekanism:speed_upgrade", "mekanism:energy_upgrade", "minecraft:netherite_sword", "minecraft:netherite_ingot"),
+            matching(patterns));
+        assertTrue(patterns.matches("othermod:netherite_pickaxe"));
+        assertFalse(patterns.matches("mekanism:steel_casing"));
+    }
+
+    @Test
+    void regexesMatchTheWholeId() {
+        assertEquals(new BitSet(), matching(compile("/netherite/")));
+        assertEquals(registry.idsOf("minecraft:netherite_ingot"), matching(compile("/minecraft:netherite_(ingot|block)/")));
+    }
+
+    @Test
+    void inlineFlagsStayInsideTheirPattern() {
+        IdPatternSet patterns = compile("/(?i)MINECRAFT:STONE/", "/create:COGWHEEL/");
+        assertEquals(registry.idsOf("minecraft:stone"), matching(patterns));
+    }
+
+    @Test
+    void backreferencesKeepTheirOwnGroups() {
+        // Joined into one alternation, \1 would refer to the first pattern's group
+        IdPatternSet patterns = compile("/minecraft:(diamond)_sword/", "/minecraft:(.)\\1/", "create:*");
+        assertEquals(registry.idsOf("minecraft:diamond_sword", "minecraft:aa", "create:cogwheel"), matching(patterns));
+        assertTrue(warnings.isEmpty());
+    }
+
+    @Test
+    void namedGroupsMayRepeatAcrossPatterns() {
+        IdPatternSet patterns = compile("/minecraft:(?<m>netherite)_sword/", "/mekanism:(?<m>speed)_upgrade/");
+        assertEquals(registry.idsOf("minecraft:netherite_sword", "mekanism:speed_upgrade"), matching(patterns));
+        assertTrue(warnings.isEmpty());
+    }
+
+    @Test
+    void skipsInvalidPatternsWithWarnings() {
+        IdPatternSet patterns = compile("Minecraft:Stone", "#Bad:Tag", "/minecraft:(.)\\1(/", "create:cogwheel");
+        assertEquals(registry.idsOf("create:cogwheel"), matching(patterns));
+        assertEquals(3, warnings.size(), warnings.toString());
+    }
+
+    @Test
+    void resolvesTagsSeparately() {
+        IdPatternSet patterns = compile("#minecraft:swords, #forge:ingots, #minecraft:unknown", "minecraft:stone");
+        assertTrue(patterns.hasTags());
+        assertEquals(registry.idsOf("minecraft:stone"), matching(patterns));
+        assertEquals(registry.idsOf("minecraft:diamond_sword", "minecraft:netherite_sword", "minecraft:netherite_ingot"),
+            patterns.resolveTags(registry));
+        assertFalse(patterns.matches("minecraft:diamond_sword"));
+    }
+
+    @Test
+    void emptyPatternListsShareTheEmptySet() {
+        assertSame(IdPatternSet.EMPTY, compile());
+        assertSame(IdPatternSet.EMPTY, compile(" , ", null));
+        assertEquals(new BitSet(), matching(IdPatternSet.EMPTY));
+        assertFalse(IdPatternSet.EMPTY.hasTags());
+    }
+
+    @Test
+    void equalPatternsMakeEqualSets() {
+        IdPatternSet first = compile("minecraft:stone", "mekanism:*", "/minecraft:(.)\\1/", "*_sword");
+        IdPatternSet second = compile("mekanism:*, minecraft:stone", "/minecraft:(.)\\1/", "*_sword");
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+    }
+}
@@ -0,0 +1,110 @@
+package mchivelli.rankrestrictions.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdPatternsTest {
+    @Test
+    void splitsCommaSeparatedPatterns() {
+        assertEquals(List.of("minecraft:stone", "mekanism:*", "#minecraft:logs"), IdPatterns.split(" minecraft:stone, mekanism:* ,,#minecraft:logs "));
+    }
+
+    @Test
+    void keepsRegexWithCommasWhole() {
+        assertEquals(List.of("/minecraft:a{1,3}/"), IdPatterns.split(" /minecraft:a{1,3}/ "));
+    }
+
+    @Test
+    void classifiesPatterns() {
+        assertTrue(IdPatterns.isModWildcard("mekanism:*"));
+        assertFalse(IdPatterns.isModWildcard("mekanism:*_upgrade"));
+        assertTrue(IdPatterns.isGlob("mekanism:*_upgrade"));
+        assertTrue(IdPatterns.isGlob("minecraft:?_sword"));
+        assertTrue(IdPatterns.isTag("#minecraft:logs"));
+        assertTrue(IdPatterns.isRegex("/.*:netherite_.*/"));
+        assertFalse(IdPatterns.isRegex("/"));
+    }
+
+    @Test
+    void acceptsValidPatterns() {
+        assertNull(IdPatterns.validate(""));
+        assertNull(IdPatterns.validate("minecraft:diamond_sword"));
+        assertNull(IdPatterns.validate("diamond_sword"));
+        assertNull(IdPatterns.validate("mekanism:*"));
+        assertNull(IdPatterns.validate("*:netherite_*"));
+        assertNull(IdPatterns.validate("#forge:ingots/iron"));
+        assertNull(IdPatterns.validate("/minecraft:(iron|gold)_.*/"));
+    }
+
+    @Test
+    void rejectsInvalidPatterns() {
+        assertNotNull(IdPatterns.validate("Minecraft:Stone"));
+        assertNotNull(IdPatterns.validate("minecraft:diamond sword"));
+        assertNotNull(IdPatterns.validate("#minecraft:Logs"));
+        assertNotNull(IdPatterns.validate("Mekanism:*"));
+        assertNotNull(IdPatterns.validate("mekanism:*_Upgrade"));
+        String regexProblem = IdPatterns.validate("/minecraft:(stone/");
+        assertNotNull(regexProblem);
+        assertTrue(regexProblem.startsWith("invalid regex"), regexProblem);
+    }
+
+    @Test
+    void globWildcardsDontCrossTheColon() {
+        Pattern glob = Pattern.compile(IdPatterns.globToRegex("*:netherite_*"));
+        assertTrue(glob.matcher("minecraft:netherite_sword").matches());
+        assertTrue(glob.matcher("othermod:netherite_").matches());
+        assertFalse(glob.matcher("minecraft:diamond_sword").matches());
+        assertFalse(glob.matcher("a:b:netherite_sword").matches());
+    }
+
+    @Test
+    void globQuestionMarkMatchesOneCharacter() {
+        Pattern glob = Pattern.compile(IdPatterns.globToRegex("minecraft:?_sword"));
+        assertTrue(glob.matcher("minecraft:a_sword").matches());
+        assertFalse(glob.matcher("minecraft:ab_sword").matches());
+        assertFalse(glob.matcher("minecraft:_sword").matches());
+    }
+
+    @Test
+    void globLiteralsAreQuoted() {
+        Pattern glob = Pattern.compile(IdPatterns.globToRegex("mod:a.b*"));
+        assertTrue(glob.matcher("mod:a.bc").matches());
+        assertFalse(glob.matcher("mod:axbc").matches());
+    }
+
+    @Test
+    void globWithoutNamespaceMatchesMinecraft() {
+        Pattern glob = Pattern.compile(IdPatterns.globToRegex("*_sword"));
+        assertTrue(glob.matcher("minecraft:iron_sword").matches());
+        assertFalse(glob.matcher("othermod:iron_sword").matches());
+    }
+
+    @Test
+    void normalizesIds() {
+        assertEquals("minecraft:stone", IdPatterns.normalizeId("stone"));
+        assertEquals("minecraft:stone", IdPatterns.normalizeId(":stone"));
+        assertEquals("create:cogwheel", IdPatterns.normalizeId("create:cogwheel"));
+        assertEquals("forge:ingots/iron", IdPatterns.normalizeId("forge:ingots/iron"));
+        assertNull(IdPatterns.normalizeId("Stone"));
+        assertNull(IdPatterns.normalizeId("mod/name:stone"));
+    }
+
+    @Test
+    void detectsGroupReferences() {
+        assertTrue(IdPatterns.hasGroupReferences("minecraft:(.)\\1"));
+        assertTrue(IdPatterns.hasGroupReferences("minecraft:(?<c>.)\\k<c>"));
+        assertTrue(IdPatterns.hasGroupReferences("minecraft:(?<name>stone)"));
+        assertFalse(IdPatterns.hasGroupReferences("minecraft:(?<=:)stone"));
+        assertFalse(IdPatterns.hasGroupReferences("minecraft:(?<!x)stone"));
+        assertFalse(IdPatterns.hasGroupReferences("minecraft:a\\\\1"));
+        assertFalse(IdPatterns.hasGroupReferences("minecraft:(iron|gold)_.*"));
+    }
+}
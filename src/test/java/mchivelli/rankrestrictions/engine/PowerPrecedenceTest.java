@@ -0,0 +1,81 @@
+package mchivelli.rankrestrictions.engine;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PowerPrecedenceTest {
+    private final BitSet denied = new BitSet();
+    private final BitSet decided = new BitSet();
+
+    private static BitSet ids(int... ids) {
+        BitSet result = new BitSet();
+        for (int id : ids) {
+            result.set(id);
+        }
+        return result;
+    }
+
+    /**
+     * Applies the next level down.
+     */
+    private void level(BitSet deny, BitSet allow) {
+        PowerPrecedence.applyLevel(deny, allow, denied, decided);
+    }
+
+    @Test
+    void deniesWhatASingleLevelDenies() {
+        level(ids(1, 2), ids());
+        assertEquals(ids(1, 2), denied);
+        assertEquals(ids(1, 2), decided);
+    }
+
+    @Test
+    void higherAllowOverridesLowerDeny() {
+        level(ids(), ids(1)); // e.g. vip, power 50
+        level(ids(1, 2), ids()); // member, power 10
+        assertEquals(ids(2), denied);
+        assertEquals(ids(1, 2), decided);
+    }
+
+    @Test
+    void higherDenyOverridesLowerAllow() {
+        level(ids(1), ids());
+        level(ids(), ids(1, 2));
+        assertEquals(ids(1), denied);
+        assertEquals(ids(1, 2), decided);
+    }
+
+    @Test
+    void denyWinsWithinALevel() {
+        level(ids(1, 2), ids(2, 3));
+        assertEquals(ids(1, 2), denied);
+        assertEquals(ids(1, 2, 3), decided);
+    }
+
+    @Test
+    void firstDecidingLevelWinsOverAllLowerOnes() {
+        level(ids(), ids(1));
+        level(ids(2), ids());
+        level(ids(1, 2, 3), ids(2));
+        assertEquals(ids(2, 3), denied);
+        assertEquals(ids(1, 2, 3), decided);
+    }
+
+    @Test
+    void levelDenyKeepsOnlyWhatTheLevelDecided() {
+        level(ids(), ids(1));
+        BitSet deny = ids(1, 2);
+        level(deny, ids());
+        assertEquals(ids(2), deny);
+    }
+
+    @Test
+    void noRulesDecideNothing() {
+        level(ids(), ids());
+        assertEquals(new BitSet(), denied);
+        assertEquals(new BitSet(), decided);
+    }
+}
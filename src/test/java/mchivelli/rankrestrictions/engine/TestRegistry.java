@@ -0,0 +1,63 @@
+package mchivelli.rankrestrictions.engine;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A small in-memory registry with tags, with IDs assigned in the order the keys are given.
+ */
+final class TestRegistry implements IdRegistry, TagProvider {
+    private final List<String> keys;
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final Map<String, List<String>> tags = new HashMap<>();
+
+    TestRegistry(String... keys) {
+        this.keys = List.of(keys);
+        for (int i = 0; i < keys.length; i++) {
+            ids.put(keys[i], i);
+        }
+    }
+
+    TestRegistry withTag(String tagId, String... members) {
+        tags.put(tagId, List.of(members));
+        return this;
+    }
+
+    /**
+     * @return The IDs of the given keys.
+     */
+    BitSet idsOf(String... keys) {
+        BitSet result = new BitSet();
+        for (String key : keys) {
+            result.set(getId(key));
+        }
+        return result;
+    }
+
+    @Override
+    public int size() {
+        return keys.size();
+    }
+
+    @Override
+    public int getId(String key) {
+        return ids.getOrDefault(key, -1);
+    }
+
+    @Override
+    public String getKey(int id) {
+        return id >= 0 && id < keys.size() ? keys.get(id) : null;
+    }
+
+    @Override
+    public void addMembers(String tagId, BitSet target) {
+        for (String member : tags.getOrDefault(tagId, List.of())) {
+            int id = getId(member);
+            if (id >= 0) {
+                target.set(id);
+            }
+        }
+    }
+}